@@ -31,6 +31,7 @@ public class AST {
 		final List<ParNode> parlist;
 		final List<DecNode> declist; 
 		final Node exp;
+		STentry entry; // entry della dichiarazione (la stessa dei CallNode che la usano)
 		FunNode(String i, TypeNode rt, List<ParNode> pl, List<DecNode> dl, Node e) {
 	    	id=i; 
 	    	retType=rt;
@@ -58,6 +59,7 @@ public class AST {
 	public static class VarNode extends DecNode {
 		final String id;
 		final Node exp;
+		STentry entry; // entry della dichiarazione (la stessa degli IdNode che la usano)
 		VarNode(String i, TypeNode t, Node v) {id = i; type = t; exp = v;}
 
 		@Override
@@ -245,6 +247,7 @@ public class AST {
 		final List<MethodNode> methods;
 
 		ClassTypeNode type;
+		STentry entry; // entry della dichiarazione (la stessa dei NewNode che la usano)
 		ClassNode(String i, List<FieldNode> fl, List<MethodNode> ml) {
 			id=i;
 			fields=Collections.unmodifiableList(fl);
@@ -270,6 +273,7 @@ public class AST {
 		final Node exp;
 		final TypeNode retType;
 		String label;
+		STentry entry; // entry nella virtual table (la stessa dei ClassCallNode che la usano)
 		MethodNode(String i, TypeNode rt, List<ParNode> pl, List<DecNode> dl, Node e) {
 			id=i;
 			retType=rt;
@@ -302,6 +306,22 @@ public class AST {
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
 	}
 
+	// lettura del campo id2 dell'oggetto riferito da id1 (creata dall'inlining dei metodi)
+	public static class FieldAccessNode extends Node {
+		final String id1;
+		final String id2;
+		STentry entry;
+		STentry fieldEntry;
+		int nl;
+		FieldAccessNode(String id1, String id2) {
+			this.id1 = id1;
+			this.id2 = id2;
+		}
+
+		@Override
+		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
+	}
+
 	public static class NewNode extends Node {
 		final String id;
 		final List<Node> arglist;
@@ -3,17 +3,240 @@ package compiler;
 import compiler.AST.*;
 import compiler.lib.*;
 import compiler.exc.*;
+import svm.Code;
 import svm.ExecuteVM;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import static compiler.lib.FOOLlib.*;
+import static svm.Code.*;
 
-public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidException> {
+public class CodeGenerationASTVisitor extends BaseASTVisitor<Code, VoidException> {
 
-  CodeGenerationASTVisitor() {}
-  CodeGenerationASTVisitor(boolean debug) {super(false,debug);} //enables print for debugging
+  private CompilationContext context; // label e codice delle funzioni della compilazione
+  private CompilationCache cache; // codice delle funzioni globali gia' compilate (null se non usata)
+
+  CodeGenerationASTVisitor(CompilationContext context) {this.context = context;}
+  CodeGenerationASTVisitor(CompilationContext context, CompilationCache cache) {this.context = context; this.cache = cache;}
+  CodeGenerationASTVisitor(CompilationContext context, boolean debug) {super(false,debug); this.context = context;} //enables print for debugging
+
+	/*
+	MAPPE DEI RIFERIMENTI PER IL GARBAGE COLLECTOR GENERAZIONALE DELLA SVM
+
+	durante la generazione si tiene traccia di quali celle dell'AR corrente contengono
+	riferimenti (valori di tipo RefTypeNode): parametri, Access Link (object pointer nei
+	metodi) e celle sotto il Return Address, cioe' dichiarazioni locali e valori temporanei
+	ancora sullo stack (operandi sinistri, argomenti gia' calcolati di una chiamata...).
+	in ogni punto in cui puo' partire una raccolta (dopo js, cioe' all'indirizzo di ritorno,
+	e prima di alloc) viene emessa la direttiva
+
+		gcmap m o1 o2 ...
+
+	con il numero m di parametri dell'AR corrente (serve a trovare il Control Link a offset m+1)
+	e gli offset rispetto a $fp delle celle che contengono riferimenti
+	*/
+	private List<Boolean> parRefs = new ArrayList<>(); // parametri [offset 1..m]
+	private boolean accessLinkRef = false; // Access Link [offset 0]
+	private List<Boolean> frameRefs = new ArrayList<>(); // celle a offset -2, -3, ...
+
+	private Code stackMap() {
+		List<Integer> offsets = new ArrayList<>();
+		if (accessLinkRef) offsets.add(0);
+		for (int i = 0; i < parRefs.size(); i++) if (parRefs.get(i)) offsets.add(i + 1);
+		for (int j = 0; j < frameRefs.size(); j++) if (frameRefs.get(j)) offsets.add(-2 - j);
+		return gcmap(parRefs.size(), offsets.stream().mapToInt(Integer::intValue).toArray());
+	}
+
+	/*
+	CHIAMATE IN CODA
+
+	tailPosition e' l'espressione in posizione di coda del corpo della funzione o del metodo
+	che si sta generando: il corpo stesso e, se e' un if, i suoi rami (ricorsivamente).
+	una chiamata in posizione di coda non costruisce un nuovo AR sopra quello corrente ma lo
+	sostituisce: calcola argomenti, Access Link e indirizzo del chiamato come una chiamata
+	normale (senza il Control Link, che resta quello dell'AR corrente) e poi tailCall()
+	- rimette in $ra il Return Address dell'AR corrente, cosi' il chiamato ritorna
+	  direttamente al chiamante della funzione corrente;
+	- ripristina il display del livello corrente (leave), come al ritorno;
+	- con slide sposta argomenti e Access Link al posto di parametri e Access Link dell'AR
+	  corrente, sotto al suo Control Link (dichiarazioni locali e temporanei vengono scartati);
+	- ripristina $fp dal Control Link e salta al chiamato con jump, che non modifica $ra.
+	lo stack resta quindi costante in ogni ricorsione in coda.
+	una funzione dichiarata nell'AR corrente lo usa come Access Link: le chiamate a queste
+	funzioni non vengono trattate come chiamate in coda.
+	*/
+	private Node tailPosition = null;
+
+	private Code tailCall(int args) {
+		int m = parRefs.size(); // parametri dell'AR corrente
+		return nlJoin(
+			stm(), // indirizzo del chiamato in $tm
+			displayed ? leave(level) : null, // l'AR corrente viene sostituito
+			lfp(),
+			push(-1),
+			add(),
+			lw(), // Return Address dell'AR corrente [offset -1]
+			sra(),
+			slide(args + 1, m), // argomenti e Access Link del chiamato agli offset m-args..m
+			lfp(),
+			push(m + 1),
+			add(),
+			lw(), // Control Link dell'AR corrente [offset m+1]
+			sfp(),
+			ltm(),
+			jump() // salta all'indirizzo del chiamato senza modificare $ra
+		);
+	}
+
+	/*
+	DISPLAY
+
+	la SVM ha un registro per nesting level (display[d]) con l'indirizzo dell'AR di livello d
+	visibile dal codice in esecuzione: il prologo di una funzione o di un metodo, il cui corpo
+	e' a nesting level level, esegue enter level (salva display[level] e lo imposta a $fp) e
+	l'epilogo leave level (lo ripristina); il frame globale e' sempre display[0].
+	display[level] e' letto solo dalle funzioni annidate nel corpo, quindi enter e leave sono
+	generati solo se il corpo dichiara funzioni (displayed).
+	gli accessi non locali (IdNode, indirizzo della funzione e Access Link di una CallNode,
+	oggetto di ClassCallNode e FieldAccessNode) usano quindi ldisp d al posto della risalita
+	della catena statica, in tempo costante (SuperInstructions fonde gli accessi in llev d k).
+	nei metodi il nesting level 1 e' l'oggetto, che non e' un AR: si raggiunge dall'Access Link
+	dell'AR del metodo (nesting level 2); l'oggetto non va nel display perche' il garbage
+	collector generazionale puo' spostarlo.
+	*/
+	private int level = 0; // nesting level del corpo della funzione o del metodo corrente
+	private boolean displayed = false; // vero se il corpo corrente imposta display[level]
+	private boolean inClass = false; // vero generando i metodi di una classe
+
+	// codice che mette sullo stack l'indirizzo dell'AR (o dell'oggetto) a nesting level nl,
+	// visto da codice a nesting level current
+	private Code frameAt(int current, int nl) {
+		if (nl == current) return lfp();
+		if (inClass && nl == 1) return nlJoin(current == 2 ? lfp() : ldisp(2), lw()); // Access Link dell'AR del metodo
+		return ldisp(nl);
+	}
+
+	/*
+	CONFRONTI E OPERATORI BOOLEANI
+
+	==, <=, >= e ! usano le istruzioni eq, le, lt e not della SVM; && e || usano and e or se
+	il secondo operando non ha effetti (vedi ReachabilityASTVisitor.hasEffects), cioe' se il
+	cortocircuito non e' osservabile, altrimenti il secondo operando viene saltato.
+	la condizione di un if non calcola il booleano ma salta direttamente al ramo (branch):
+	i confronti diventano beq e bleq, ! inverte il salto, && e || concatenano i salti e un if
+	nella condizione salta con i suoi rami.
+	*/
+
+	// salta a label se la condizione cond vale value, altrimenti prosegue
+	private Code branch(Node cond, boolean value, String label) {
+		if (cond instanceof NotNode) return branch(((NotNode) cond).exp, !value, label);
+		if (cond instanceof AndNode || cond instanceof OrNode) {
+			boolean or = cond instanceof OrNode;
+			Node left = or ? ((OrNode) cond).left : ((AndNode) cond).left;
+			Node right = or ? ((OrNode) cond).right : ((AndNode) cond).right;
+			// a||b vale true (a&&b vale false) se lo vale uno dei due operandi
+			if (value == or) return nlJoin(branch(left, value, label), branch(right, value, label));
+			String skip = context.freshLabel();
+			return nlJoin(branch(left, !value, skip), branch(right, value, label), label(skip));
+		}
+		if (cond instanceof IfNode) { // condizione scelta da un if (es. dopo l'inlining)
+			IfNode c = (IfNode) cond;
+			String th = context.freshLabel(), end = context.freshLabel();
+			return nlJoin(branch(c.cond, true, th), branch(c.el, value, label), b(end), label(th), branch(c.th, value, label), label(end));
+		}
+		if (!value && (cond instanceof EqualNode || cond instanceof LessEqualNode || cond instanceof GreaterEqualNode)) {
+			String skip = context.freshLabel(); // confronto falso: si salta se il salto sul confronto vero non e' preso
+			return nlJoin(branch(cond, true, skip), b(label), label(skip));
+		}
+		if (cond instanceof EqualNode) {
+			EqualNode eq = (EqualNode) cond;
+			return nlJoin(visit(eq.left), visitAbove(isRef(eq.left), eq.right), beq(label));
+		}
+		if (cond instanceof LessEqualNode) {
+			LessEqualNode le = (LessEqualNode) cond;
+			return nlJoin(visit(le.left), visitAbove(false, le.right), bleq(label));
+		}
+		if (cond instanceof GreaterEqualNode) {
+			GreaterEqualNode ge = (GreaterEqualNode) cond;
+			return nlJoin(visit(ge.right), visitAbove(false, ge.left), bleq(label));
+		}
+		return nlJoin(visit(cond), push(value ? 1 : 0), beq(label));
+	}
+
+	// vero se gli operandi di un confronto si possono valutare in ordine inverso
+	private static boolean swappable(Node left, Node right) {
+		return !ReachabilityASTVisitor.hasEffects(left) || !ReachabilityASTVisitor.hasEffects(right);
+	}
+
+	// visita n mentre sullo stack c'e' un valore temporaneo in piu'
+	private Code visitAbove(boolean tempRef, Node n) {
+		frameRefs.add(tempRef);
+		Code code = visit(n);
+		frameRefs.remove(frameRefs.size() - 1);
+		return code;
+	}
+
+	/*
+	NOMI PER IL PROFILER DELLA SVM
+
+	dopo la label di ogni funzione e metodo viene emessa la direttiva fname "nome", con il
+	nome qualificato dalle funzioni e dalla classe che lo contengono (es. "sumTo.loop",
+	"List.first"): scope e' il nome della funzione, del metodo o della classe corrente
+	*/
+	private String scope = null;
+
+	private String scopedName(String id) {
+		return scope == null ? id : scope + "." + id;
+	}
+
+	// genera il corpo della funzione o del metodo name con le mappe del suo AR
+	// (a nesting level bodyLevel), tra enter e leave del display se ha funzioni annidate
+	private Code visitBody(String name, int bodyLevel, List<ParNode> parlist, boolean accessLinkIsRef, List<DecNode> declist, Node exp) {
+		List<Boolean> prevParRefs = parRefs, prevFrameRefs = frameRefs;
+		boolean prevAccessLinkRef = accessLinkRef;
+		Node prevTailPosition = tailPosition;
+		String prevScope = scope;
+		int prevLevel = level;
+		boolean prevDisplayed = displayed;
+		scope = name;
+		level = bodyLevel;
+		displayed = declist.stream().anyMatch(dec -> dec instanceof FunNode);
+		parRefs = new ArrayList<>();
+		for (ParNode par : parlist) parRefs.add(par.getType() instanceof RefTypeNode);
+		accessLinkRef = accessLinkIsRef;
+		frameRefs = new ArrayList<>();
+		tailPosition = null;
+		Code declCode = visitDecs(declist);
+		tailPosition = exp;
+		Code code = displayed ? nlJoin(enter(level), declCode, visit(exp), leave(level)) : nlJoin(declCode, visit(exp));
+		parRefs = prevParRefs;
+		frameRefs = prevFrameRefs;
+		accessLinkRef = prevAccessLinkRef;
+		tailPosition = prevTailPosition;
+		scope = prevScope;
+		level = prevLevel;
+		displayed = prevDisplayed;
+		return code;
+	}
+
+	// ogni dichiarazione lascia sullo stack il suo valore
+	private Code visitDecs(List<DecNode> declist) {
+		Code declCode = null;
+		for (DecNode dec : declist) {
+			declCode = nlJoin(declCode, visit(dec));
+			frameRefs.add(dec instanceof VarNode && dec.getType() instanceof RefTypeNode);
+		}
+		return declCode;
+	}
+
+	// vero se il valore dell'espressione e' un riferimento: lo dice il tipo calcolato dal type
+	// checking (copiato nei nodi ricreati dalle ottimizzazioni), quindi vale anche per le
+	// espressioni che restituiscono un loro sottoalbero, come print e if
+	private static boolean isRef(Node n) {
+		return n.getExpType() instanceof RefTypeNode;
+	}
 
 	/*
 	LAYOUT AR DELL'AMBIENTE GLOBALE
@@ -27,129 +250,157 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	valore/addr ultima (n-esima) var/funz     [offset -(n+1)]
 	* */
 	@Override
-	public String visitNode(ProgLetInNode n) {
+	public Code visitNode(ProgLetInNode n) {
 		if (print) printNode(n);
-		String declCode = null;
-		for (Node dec : n.declist) declCode=nlJoin(declCode,visit(dec));
+		Code declCode = null;
+		for (DecNode dec : n.declist) {
+			declCode = nlJoin(declCode, cache != null && dec instanceof FunNode ? visitCached((FunNode) dec) : visit(dec));
+			frameRefs.add(dec instanceof VarNode && dec.getType() instanceof RefTypeNode);
+		}
 		return nlJoin(
-			"push 0",	// ra fittizio per uniformare gli offset
+			push(0),	// ra fittizio per uniformare gli offset
 			declCode, // generate code for declarations (allocation)			
 			visit(n.exp),
-			"halt",
-			getCode()
+			halt(),
+			context.getCode()
 		);
 	}
 
+	/*
+	funzione globale con il codice nella CompilationCache: le label del suo codice (compreso
+	quello delle funzioni annidate) iniziano con la chiave della dichiarazione, quindi il codice
+	e' lo stesso sia quando viene generato (con un CompilationContext apposito) sia quando
+	viene dalla cache, e non si scontra con le label delle altre dichiarazioni
+	*/
+	private Code visitCached(FunNode n) {
+		String key = cache.declarationKey(n);
+		String prefix = "d"+key.substring(0, 16)+"_";
+		Code funCode = cache.loadDeclaration(key);
+		if (funCode == null) {
+			CompilationContext programContext = context;
+			context = new CompilationContext(programContext.out, prefix);
+			visit(n);
+			funCode = context.getCode();
+			context = programContext;
+			try {
+				cache.storeDeclaration(key, funCode);
+			} catch (IOException e) {
+				context.out.println("Cannot write compilation cache: "+e.getMessage());
+			}
+		}
+		context.putCode(funCode);
+		return push(prefix+"function0"); // label della funzione, la prima generata
+	}
+
 	@Override
-	public String visitNode(ProgNode n) {
+	public Code visitNode(ProgNode n) {
 		if (print) printNode(n);
 		return nlJoin(
 			visit(n.exp),
-			"halt"
+			halt()
 		);
 	}
 
 	@Override
-	public String visitNode(FunNode n) {
+	public Code visitNode(FunNode n) {
 	  /*
-	  salva il corpo della funzione sfruttando FOOLLib.putCode().
-	  Il corpo verrà recuperato successivamente grazie a FOOLLib.getCode() e posto subito dopo halt
+	  salva il corpo della funzione sfruttando CompilationContext.putCode().
+	  Il corpo verrà recuperato successivamente grazie a CompilationContext.getCode() e posto subito dopo halt
 	  * */
 		if (print) printNode(n,n.id);
-		String declCode = null, popDecl = null, popParl = null;
-		for (Node dec : n.declist) {
-			declCode = nlJoin(declCode,visit(dec));
-			popDecl = nlJoin(popDecl,"pop");
-		}
-		for (int i=0;i<n.parlist.size();i++) popParl = nlJoin(popParl,"pop");
-		String funl = freshFunLabel();
-		putCode(
+		Code popDecl = null, popParl = null;
+		for (int i=0;i<n.declist.size();i++) popDecl = nlJoin(popDecl,pop());
+		for (int i=0;i<n.parlist.size();i++) popParl = nlJoin(popParl,pop());
+		String funl = context.freshFunLabel();
+		String name = scopedName(n.id);
+		context.putCode(
 			nlJoin(
-				funl+":", // label della funzione
-				"cfp", // set $fp to $sp value, $fp punta al nuovo record di attivazione
-				"lra", // push di $ra sullo stack, utilizzato per accedere all'istruzione successiva alla terminazione della chiamata
-				declCode, // generate code for local declarations (they use the new $fp!!!)
-				visit(n.exp), // generate code for function body expression
-				"stm", // set $tm to popped value (function result)
+				label(funl), // label della funzione
+				fname(name), // nome della funzione per il profiler
+				cfp(), // set $fp to $sp value, $fp punta al nuovo record di attivazione
+				lra(), // push di $ra sullo stack, utilizzato per accedere all'istruzione successiva alla terminazione della chiamata
+				visitBody(name, n.entry.nl + 1, n.parlist, false, n.declist, n.exp), // generate code for local declarations (they use the new $fp!!!)
+															// and for function body expression
+				stm(), // set $tm to popped value (function result)
 				popDecl, // remove local declarations from stack
-				"sra", // set $ra to popped value
-				"pop", // remove Access Link from stack
+				sra(), // set $ra to popped value
+				pop(), // remove Access Link from stack
 				popParl, // remove parameters from stack
-				"sfp", // set $fp to popped value (Control Link), il controllo ritorna alla funzione chiamante
-				"ltm", // load $tm value (function result)
-				"lra", // load $ra value, carico l'indirizzo che contiene l'istruzione da eseguire alla fine della chiamata
-				"js"  // jump to popped address (saving address of subsequent instruction in $ra)
+				sfp(), // set $fp to popped value (Control Link), il controllo ritorna alla funzione chiamante
+				ltm(), // load $tm value (function result)
+				lra(), // load $ra value, carico l'indirizzo che contiene l'istruzione da eseguire alla fine della chiamata
+				js()  // jump to popped address (saving address of subsequent instruction in $ra)
 			)
 		);
-		return "push "+funl;		
+		return push(funl);		
 	}
 
 	@Override
-	public String visitNode(VarNode n) {
+	public Code visitNode(VarNode n) {
 		if (print) printNode(n,n.id);
 		return visit(n.exp);
 	}
 
 	@Override
-	public String visitNode(PrintNode n) {
+	public Code visitNode(PrintNode n) {
 		if (print) printNode(n);
 		return nlJoin(
 			visit(n.exp),
-			"print"
+			print()
 		);
 	}
 
 	@Override
-	public String visitNode(IfNode n) {
+	public Code visitNode(IfNode n) {
 		if (print) printNode(n);
-		String l1 = freshLabel();
-		String l2 = freshLabel();
+		String l1 = context.freshLabel();
+		String l2 = context.freshLabel();
+		// se l'if e' in posizione di coda lo sono anche i suoi rami
+		boolean tail = n == tailPosition;
+		// if (!c) then a else b: si salta al ramo else se c e' vero
+		boolean negated = n.cond instanceof NotNode;
+		Code condCode = branch(negated ? ((NotNode) n.cond).exp : n.cond, true, l1);
+		if (tail) tailPosition = n.th;
+		Code thCode = visit(n.th);
+		if (tail) tailPosition = n.el;
+		Code elCode = visit(n.el);
 		return nlJoin(
-		visit(n.cond),
-		"push 1",
-		"beq "+l1,
-		visit(n.el),
-		"b "+l2,
-		l1+":",
-		visit(n.th),
-		l2+":"
+		condCode,
+		negated ? thCode : elCode,
+		b(l2),
+		label(l1),
+		negated ? elCode : thCode,
+		label(l2)
 		);
 	}
 
 	@Override
-	public String visitNode(EqualNode n) {
+	public Code visitNode(EqualNode n) {
 		if (print) printNode(n);
-		String l1 = freshLabel();
-	 	String l2 = freshLabel();
 		return nlJoin(
 			visit(n.left),
-			visit(n.right),
-			"beq "+l1,
-			"push 0",
-			"b "+l2,
-			l1+":",
-			"push 1",
-			l2+":"
+			visitAbove(isRef(n.left), n.right),
+			eq()
 		);
 	}
 
 	@Override
-	public String visitNode(TimesNode n) {
+	public Code visitNode(TimesNode n) {
 		if (print) printNode(n);
 		return nlJoin(
 			visit(n.left),
-			visit(n.right),
-			"mult"
+			visitAbove(false, n.right),
+			mult()
 		);	
 	}
 
 	@Override
-	public String visitNode(PlusNode n) {
+	public Code visitNode(PlusNode n) {
 		if (print) printNode(n);
 		return nlJoin(
 			visit(n.left),
-			visit(n.right),
-			"add"
+			visitAbove(false, n.right),
+			add()
 		);
 	}
 
@@ -170,195 +421,179 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 		valore/addr ultima (n-esima) var/funz     [offset -(n+1)]
 	* */
 	@Override
-	public String visitNode(CallNode n) {
+	public Code visitNode(CallNode n) {
 		if (print) printNode(n,n.id);
-		String argCode = null;
-		String getAR = null;
-		// codice degli argomenti al contrario (m -> 1)
-		for (int i = n.arglist.size() - 1; i >= 0 ; i--) argCode = nlJoin(argCode,visit(n.arglist.get(i)));
-		// codice per accedere alla dichiarazione della funzione/metodo
-		// risale la catena statica degli AL
-		for (int i = 0; i < n.nl - n.entry.nl; i++) getAR = nlJoin(getAR,"lw");
+		Code argCode = null;
+		// una chiamata in coda riusa il Control Link dell'AR corrente; non e' possibile se il
+		// chiamato e' dichiarato nell'AR corrente, che e' il suo Access Link
+		boolean tail = n == tailPosition && n.nl > n.entry.nl;
+		Code controlLink = tail ? null : lfp();
+		// codice degli argomenti al contrario (m -> 1), sopra al Control Link
+		int temps = frameRefs.size();
+		if (!tail) frameRefs.add(false);
+		for (int i = n.arglist.size() - 1; i >= 0 ; i--) {
+			argCode = nlJoin(argCode,visit(n.arglist.get(i)));
+			frameRefs.add(isRef(n.arglist.get(i)));
+		}
+		frameRefs.subList(temps, frameRefs.size()).clear();
+		// salto al chiamato (con nuovo AR o sostituendo quello corrente)
+		Code jump = tail ? tailCall(n.arglist.size()) : nlJoin(
+				js(),  // jump to popped address (saving address of subsequent instruction in $ra)
+				stackMap() // riferimenti nell'AR corrente all'indirizzo di ritorno
+		);
+		// codice per accedere all'AR (o all'oggetto) con la dichiarazione della funzione/metodo
+		Code getAR = frameAt(n.nl, n.entry.nl);
 		if ((n.entry.type instanceof MethodTypeNode)){
 			return nlJoin(
-					"lfp", // prendo $fp (che punta al chiamante) e lo pusho sullo stack, verrà usato come Control Link
+					controlLink, // prendo $fp (che punta al chiamante) e lo pusho sullo stack, verrà usato come Control Link
 					argCode, // codice degli argomenti in ordine inverso
-					"lfp", // metto sullo stack il frame pointer per risalire la catena di AL
 					getAR, // retrieve address of frame containing "id" declaration
-							// by following the static chain (of Access Links)
+							// (from the display, see frameAt)
 							// sulla cima dello stack ho l'AL, che deve puntare al frame con la dichiarazione della funzione.
 							// siccome oltre a lasciare l'AL sulla cima dello stack (per rispettare il layout) lo devo anche usare
 							// allora lo duplico usando il registro temporaneo
-					"stm", // set $tm to popped value (with the aim of duplicating top of stack)
-					"ltm", // load Access Link (pointer to frame of function "id" declaration)
-					"ltm", // duplicate top of stack
-					"lw", // dereferenzio e accedo alla dispatch table
-					"push " + n.entry.offset,
-					"add", // calcolo l'indirizzo della dichiarazione del metodo
-					"lw", // carico l'indirizzo della dichiarazione a cui saltare
-					"js"  // jump to popped address (saving address of subsequent instruction in $ra)
+					stm(), // set $tm to popped value (with the aim of duplicating top of stack)
+					ltm(), // load Access Link (pointer to frame of function "id" declaration)
+					ltm(), // duplicate top of stack
+					dispatch(n.entry.offset), // carico l'indirizzo del metodo dalla dispatch table (con inline cache)
+					jump
 			);
 		} else {
 			return nlJoin(
-					"lfp", // prendo $fp (che punta ancora al chiamante) e lo pusho sullo stack, verrà usato come Control Link
+					controlLink, // prendo $fp (che punta ancora al chiamante) e lo pusho sullo stack, verrà usato come Control Link
 					argCode, // codice degli argomenti in ordine inverso
-					"lfp", // metto sullo stack il frame pointer per risalire la catena di AL
 					getAR, // retrieve address of frame containing "id" declaration
-							// by following the static chain (of Access Links)
+							// (from the display, see frameAt)
 							// sulla cima dello stack ho l'AL, che deve puntare al frame con la dichiarazione della funzione.
 							// siccome oltre a lasciare l'AL sulla cima dello stack (per rispettare il layout) lo devo anche usare
 							// allora lo duplico usando il registro temporaneo
-					"stm", // set $tm to popped value (with the aim of duplicating top of stack)
-					"ltm", // load Access Link (pointer to frame of function "id" declaration)
-					"ltm", // duplicate top of stack
-					"push "+ n.entry.offset,
-					"add", // calcolo l'indirizzo della dichiarazione della funzione
-					"lw", // carico l'indirizzo della dichiarazione a cui saltare
-					"js"  // jump to popped address (saving address of subsequent instruction in $ra)
+					stm(), // set $tm to popped value (with the aim of duplicating top of stack)
+					ltm(), // load Access Link (pointer to frame of function "id" declaration)
+					ltm(), // duplicate top of stack
+					push(n.entry.offset),
+					add(), // calcolo l'indirizzo della dichiarazione della funzione
+					lw(), // carico l'indirizzo della dichiarazione a cui saltare
+					jump
 			);
 		}
 	}
 
 	@Override
-	public String visitNode(IdNode n) {
+	public Code visitNode(IdNode n) {
 		if (print) printNode(n,n.id);
-		String getAR = null;
-		// codice per accedere alla dichiarazione della variabile
-		// risale la catena statica degli AL
-		for (int i = 0;i<n.nl-n.entry.nl;i++) getAR=nlJoin(getAR,"lw");
 		return nlJoin(
-				"lfp",
-				getAR, // retrieve address of frame containing "id" declaration
-						// by following the static chain (of Access Links)
-				"push "+n.entry.offset, "add", // compute address of "id" declaration
-				"lw" // load value of "id" variable
+				frameAt(n.nl, n.entry.nl), // retrieve address of frame containing "id" declaration
+						// (from the display, see frameAt)
+				push(n.entry.offset), add(), // compute address of "id" declaration
+				lw() // load value of "id" variable
 		);
 	}
 
 	@Override
-	public String visitNode(BoolNode n) {
+	public Code visitNode(BoolNode n) {
 		if (print) printNode(n,n.val.toString());
-		return "push "+(n.val?1:0);
+		return push(n.val?1:0);
 	}
 
 	@Override
-	public String visitNode(IntNode n) {
+	public Code visitNode(IntNode n) {
 		if (print) printNode(n,n.val.toString());
-		return "push "+n.val;
+		return push(n.val);
 	}
 
 	// OPERATOR EXTENSION
 
 	@Override
-	public String visitNode(GreaterEqualNode n) {
+	public Code visitNode(GreaterEqualNode n) {
 		if (print) printNode(n);
-		String l1 = freshLabel();
-		String l2 = freshLabel();
 		return nlJoin(
 				visit(n.right),
-				visit(n.left),
-				"sub", // right - left
-				"push 0",
-				"bleq "+l1,
-				"push 0",
-				"b "+l2,
-				l1+":",
-				"push 1",
-				l2+":"
+				visitAbove(false, n.left),
+				le() // right <= left
 		);
 	}
 
 	@Override
-	public String visitNode(LessEqualNode n) {
+	public Code visitNode(LessEqualNode n) {
 		if (print) printNode(n);
-		String l1 = freshLabel();
-		String l2 = freshLabel();
 		return nlJoin(
 				visit(n.left),
-				visit(n.right),
-				"bleq "+l1,
-				"push 0",
-				"b "+l2,
-				l1+":",
-				"push 1",
-				l2+":"
+				visitAbove(false, n.right),
+				le()
 		);
 	}
 
 	@Override
-	public String visitNode(NotNode n) {
+	public Code visitNode(NotNode n) {
 		if (print) printNode(n);
-		String l1 = freshLabel();
-		String l2 = freshLabel();
+		// !(a <= b) e' b < a, !(a >= b) e' a < b
+		if (n.exp instanceof LessEqualNode) {
+			LessEqualNode le = (LessEqualNode) n.exp;
+			if (swappable(le.left, le.right)) return nlJoin(visit(le.right), visitAbove(false, le.left), lt());
+		}
+		if (n.exp instanceof GreaterEqualNode) {
+			GreaterEqualNode ge = (GreaterEqualNode) n.exp;
+			if (swappable(ge.left, ge.right)) return nlJoin(visit(ge.left), visitAbove(false, ge.right), lt());
+		}
 		return nlJoin(
 				visit(n.exp),
-				"push 0",
-				"beq "+l1,
-				"push 0",
-				"b "+l2,
-				l1+":",
-				"push 1",
-				l2+":"
+				not()
 		);
 	}
 
 	@Override
-	public String visitNode(MinusNode n) {
+	public Code visitNode(MinusNode n) {
 		if (print) printNode(n);
 		return nlJoin(
 				visit(n.left),
-				visit(n.right),
-				"sub"
+				visitAbove(false, n.right),
+				sub()
 		);
 	}
 
 	@Override
-	public String visitNode(OrNode n) {
+	public Code visitNode(OrNode n) {
 		if (print) printNode(n);
-		String l1 = freshLabel();
-		String l2 = freshLabel();
+		if (!ReachabilityASTVisitor.hasEffects(n.right)) return nlJoin(visit(n.left), visitAbove(false, n.right), or());
+		String l1 = context.freshLabel();
+		String l2 = context.freshLabel();
 		return nlJoin(
 				visit(n.left),
-				"push 1",
-				"beq "+l1,
-				visit(n.right),
-				"push 1",
-				"beq "+l1,
-				"push 0",
-				"b "+l2,
-				l1+":",
-				"push 1",
-				l2+":"
+				push(1),
+				beq(l1),
+				visit(n.right), // se left e' false il risultato e' right
+				b(l2),
+				label(l1),
+				push(1),
+				label(l2)
 		);
 	}
 
 	@Override
-	public String visitNode(DivNode n) {
+	public Code visitNode(DivNode n) {
 		if (print) printNode(n);
 		return nlJoin(
 				visit(n.left),
-				visit(n.right),
-				"div"
+				visitAbove(false, n.right),
+				div()
 		);
 	}
 
 	@Override
-	public String visitNode(AndNode n) {
+	public Code visitNode(AndNode n) {
 		if (print) printNode(n);
-		String l1 = freshLabel();
-		String l2 = freshLabel();
+		if (!ReachabilityASTVisitor.hasEffects(n.right)) return nlJoin(visit(n.left), visitAbove(false, n.right), and());
+		String l1 = context.freshLabel();
+		String l2 = context.freshLabel();
 		return nlJoin(
 				visit(n.left),
-				"push 0",
-				"beq "+l1,
-				visit(n.right),
-				"push 0",
-				"beq "+l1,
-				"push 1",
-				"b "+l2,
-				l1+":",
-				"push 0",
-				l2+":"
+				push(0),
+				beq(l1),
+				visit(n.right), // se left e' true il risultato e' right
+				b(l2),
+				label(l1),
+				push(0),
+				label(l2)
 		);
 	}
 
@@ -373,7 +608,7 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	*/
 
 	@Override
-	public String visitNode(ClassNode n) {
+	public Code visitNode(ClassNode n) {
 		if (print) printNode(n, n.id);
 		/*
 		 * Ritorna codice che alloca su heap la dispatch table
@@ -391,10 +626,15 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 			- aggiorno la Dispatch Table creata settando la posizione data
 				dall’offset del metodo alla sua etichetta
 		 */
+		String prevScope = scope;
+		scope = scopedName(n.id); // i metodi si chiamano Classe.metodo
+		inClass = true; // nel corpo dei metodi il nesting level 1 e' l'oggetto
 		n.methods.forEach(method -> {
 			visit(method);
 			dispatchTable.add(method.label);
 		});
+		inClass = false;
+		scope = prevScope;
 		// codice ritornato
 		/*
 		1 - metto valore di $hp sullo stack: sarà il dispatch
@@ -403,16 +643,33 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 		scorro dall’inizio alla fine e, per ciascuna etichetta,
 		la memorizzo a indirizzo in $hp e incremento $hp
 		 */
-		String buildDispatchTable = nlJoin("lhp"); // push di hp sullo stack, ingresso per la dispatch table
+		/*
+		0 - sotto la Dispatch Table scrivo la mappa dei campi: un flag per campo
+		(1 se il campo e' un riferimento, dall'ultimo al primo) e poi il numero di
+		campi, che si trova quindi a offset -1 dal dispatch pointer
+		 */
+		Code fieldMap = null;
+		List<TypeNode> allFields = n.type.allFields;
+		for (int i = allFields.size() - 1; i >= -1; i--) {
+			fieldMap = nlJoin(fieldMap,
+					push(i < 0 ? allFields.size() : allFields.get(i) instanceof RefTypeNode ? 1 : 0),
+					lhp(),
+					sw(), // flag del campo i+1 (numero di campi per i = -1) all'indirizzo in hp
+					lhp(),
+					push(1),
+					add(),
+					shp()); // incremento hp di 1
+		}
+		Code buildDispatchTable = nlJoin(fieldMap, lhp()); // push di hp sullo stack, ingresso per la dispatch table
 		for (String methodLabel: dispatchTable) {
 			buildDispatchTable = nlJoin(buildDispatchTable,
-					"push " + methodLabel, // push della label del metodo sullo stack
-					"lhp", // push di hp sullo stack
-					"sw", // pop dei due valori e metto il secondo all'indirizzo puntato dal primo (label del metodo nello heap)
-					"lhp", // push di hp sullo stack
-					"push 1", // push di 1 sullo stack
-					"add", // sommo i due valori
-					"shp"); // memorizzo il risultato in hp (incremento hp di 1)
+					push(methodLabel), // push della label del metodo sullo stack
+					lhp(), // push di hp sullo stack
+					sw(), // pop dei due valori e metto il secondo all'indirizzo puntato dal primo (label del metodo nello heap)
+					lhp(), // push di hp sullo stack
+					push(1), // push di 1 sullo stack
+					add(), // sommo i due valori
+					shp()); // memorizzo il risultato in hp (incremento hp di 1)
 		}
 		return buildDispatchTable;
 	}
@@ -423,44 +680,46 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	.
 	.
 	addr primo metodo dichiarato		[offset 0] <- dispatch pointer
+	numero di campi n					[offset -1]
+	1 se il primo campo e' un riferimento	[offset -2]
+	.
+	.
+	1 se l'ultimo campo e' un riferimento	[offset -(n+1)]
 	* */
 	@Override
-	public String visitNode(MethodNode n) {
+	public Code visitNode(MethodNode n) {
 		if (print) printNode(n,n.id);
 		/*
 		* genera un’etichetta nuova per il suo indirizzo e la
 		* mette nel suo campo "label"
 		*/
-		String methl = freshLabel();
+		String methl = context.freshLabel();
 		n.label = methl;
 		/*
 		* genera il codice del metodo (invariato rispetto a
-		* funzioni) e lo inserisce in FOOLlib con putCode()
+		* funzioni) e lo inserisce nel CompilationContext con putCode()
 		*/
-		String declCode = null;
-		String popDecl = null;
-		String popParl = null;
-		for (Node dec : n.declist) {
-			declCode = nlJoin(declCode,visit(dec));
-			popDecl = nlJoin(popDecl,"pop");
-		}
-		for (ParNode p : n.parlist) popParl = nlJoin(popParl,"pop");
-		putCode(
+		Code popDecl = null;
+		Code popParl = null;
+		for (int i = 0; i < n.declist.size(); i++) popDecl = nlJoin(popDecl,pop());
+		for (ParNode p : n.parlist) popParl = nlJoin(popParl,pop());
+		context.putCode(
 				nlJoin(
-						methl+":", // label del metodo
-						"cfp", // set $fp to $sp value, l'Acces Link è sulla cima dello stack
-						"lra", // push di $ra sullo stack, utilizzato per accedere all'istruzione successiva alla terminazione della chiamata
-						declCode, // generate code for local declarations (they use the new $fp!!!)
-						visit(n.exp), // generate code for method body expression
-						"stm", // set $tm to popped value (method result)
+						label(methl), // label del metodo
+						fname(scopedName(n.id)), // nome del metodo per il profiler
+						cfp(), // set $fp to $sp value, l'Acces Link è sulla cima dello stack
+						lra(), // push di $ra sullo stack, utilizzato per accedere all'istruzione successiva alla terminazione della chiamata
+						visitBody(scopedName(n.id), n.entry.nl + 1, n.parlist, true, n.declist, n.exp), // generate code for local declarations (they use the new $fp!!!)
+																	// and for method body expression (l'Access Link e' l'object pointer)
+						stm(), // set $tm to popped value (method result)
 						popDecl, // remove local declarations from stack
-						"sra", // set $ra to popped value
-						"pop", // remove Access Link from stack
+						sra(), // set $ra to popped value
+						pop(), // remove Access Link from stack
 						popParl, // remove parameters from stack
-						"sfp", // set $fp to popped value (Control Link), il controllo ritorna alla funzione chiamante
-						"ltm", // load $tm value (function result)
-						"lra", // // load $ra value, carico l'indirizzo che contiene l'istruzione da eseguire alla fine della chiamata
-						"js"  // jump to popped address (saving address of subsequent instruction in $ra)
+						sfp(), // set $fp to popped value (Control Link), il controllo ritorna alla funzione chiamante
+						ltm(), // load $tm value (function result)
+						lra(), // // load $ra value, carico l'indirizzo che contiene l'istruzione da eseguire alla fine della chiamata
+						js()  // jump to popped address (saving address of subsequent instruction in $ra)
 				)
 		);
 		//ritorna codice vuoto (null)
@@ -468,7 +727,7 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	}
 
 	@Override
-	public String visitNode(ClassCallNode n) throws VoidException {
+	public Code visitNode(ClassCallNode n) throws VoidException {
 		if (print) printNode(n,n.id1 + "." + n.id2);
 		/*
 		* inizia la costruzione dell’AR del metodo ID2 invocato:
@@ -484,85 +743,96 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 		* 		table riferita dal dispatch pointer dell’oggetto)
 		* 		l'indirizzo del metodo a cui saltare
 		* */
-		String argCode = null;
-		String getAR = null;
-		// argCode generato visitando le espressioni degli argomenti al contrario
-		for (int i = n.arglist.size() - 1; i >= 0; i--) argCode=nlJoin(argCode,visit(n.arglist.get(i)));
-		// nesting level della chamata - nesting level della dichiarazione dell'oggetto (ID1)
-		// risale la catena di AR a partire da quello corrente
-		for (int i = 0; i < n.nl - n.entry.nl; i++) getAR=nlJoin(getAR,"lw");
+		Code argCode = null;
+		// una chiamata in coda riusa il Control Link dell'AR corrente (vedi tailCall)
+		boolean tail = n == tailPosition;
+		// argCode generato visitando le espressioni degli argomenti al contrario, sopra al Control Link
+		int temps = frameRefs.size();
+		if (!tail) frameRefs.add(false);
+		for (int i = n.arglist.size() - 1; i >= 0; i--) {
+			argCode=nlJoin(argCode,visit(n.arglist.get(i)));
+			frameRefs.add(isRef(n.arglist.get(i)));
+		}
+		frameRefs.subList(temps, frameRefs.size()).clear();
 		return nlJoin(
-				"lfp", // load Control Link (pointer to frame of function "id" caller)
+				tail ? null : lfp(), // load Control Link (pointer to frame of function "id" caller)
 				argCode, // generate code for argument expressions in reversed order
-				"lfp", // metto sullo stack il frame pointer per risalire la catena di AL
-				getAR, // retrieve address of frame containing "id" declaration
-				// by following the static chain (of Access Links)
-				"push "+n.entry.offset,
-				"add", // compute address of "id" declaration
-				"lw", // push del dispatch pointer sullo sack
-				"stm", // set $tm to popped value (with the aim of duplicating top of stack)
-				"ltm",
-				"ltm", // duplico il dispatch pointer
-				"lw", // carico il primo indirizzo della dispatch table sullo stack
-				"push "+n.methodEntry.offset,
-				"add", // calcolo l'indirizzo del metodo a cui saltare
-				"lw", // salto all'indirizzo del metodo
-				"js"  // jump to popped address (saving address of subsequent instruction in $ra)
+				frameAt(n.nl, n.entry.nl), // retrieve address of frame containing "id" declaration
+				// (from the display, see frameAt)
+				push(n.entry.offset),
+				add(), // compute address of "id" declaration
+				lw(), // push del dispatch pointer sullo sack
+				stm(), // set $tm to popped value (with the aim of duplicating top of stack)
+				ltm(),
+				ltm(), // duplico l'object pointer
+				// carico l'indirizzo del metodo dalla dispatch table dell'oggetto (lw; push offset; add; lw),
+				// passando dall'inline cache del sito di chiamata
+				dispatch(n.methodEntry.offset),
+				tail ? tailCall(n.arglist.size()) : nlJoin(
+					js(),  // jump to popped address (saving address of subsequent instruction in $ra)
+					stackMap() // riferimenti nell'AR corrente all'indirizzo di ritorno
+				)
+		);
+	}
+
+	@Override
+	public Code visitNode(FieldAccessNode n) {
+		if (print) printNode(n,n.id1 + "." + n.id2);
+		// recupera l'object pointer ID1 come un IdNode, poi legge il campo ID2 dall'oggetto
+		// (con lo stesso offset usato dal corpo dei metodi, che hanno l'oggetto come Access Link)
+		return nlJoin(
+				frameAt(n.nl, n.entry.nl), // retrieve address of frame containing "id1" declaration
+						// (from the display, see frameAt)
+				push(n.entry.offset),
+				add(), // compute address of "id1" declaration
+				lw(), // load object pointer
+				push(n.fieldEntry.offset),
+				add(), // compute address of field "id2"
+				lw() // load value of field "id2"
 		);
 	}
 
 	@Override
-	public String visitNode(NewNode n) throws VoidException {
+	public Code visitNode(NewNode n) throws VoidException {
 		if (print) printNode(n, n.id);
-		String argCode = null;
-		String putArgToHeapCode = null;
+		Code argCode = null;
+		/*
+		* si richiama su tutti gli argomenti in ordine di apparizione
+		* (che mettono ciascuno il loro valore calcolato sullo stack)
+		*/
 		for (Node arg : n.arglist) {
-			/*
-			* – prima:
-			* 	• si richiama su tutti gli argomenti in ordine di apparizione
-			* 	(che mettono ciascuno il loro valore calcolato sullo stack)
-			*/
 			argCode=nlJoin(argCode,visit(arg));
-			/*
-			* – poi:
-			* 	• prende i valori degli argomenti, uno alla volta, dallo stack e li
-			* 	mette nello heap, incrementando $hp dopo ogni singola copia
-			*/
-			putArgToHeapCode=nlJoin(
-					putArgToHeapCode,
-					"lhp", // metto sullo stack hp
-					"sw", // metto il valore dell'argomento sullo heap
-					"lhp", // metto sullo stack hp
-					"push 1",
-					"add",
-					"shp" //incremento $hp
-			);
+			frameRefs.add(isRef(arg));
 		}
+		frameRefs.add(false); // dispatch pointer
+		Code map = stackMap();
+		frameRefs.subList(frameRefs.size() - n.arglist.size() - 1, frameRefs.size()).clear();
+		/*
+		* l'istruzione alloc prende i valori degli argomenti dallo stack e li mette
+		* nello heap insieme al dispatch pointer, con lo stesso layout ottenuto
+		* copiandoli uno alla volta all'indirizzo $hp (ultimo campo a offset -n,
+		* dispatch pointer a offset 0), e lascia sullo stack l'object pointer;
+		* l'allocazione passa dalla SVM, che puo' riusare la memoria degli oggetti
+		* raccolti dal garbage collector
+		*/
 		return nlJoin(
 				argCode,
-				putArgToHeapCode,
-				"push " + (ExecuteVM.MEMSIZE + n.entry.offset),
-				"lw",
-				"lhp",
-				"sw", //scrive a indirizzo $hp il dispatch pointer recuperandolo
-					  // contenuto indirizzo MEMSIZE + offset classe ID
-				"lhp", // carico sullo stack l'object pointer
-				"lhp", // lo duplico
-				"push 1",
-				"add",
-				"shp" // incremento $hp per farlo puntare alla cima dello heap
+				push(ExecuteVM.STACKBASE + n.entry.offset),
+				lw(), // dispatch pointer, contenuto indirizzo STACKBASE + offset classe ID
+				map, // riferimenti nell'AR corrente (compresi i valori dei campi) se alloc fa partire una raccolta
+				alloc(n.arglist.size())
 		);
 	}
 
 	@Override
-	public String visitNode(EmptyNode n) throws VoidException {
+	public Code visitNode(EmptyNode n) throws VoidException {
 		if (print) printNode(n);
 		/*
 		mette sullo stack il valore -1
 		sicuramente diverso da object pointer di ogni oggetto creato
 		 */
 		return nlJoin(
-				"push -1"
+				push(-1)
 		);
 	}
 }
@@ -0,0 +1,85 @@
+package compiler;
+
+import java.io.*;
+import org.antlr.v4.runtime.*;
+import compiler.lib.*;
+import svm.*;
+
+/*
+ * Misura come crescono i tempi della generazione del codice (e dell'assemblaggio) con la
+ * dimensione del programma, su programmi FOOL generati con un numero crescente di funzioni
+ * (ognuna con una variabile e una funzione locale); con la concatenazione lineare di
+ * svm.Code il tempo per funzione deve restare circa costante.
+ * Il programma piu' piccolo viene anche eseguito, per controllare il codice generato.
+ * Uso: java compiler.CodegenBenchmark [ripetizioni] [numero di funzioni ...]
+ */
+public class CodegenBenchmark {
+
+	private static final int[] DEFAULT_SIZES = {1000, 2000, 5000, 10000, 20000};
+
+	public static void main(String[] args) throws Exception {
+		int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int[] sizes = DEFAULT_SIZES;
+		if (args.length > 1) {
+			sizes = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) sizes[i - 1] = Integer.parseInt(args[i]);
+		}
+
+		System.out.printf("%10s %12s %14s %14s %16s %14s%n", "functions", "cells", "front-end ms", "codegen ms", "codegen us/fun", "assemble ms");
+		for (int s = 0; s < sizes.length; s++) {
+			String source = program(sizes[s]);
+			long front = Long.MAX_VALUE, codegen = Long.MAX_VALUE, assemble = Long.MAX_VALUE;
+			ObjectFile object = null;
+			for (int r = 0; r < repetitions; r++) {
+				long start = System.nanoTime();
+				CompilationContext context = new CompilationContext();
+				Node ast = frontEnd(source, context);
+				long generated = System.nanoTime();
+				Code code = SuperInstructions.fuse(new CodeGenerationASTVisitor(context).visit(ast));
+				long end = System.nanoTime();
+				object = code.assemble();
+				long assembled = System.nanoTime();
+				front = Math.min(front, generated - start);
+				codegen = Math.min(codegen, end - generated);
+				assemble = Math.min(assemble, assembled - end);
+			}
+			System.out.printf("%10d %12d %14.2f %14.2f %16.2f %14.2f%n", sizes[s], object.codeLength, front/1e6,
+				codegen/1e6, codegen/1e3/sizes[s], assemble/1e6);
+			if (s == 0) new ExecuteVM(object.code).cpu();
+		}
+	}
+
+	// programma con n funzioni: f(i) chiama f(i-1), il corpo principale chiama l'ultima
+	static String program(int n) {
+		StringBuilder source = new StringBuilder("let\n");
+		for (int i = 0; i < n; i++) {
+			source.append("  fun f").append(i).append(":int (n:int)\n")
+				.append("    let\n")
+				.append("      var a:int = n + ").append(i).append(";\n")
+				.append("      fun g:int (x:int) x * 2;\n")
+				.append("    in if (n <= 0)\n")
+				.append("      then {g(a)}\n")
+				.append("      else {").append(i == 0 ? "a" : "f" + (i - 1) + "(n - 1) + a").append("};\n");
+		}
+		return source.append("in print(f").append(n - 1).append("(3));\n").toString();
+	}
+
+	// stesse fasi di FOOLCompiler.compile fino all'ottimizzazione dell'AST
+	private static Node frontEnd(String source, CompilationContext context) {
+		FOOLLexer lexer = new FOOLLexer(CharStreams.fromString(source));
+		FOOLParser parser = new FOOLParser(new CommonTokenStream(lexer));
+		Node ast = new ASTGenerationSTVisitor().visit(TwoStageParser.parse(parser, FOOLParser::prog)); // SLL, e LL solo se serve
+		SymbolTableASTVisitor symtableVisitor = new SymbolTableASTVisitor(context);
+		symtableVisitor.visit(ast);
+		try {
+			new TypeCheckEASTVisitor(context).visit(ast);
+		} catch (Exception e) {
+			throw new IllegalStateException("Type checking failed", e);
+		}
+		if (lexer.lexicalErrors+parser.getNumberOfSyntaxErrors()+symtableVisitor.stErrors+context.typeErrors > 0)
+			throw new IllegalStateException("Front-end errors in generated program");
+		ast = new InliningASTVisitor().visit(ast);
+		ast = new ConstantFoldingASTVisitor().visit(ast);
+		return new DeadCodeEliminationASTVisitor().visit(ast);
+	}
+}
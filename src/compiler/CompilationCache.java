@@ -0,0 +1,145 @@
+package compiler;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicInteger;
+import compiler.AST.*;
+import compiler.lib.*;
+import svm.*;
+
+/*
+ * Cache di compilazione persistente, indirizzata dal contenuto, in una directory:
+ *   programs/<chiave>.svmo      file oggetto di un programma (vedi svm.ObjectFile), con chiave
+ *                               l'hash SHA-256 di VERSION, opzioni del compilatore e sorgente
+ *   declarations/<chiave>.svm   codice (con le label ancora simboliche, vedi Code.write) di una
+ *                               funzione dichiarata nell'ambiente globale, con chiave l'hash
+ *                               del suo sottoalbero dopo le ottimizzazioni
+ * Se il sorgente non e' cambiato FOOLCompiler.compile(fileName, cache) carica il file oggetto
+ * senza compilare. Altrimenti il front-end (tipi, inlining e propagazione delle costanti
+ * dipendono dalle altre dichiarazioni) e le ottimizzazioni vengono rifatti su tutto il
+ * programma, ma CodeGenerationASTVisitor riusa il codice delle funzioni globali il cui
+ * sottoalbero non e' cambiato e genera solo le altre prima di riassemblare tutto.
+ * Il sottoalbero e' hashato con la stampa di PrintEASTVisitor, che comprende le entry della
+ * symbol table (nesting level, tipo e offset delle variabili, funzioni e classi usate), cioe'
+ * tutto cio' da cui dipende il codice della funzione. Le label del codice di una dichiarazione
+ * iniziano con la sua chiave, quindi il codice e' lo stesso sia quando viene generato che
+ * quando viene dalla cache.
+ * Le scritture passano da un file temporaneo rinominato, quindi la cache puo' essere usata
+ * da piu' thread e processi; un file illeggibile viene trattato come assente.
+ */
+public class CompilationCache {
+
+	// da cambiare ad ogni modifica del compilatore o della SVM che cambi il codice generato
+	public static final String VERSION = "FOOL 22/SVMO "+ObjectFile.VERSION;
+
+	private final Path programs, declarations;
+	private final String options;
+
+	public final AtomicInteger programHits = new AtomicInteger(), programMisses = new AtomicInteger();
+	public final AtomicInteger declarationHits = new AtomicInteger(), declarationMisses = new AtomicInteger();
+
+	// options descrive le opzioni del compilatore che cambiano il codice generato
+	public CompilationCache(Path directory, String options) throws IOException {
+		programs = Files.createDirectories(directory.resolve("programs"));
+		declarations = Files.createDirectories(directory.resolve("declarations"));
+		this.options = options;
+	}
+
+	public String programKey(byte[] source) {
+		MessageDigest digest = digest();
+		digest.update((VERSION+"\0"+options+"\0").getBytes(StandardCharsets.UTF_8));
+		return HexFormat.of().formatHex(digest.digest(source));
+	}
+
+	public String declarationKey(FunNode n) {
+		HashEASTVisitor hash = new HashEASTVisitor();
+		hash.digest.update((VERSION+"\0"+options+"\0").getBytes(StandardCharsets.UTF_8));
+		hash.visit(n);
+		return HexFormat.of().formatHex(hash.digest.digest());
+	}
+
+	// file oggetto del programma con chiave key (null se non c'e')
+	public ObjectFile loadProgram(String key) {
+		Path file = programs.resolve(key+".svmo");
+		ObjectFile program = null;
+		if (Files.exists(file)) {
+			try {
+				program = ObjectFile.load(file);
+			} catch (IOException e) {
+				program = null;
+			}
+		}
+		(program != null ? programHits : programMisses).incrementAndGet();
+		return program;
+	}
+
+	public void storeProgram(String key, ObjectFile program) throws IOException {
+		Path temp = Files.createTempFile(programs, key, ".tmp");
+		program.write(temp);
+		Files.move(temp, programs.resolve(key+".svmo"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// codice della dichiarazione con chiave key (null se non c'e')
+	public Code loadDeclaration(String key) {
+		Path file = declarations.resolve(key+".svm");
+		Code code = null;
+		if (Files.exists(file)) {
+			try (BufferedReader in = Files.newBufferedReader(file)) {
+				code = Code.read(in);
+			} catch (IOException e) {
+				code = null;
+			}
+		}
+		(code != null ? declarationHits : declarationMisses).incrementAndGet();
+		return code;
+	}
+
+	public void storeDeclaration(String key, Code code) throws IOException {
+		Path temp = Files.createTempFile(declarations, key, ".tmp");
+		try (Writer out = Files.newBufferedWriter(temp)) {
+			code.write(out);
+		}
+		Files.move(temp, declarations.resolve(key+".svm"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	@Override
+	public String toString() {
+		return "programs: "+programHits+" hits, "+programMisses+" misses; declarations: "
+			+declarationHits+" hits, "+declarationMisses+" misses";
+	}
+
+	private static MessageDigest digest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // SHA-256 e' presente in ogni JVM
+		}
+	}
+
+	// stampa di PrintEASTVisitor passata al digest invece che su System.out
+	private static class HashEASTVisitor extends PrintEASTVisitor {
+		final MessageDigest digest = digest();
+
+		private void hash(String line) {
+			digest.update((indent+line+"\n").getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		protected void printNode(Node n) {
+			hash(n.getClass().getSimpleName());
+		}
+
+		@Override
+		protected void printNode(Node n, String s) {
+			hash(n.getClass().getSimpleName()+": "+s);
+		}
+
+		@Override
+		protected void printSTentry(String s) {
+			hash("STentry: "+s);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package compiler;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Locale;
+import org.antlr.v4.runtime.*;
+import compiler.lib.*;
+import svm.*;
+
+/*
+ * Compilatore residente: compila uno dopo l'altro, nella stessa JVM, i file FOOL richiesti
+ * da un client, riusando lo stesso lexer e lo stesso parser (setInputStream, setTokenStream).
+ * Le cache ATN/DFA di ANTLR (condivise tra le istanze di FOOLParser e FOOLLexer) e il codice
+ * del compilatore gia' compilato da HotSpot restano caldi tra una compilazione e l'altra: con
+ * molti file piccoli non si pagano ad ogni file l'avvio della JVM e il riscaldamento di ANTLR.
+ *
+ * Protocollo a righe (UTF-8, numeri sempre con il punto decimale, qualunque sia il locale
+ * della JVM): ogni richiesta e' il percorso di un file .fool, le risposte
+ * arrivano nello stesso ordine appena ogni file e' compilato:
+ *   ok <file> <celle di codice> <ms>   compilato, file oggetto <file>.svmo scritto
+ *   error <file> <n> <ms>              seguita da n righe con i messaggi di errore (anche
+ *                                      per un errore interno del compilatore)
+ * alla fine dell'input:
+ *   done <file compilati> <file con errori> <ms totali>
+ *
+ * Uso: java compiler.CompilerDaemon            richieste da stdin, risposte su stdout
+ *      java compiler.CompilerDaemon -port n    richieste su socket TCP locale (localhost:n),
+ *                                              ogni connessione ha il suo thread, lexer e parser
+ */
+public class CompilerDaemon {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length > 1 && args[0].equals("-port")) {
+			try (ServerSocket server = new ServerSocket(Integer.parseInt(args[1]), 50, InetAddress.getLoopbackAddress())) {
+				while (true) {
+					Socket client = server.accept();
+					new Thread(() -> {
+						try (client) {
+							new CompilerDaemon().serve(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8),
+								new PrintStream(client.getOutputStream(), false, StandardCharsets.UTF_8));
+						} catch (IOException e) {
+							System.err.println("Connection error: "+e.getMessage());
+						}
+					}).start();
+				}
+			}
+		}
+		new CompilerDaemon().serve(new InputStreamReader(System.in, StandardCharsets.UTF_8), System.out);
+	}
+
+	// lexer, token stream e parser riusati per tutte le compilazioni di un client
+	private final FOOLLexer lexer = new FOOLLexer(CharStreams.fromString(""));
+	private final CommonTokenStream tokens = new CommonTokenStream(lexer);
+	private final FOOLParser parser = new FOOLParser(tokens);
+
+	private int compiled = 0, failed = 0;
+
+	// compila i file richiesti su in (uno per riga) fino alla fine dell'input
+	void serve(Reader in, PrintStream out) throws IOException {
+		BufferedReader requests = new BufferedReader(in);
+		long start = System.nanoTime();
+		String line;
+		while ((line = requests.readLine()) != null) {
+			String fileName = line.trim();
+			if (fileName.isEmpty()) continue;
+			compile(fileName, out);
+			out.flush();
+		}
+		out.printf(Locale.ROOT, "done %d %d %.3f%n", compiled, failed, (System.nanoTime() - start)/1e6);
+		out.flush();
+	}
+
+	// compila fileName e scrive la risposta su out
+	private void compile(String fileName, PrintStream out) {
+		long start = System.nanoTime();
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		CompilationContext context = new CompilationContext(new PrintStream(errors, true, StandardCharsets.UTF_8));
+		ObjectFile program;
+		try {
+			lexer.setInputStream(CharStreams.fromFileName(fileName));
+			lexer.lexicalErrors = 0;
+			tokens.setTokenSource(lexer);
+			parser.setTokenStream(tokens); // azzera anche il numero di errori sintattici
+			program = FOOLCompiler.compile(lexer, parser, fileName, context, null);
+			program.write(Paths.get(fileName+".svmo"));
+		} catch (IOException e) {
+			context.out.println("Cannot read or write "+e.getMessage());
+			program = null;
+		} catch (IllegalStateException e) {
+			context.out.println(e.getMessage());
+			program = null;
+		} catch (RuntimeException e) { // errore interno del compilatore: il daemon resta attivo
+			context.out.println("Internal compiler error: "+e);
+			program = null;
+		}
+		double ms = (System.nanoTime() - start)/1e6;
+		if (program != null) {
+			compiled++;
+			out.printf(Locale.ROOT, "ok %s %d %.3f%n", fileName, program.codeLength, ms);
+		} else {
+			failed++;
+			String[] messages = errors.toString(StandardCharsets.UTF_8).split("\\R");
+			out.printf(Locale.ROOT, "error %s %d %.3f%n", fileName, messages.length, ms);
+			for (String message : messages) out.println(message);
+		}
+	}
+}
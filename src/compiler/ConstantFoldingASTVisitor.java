@@ -0,0 +1,176 @@
+package compiler;
+
+import java.util.*;
+import compiler.AST.*;
+import compiler.lib.*;
+
+/*
+ * Ottimizzazione dell'AST arricchito, tra il type checking e la generazione del codice.
+ * visitNode(n) ritorna il nodo che sostituisce n:
+ * - gli operatori aritmetici, booleani e di confronto con operandi costanti vengono
+ *   calcolati (es. 2*3+x diventa 6+x, !(true) diventa false);
+ * - un if con condizione costante viene sostituito dal ramo scelto;
+ * - le variabili (var) inizializzate con una costante vengono propagate: gli IdNode che le
+ *   usano (riconosciuti dalla STentry della dichiarazione) diventano la costante stessa.
+ * Le dichiarazioni restano tutte al loro posto, in modo da non cambiare gli offset assegnati
+ * da SymbolTableASTVisitor; gli altri nodi vengono ricreati come in RewriteEASTVisitor.
+ * Non vengono eliminate sottoespressioni che potrebbero avere effetti (print, chiamate):
+ * es. x*0 resta invariato, mentre false && x diventa false perche' x non verrebbe comunque
+ * valutato (and e or sono generati in corto circuito).
+ */
+public class ConstantFoldingASTVisitor extends RewriteEASTVisitor {
+
+	// valore costante delle variabili propagabili, per STentry della dichiarazione
+	private final Map<STentry, Node> constants = new HashMap<>();
+
+	ConstantFoldingASTVisitor() {}
+	ConstantFoldingASTVisitor(boolean debug) { super(debug); } // enables print for debugging
+
+	private static boolean isConst(Node n) {
+		return n instanceof IntNode || n instanceof BoolNode;
+	}
+
+	// valore intero di una costante (i booleani valgono 0/1 come nella SVM)
+	private static int intValue(Node n) {
+		return n instanceof IntNode ? ((IntNode) n).val : ((BoolNode) n).val ? 1 : 0;
+	}
+
+	private static Node constant(Node n, Node old) {
+		return n instanceof IntNode ? at(new IntNode(((IntNode) n).val), old) : at(new BoolNode(((BoolNode) n).val), old);
+	}
+
+	private static boolean isTrue(Node n) {
+		return n instanceof BoolNode && ((BoolNode) n).val;
+	}
+
+	private static boolean isFalse(Node n) {
+		return n instanceof BoolNode && !((BoolNode) n).val;
+	}
+
+	private static boolean isInt(Node n, int v) {
+		return n instanceof IntNode && ((IntNode) n).val == v;
+	}
+
+	@Override
+	public Node visitNode(VarNode n) {
+		if (print) printNode(n,n.id);
+		Node exp = visit(n.exp);
+		// le variabili non sono riassegnabili: il valore iniziale costante vale per ogni uso
+		if (isConst(exp)) constants.put(n.entry, exp);
+		VarNode var = at(new VarNode(n.id, n.getType(), exp), n);
+		var.entry = n.entry;
+		return var;
+	}
+
+	@Override
+	public Node visitNode(IfNode n) {
+		if (print) printNode(n);
+		Node cond = visit(n.cond);
+		if (isTrue(cond)) return visit(n.th);
+		if (isFalse(cond)) return visit(n.el);
+		return at(new IfNode(cond, visit(n.th), visit(n.el)), n);
+	}
+
+	@Override
+	public Node visitNode(EqualNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left), right = visit(n.right);
+		if (isConst(left) && isConst(right)) return at(new BoolNode(intValue(left) == intValue(right)), n);
+		if (left instanceof EmptyNode && right instanceof EmptyNode) return at(new BoolNode(true), n);
+		return at(new EqualNode(left, right), n);
+	}
+
+	@Override
+	public Node visitNode(TimesNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left), right = visit(n.right);
+		if (isConst(left) && isConst(right)) return at(new IntNode(intValue(left) * intValue(right)), n);
+		if (isInt(left, 1)) return right;
+		if (isInt(right, 1)) return left;
+		return at(new TimesNode(left, right), n);
+	}
+
+	@Override
+	public Node visitNode(PlusNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left), right = visit(n.right);
+		if (isConst(left) && isConst(right)) return at(new IntNode(intValue(left) + intValue(right)), n);
+		if (isInt(left, 0)) return right;
+		if (isInt(right, 0)) return left;
+		return at(new PlusNode(left, right), n);
+	}
+
+	@Override
+	public Node visitNode(IdNode n) {
+		Node value = constants.get(n.entry);
+		if (value == null) return super.visitNode(n);
+		if (print) printNode(n,n.id);
+		return constant(value, n);
+	}
+
+	// OPERATOR EXTENSION
+
+	@Override
+	public Node visitNode(GreaterEqualNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left), right = visit(n.right);
+		if (isConst(left) && isConst(right)) return at(new BoolNode(intValue(left) >= intValue(right)), n);
+		return at(new GreaterEqualNode(left, right), n);
+	}
+
+	@Override
+	public Node visitNode(LessEqualNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left), right = visit(n.right);
+		if (isConst(left) && isConst(right)) return at(new BoolNode(intValue(left) <= intValue(right)), n);
+		return at(new LessEqualNode(left, right), n);
+	}
+
+	@Override
+	public Node visitNode(NotNode n) {
+		if (print) printNode(n);
+		Node exp = visit(n.exp);
+		if (exp instanceof BoolNode) return at(new BoolNode(!((BoolNode) exp).val), n);
+		if (exp instanceof NotNode) return ((NotNode) exp).exp; // !(!(x)) = x
+		return at(new NotNode(exp), n);
+	}
+
+	@Override
+	public Node visitNode(MinusNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left), right = visit(n.right);
+		if (isConst(left) && isConst(right)) return at(new IntNode(intValue(left) - intValue(right)), n);
+		if (isInt(right, 0)) return left;
+		return at(new MinusNode(left, right), n);
+	}
+
+	@Override
+	public Node visitNode(OrNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left), right = visit(n.right);
+		if (isTrue(left)) return at(new BoolNode(true), n); // right non viene valutato
+		if (isFalse(left)) return right;
+		if (isFalse(right)) return left;
+		return at(new OrNode(left, right), n);
+	}
+
+	@Override
+	public Node visitNode(DivNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left), right = visit(n.right);
+		// la divisione per zero resta a tempo di esecuzione
+		if (isConst(left) && isConst(right) && intValue(right) != 0) return at(new IntNode(intValue(left) / intValue(right)), n);
+		if (isInt(right, 1)) return left;
+		return at(new DivNode(left, right), n);
+	}
+
+	@Override
+	public Node visitNode(AndNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left), right = visit(n.right);
+		if (isFalse(left)) return at(new BoolNode(false), n); // right non viene valutato
+		if (isTrue(left)) return right;
+		if (isTrue(right)) return left;
+		return at(new AndNode(left, right), n);
+	}
+}
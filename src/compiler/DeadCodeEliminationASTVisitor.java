@@ -0,0 +1,72 @@
+package compiler;
+
+import java.util.*;
+import compiler.AST.*;
+import compiler.lib.*;
+
+/*
+ * Eliminazione delle dichiarazioni non raggiungibili (vedi ReachabilityASTVisitor), dopo
+ * ConstantFoldingASTVisitor e prima della generazione del codice: var, funzioni, classi e
+ * metodi mai usati vengono tolti dall'AST, quindi non ne viene generato il codice (putCode)
+ * e le classi tolte non costruiscono la loro dispatch table all'avvio.
+ * Le dichiarazioni rimaste vengono ricompattate: ognuna riceve una nuova STentry con l'offset
+ * che SymbolTableASTVisitor le avrebbe assegnato senza quelle tolte (-2, -3, ... nell'AR,
+ * 0, 1, ... nella dispatch table) e tutti i nodi che la riferivano vengono ricreati con la
+ * nuova STentry, cosi' il layout degli AR e delle dispatch table resta coerente.
+ */
+public class DeadCodeEliminationASTVisitor extends RewriteEASTVisitor {
+
+	private Set<STentry> live;
+	// nuova STentry di ogni dichiarazione mantenuta
+	private final Map<STentry, STentry> entries = new HashMap<>();
+
+	DeadCodeEliminationASTVisitor() {}
+	DeadCodeEliminationASTVisitor(boolean debug) { super(debug); } // enables print for debugging
+
+	private static STentry entryOf(DecNode dec) {
+		if (dec instanceof VarNode) return ((VarNode) dec).entry;
+		if (dec instanceof FunNode) return ((FunNode) dec).entry;
+		if (dec instanceof ClassNode) return ((ClassNode) dec).entry;
+		return ((MethodNode) dec).entry;
+	}
+
+	@Override
+	protected STentry entry(STentry e) {
+		return entries.getOrDefault(e, e);
+	}
+
+	// la nuova STentry va assegnata prima di visitare la dichiarazione (funzioni ricorsive)
+	@Override
+	protected List<DecNode> visitDecs(List<DecNode> declist) {
+		List<DecNode> result = new ArrayList<>();
+		int offset = -2;
+		for (DecNode dec : declist) {
+			STentry entry = entryOf(dec);
+			if (!live.contains(entry)) continue;
+			entries.put(entry, new STentry(entry.nl, entry.type, offset--));
+			result.add((DecNode) visit(dec));
+		}
+		return result;
+	}
+
+	// tutte le nuove STentry dei metodi vanno assegnate prima di visitarne i corpi
+	@Override
+	protected List<MethodNode> visitMethods(List<MethodNode> methods) {
+		List<MethodNode> liveMethods = new ArrayList<>();
+		int offset = 0;
+		for (MethodNode method : methods) {
+			if (!live.contains(method.entry)) continue;
+			entries.put(method.entry, new STentry(method.entry.nl, method.entry.type, offset++));
+			liveMethods.add(method);
+		}
+		return super.visitMethods(liveMethods);
+	}
+
+	@Override
+	public Node visitNode(ProgLetInNode n) {
+		ReachabilityASTVisitor reachability = new ReachabilityASTVisitor();
+		reachability.visit(n);
+		live = reachability.live;
+		return super.visitNode(n);
+	}
+}
@@ -2,6 +2,7 @@ grammar FOOL;
  
 @lexer::members {
 public int lexicalErrors=0;
+public java.io.PrintStream out=System.out; // messaggi di errore (vedi CompilationContext)
 }
    
 /*------------------------------------------------------------------
@@ -104,4 +105,4 @@ WHITESP  : ( '\t' | ' ' | '\r' | '\n' )+    -> channel(HIDDEN) ;
 
 COMMENT : '/*' .*? '*/' -> channel(HIDDEN) ;
 
-ERR   	 : . { System.out.println("Invalid char: "+ getText() +" at line "+getLine()); lexicalErrors++; } -> channel(HIDDEN);
+ERR   	 : . { out.println("Invalid char: "+ getText() +" at line "+getLine()); lexicalErrors++; } -> channel(HIDDEN);
@@ -0,0 +1,214 @@
+package compiler;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.antlr.v4.runtime.*;
+import compiler.lib.*;
+import compiler.exc.*;
+import svm.*;
+
+/*
+ * Compilazione dei programmi FOOL fino al file oggetto (stesse fasi di Test, senza stampe
+ * di debug), anche di molti programmi in parallelo.
+ * Ogni compilazione ha il suo CompilationContext (label, codice delle funzioni, errori) e i
+ * suoi lexer, parser e visitor, quindi compilazioni in thread diversi della stessa JVM non
+ * condividono stato: compileAll le distribuisce su un pool di thread e raccoglie i messaggi
+ * di errore di ogni programma separatamente.
+ * Uso: java compiler.FOOLCompiler [-j thread] file.fool ...
+ *        compila i file (default: un thread per core) e scrive i file oggetto file.fool.svmo
+ *        (vedi svm.ObjectFile), eseguibili con compiler.Run senza ricompilare
+ *      java compiler.FOOLCompiler -cache dir [-j thread] file.fool ...
+ *        come sopra, passando dalla CompilationCache nella directory dir, e stampa hit e miss
+ *      java compiler.FOOLCompiler -scaling [copie] file.fool ...
+ *        misura il tempo per compilare copie volte (default 20) ogni file con 1, 2, 4, ...
+ *        thread fino al numero di core
+ */
+public class FOOLCompiler {
+
+	// opzioni che cambiano il codice generato (parte della chiave della CompilationCache)
+	public static final String OPTIONS = "inline fold dce fuse";
+
+	// esito della compilazione di un file: file oggetto (null se ci sono errori) e messaggi di errore
+	public static class Result {
+		public final String fileName;
+		public final ObjectFile program;
+		public final String errors;
+
+		Result(String fileName, ObjectFile program, String errors) {
+			this.fileName = fileName;
+			this.program = program;
+			this.errors = errors;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int cores = Runtime.getRuntime().availableProcessors();
+		if (args.length > 0 && args[0].equals("-scaling")) {
+			boolean copiesGiven = args.length > 1 && args[1].matches("\\d+");
+			int copies = copiesGiven ? Integer.parseInt(args[1]) : 20;
+			scaling(Arrays.asList(Arrays.copyOfRange(args, copiesGiven ? 2 : 1, args.length)), copies, cores);
+			return;
+		}
+		int threads = cores, first = 0;
+		CompilationCache cache = null;
+		if (args.length > 1 && args[0].equals("-cache")) {
+			cache = new CompilationCache(Paths.get(args[1]), OPTIONS);
+			first = 2;
+		}
+		if (args.length > first+1 && args[first].equals("-j")) {
+			threads = Integer.parseInt(args[first+1]);
+			first += 2;
+		}
+		List<String> files = Arrays.asList(Arrays.copyOfRange(args, first, args.length));
+		long start = System.nanoTime();
+		List<Result> results = compileAll(files, threads, cache);
+		int failed = 0;
+		for (Result result : results) {
+			if (result.program != null) {
+				result.program.write(Paths.get(result.fileName+".svmo"));
+			} else {
+				System.out.print(result.errors);
+				failed++;
+			}
+		}
+		System.out.printf("%d files compiled, %d with errors, %.1f ms with %d threads%n", results.size() - failed, failed,
+			(System.nanoTime() - start)/1e6, threads);
+		if (cache != null) System.out.println("Compilation cache: "+cache);
+		if (failed > 0) System.exit(1);
+	}
+
+	// compila tutti i file con un pool di threads thread; i risultati sono nell'ordine di fileNames
+	public static List<Result> compileAll(List<String> fileNames, int threads) throws InterruptedException {
+		return compileAll(fileNames, threads, null);
+	}
+
+	// come sopra, passando dalla cache (se non e' null)
+	public static List<Result> compileAll(List<String> fileNames, int threads, CompilationCache cache) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Result>> futures = new ArrayList<>();
+			for (String fileName : fileNames) futures.add(pool.submit(() -> compileFile(fileName, cache)));
+			List<Result> results = new ArrayList<>();
+			for (Future<Result> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) { // errore interno del compilatore
+					throw new RuntimeException(e.getCause());
+				}
+			}
+			return results;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// compila un file raccogliendo i suoi messaggi di errore (anche un errore interno del
+	// compilatore diventa un messaggio del file, senza interrompere compileAll)
+	public static Result compileFile(String fileName) {
+		return compileFile(fileName, null);
+	}
+
+	// come sopra, passando dalla cache (se non e' null)
+	public static Result compileFile(String fileName, CompilationCache cache) {
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(errors, true, StandardCharsets.UTF_8);
+		ObjectFile program = null;
+		try {
+			program = cache != null ? compile(fileName, new CompilationContext(out), cache)
+				: compile(CharStreams.fromFileName(fileName), fileName, new CompilationContext(out));
+		} catch (IOException | IllegalStateException e) {
+			out.println(e.getMessage());
+		} catch (RuntimeException e) { // errore interno del compilatore: riguarda solo questo file
+			out.println("Internal compiler error in "+fileName+": "+e);
+		}
+		return new Result(fileName, program, errors.toString(StandardCharsets.UTF_8));
+	}
+
+	// compila un file scrivendo i messaggi di errore su System.out (usato da Run, Profile e VMBenchmark)
+	public static ObjectFile compile(String fileName) throws IOException {
+		return compile(CharStreams.fromFileName(fileName), fileName, new CompilationContext());
+	}
+
+	// compila un file passando dalla cache: se il sorgente e' gia' stato compilato (con la
+	// stessa versione e le stesse opzioni) il file oggetto viene dalla cache senza compilare,
+	// altrimenti viene compilato riusando il codice delle funzioni globali non cambiate
+	public static ObjectFile compile(String fileName, CompilationContext context, CompilationCache cache) throws IOException {
+		byte[] source = Files.readAllBytes(Paths.get(fileName));
+		String key = cache.programKey(source);
+		ObjectFile program = cache.loadProgram(key);
+		if (program == null) {
+			FOOLLexer lexer = new FOOLLexer(CharStreams.fromString(new String(source, StandardCharsets.UTF_8), fileName));
+			program = compile(lexer, new FOOLParser(new CommonTokenStream(lexer)), fileName, context, cache);
+			cache.storeProgram(key, program);
+		}
+		return program;
+	}
+
+	// compila il sorgente chars del programma name: gli errori sono scritti su context.out e
+	// la compilazione termina con IllegalStateException
+	public static ObjectFile compile(CharStream chars, String name, CompilationContext context) {
+		FOOLLexer lexer = new FOOLLexer(chars);
+		return compile(lexer, new FOOLParser(new CommonTokenStream(lexer)), name, context, null);
+	}
+
+	// compila con lexer e parser gia' posizionati sul sorgente (CompilerDaemon li riusa);
+	// cache (se non e' null) fornisce il codice delle funzioni globali gia' compilate
+	static ObjectFile compile(FOOLLexer lexer, FOOLParser parser, String name, CompilationContext context, CompilationCache cache) {
+		return generate(lexer, parser, name, context, cache).assemble();
+	}
+
+	// tutte le fasi fino al codice (con le superistruzioni) da assemblare
+	static Code generate(FOOLLexer lexer, FOOLParser parser, String name, CompilationContext context, CompilationCache cache) {
+		lexer.out = context.out;
+		parser.removeErrorListeners();
+		parser.addErrorListener(new BaseErrorListener() { // come ConsoleErrorListener, ma su context.out
+			@Override
+			public void syntaxError(Recognizer<?,?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+				context.out.println("line "+line+":"+charPositionInLine+" "+msg);
+			}
+		});
+		Node ast = new ASTGenerationSTVisitor().visit(TwoStageParser.parse(parser, FOOLParser::prog)); // SLL, e LL solo se serve
+		SymbolTableASTVisitor symtableVisitor = new SymbolTableASTVisitor(context);
+		symtableVisitor.visit(ast);
+		try {
+			new TypeCheckEASTVisitor(context).visit(ast);
+		} catch (IncomplException e) {
+			throw new IllegalStateException("Type checking failed for "+name);
+		} catch (TypeException e) {
+			context.out.println("Type checking error in main program expression: "+e.text);
+			throw new IllegalStateException("Type checking failed for "+name);
+		}
+		if (lexer.lexicalErrors+parser.getNumberOfSyntaxErrors()+symtableVisitor.stErrors+context.typeErrors > 0)
+			throw new IllegalStateException("Front-end errors in "+name);
+		ast = new InliningASTVisitor().visit(ast); // sostituisce le chiamate a funzioni e metodi piccoli con il loro corpo
+		ast = new ConstantFoldingASTVisitor().visit(ast); // calcola le espressioni costanti e propaga le var costanti
+		ast = new DeadCodeEliminationASTVisitor().visit(ast); // toglie le dichiarazioni mai usate
+		return SuperInstructions.fuse(new CodeGenerationASTVisitor(context, cache).visit(ast));
+	}
+
+	// tempi di compileAll con 1, 2, 4, ... thread (e con un thread per core) sugli stessi file
+	private static void scaling(List<String> files, int copies, int cores) throws InterruptedException {
+		List<String> all = new ArrayList<>();
+		for (int c = 0; c < copies; c++) all.addAll(files);
+		for (Result result : compileAll(all, cores)) // riscaldamento del JIT, e controllo degli errori
+			if (result.program == null) throw new IllegalStateException(result.errors);
+		List<Integer> threadCounts = new ArrayList<>();
+		for (int t = 1; t < cores; t *= 2) threadCounts.add(t);
+		threadCounts.add(cores);
+		System.out.printf("%8s %12s %12s %10s%n", "threads", "ms", "files/s", "speedup");
+		long single = 0;
+		for (int threads : threadCounts) {
+			long best = Long.MAX_VALUE;
+			for (int r = 0; r < 3; r++) {
+				long start = System.nanoTime();
+				compileAll(all, threads);
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			if (threads == 1) single = best;
+			System.out.printf("%8d %12.1f %12.1f %10.2f%n", threads, best/1e6, all.size()/(best/1e9), (double) single/best);
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package compiler;
+
+import java.util.*;
+import compiler.AST.*;
+import compiler.lib.*;
+
+/*
+ * Inlining di funzioni e metodi piccoli sull'AST arricchito, prima di ConstantFoldingASTVisitor
+ * (che calcola le costanti passate come argomenti) e di DeadCodeEliminationASTVisitor (che
+ * toglie le dichiarazioni non piu' chiamate).
+ * Un CallNode (o ClassCallNode) viene sostituito dal corpo della funzione (o del metodo)
+ * chiamata se:
+ * - la dichiarazione non ha dichiarazioni locali (non servono celle nell'AR del chiamante)
+ *   e non chiama se stessa;
+ * - il corpo ha al piu' MAX_SIZE nodi;
+ * - ogni argomento e' una costante o una variabile, oppure non ha effetti (vedi
+ *   ReachabilityASTVisitor.hasEffects) e il parametro e' usato al piu' una volta in ogni
+ *   ramo del corpo: non cambiano quindi ne' gli effetti ne' il loro ordine;
+ * - per un metodo, il corpo non ha effetti e legge l'oggetto (un campo o un altro metodo)
+ *   in ogni caso: con l'oggetto null la chiamata fallisce, e deve fallire allo stesso modo
+ *   il corpo sostituito (un metodo che non usa l'oggetto, come fun k:int() 5, resta una
+ *   chiamata).
+ * La visita e' bottom-up: il corpo sostituito e' gia' stato ottimizzato, e gli argomenti
+ * vengono ottimizzati prima di decidere se sostituire la chiamata.
+ */
+public class InliningASTVisitor extends RewriteEASTVisitor {
+
+	static final int MAX_SIZE = 12;
+
+	// funzioni e metodi che si possono sostituire, per STentry della dichiarazione
+	private final Map<STentry, FunNode> functions = new HashMap<>();
+	private final Map<STentry, MethodNode> methods = new HashMap<>();
+
+	InliningASTVisitor() {}
+	InliningASTVisitor(boolean debug) { super(debug); } // enables print for debugging
+
+	private static boolean isSimple(Node arg) {
+		return arg instanceof IntNode || arg instanceof BoolNode || arg instanceof EmptyNode || arg instanceof IdNode;
+	}
+
+	// corpo da sostituire alla chiamata, null se la chiamata non si puo' sostituire
+	private static Node inline(Substitution s, Node exp) {
+		Node body = s.visit(exp);
+		if (s.failed || s.size > MAX_SIZE) return null;
+		for (int i = 0; i < s.arglist.size(); i++) {
+			Node arg = s.arglist.get(i);
+			if (isSimple(arg)) continue;
+			if (ReachabilityASTVisitor.hasEffects(arg) || s.uses.getOrDefault(i, 0) > 1) return null;
+		}
+		return body;
+	}
+
+	@Override
+	public Node visitNode(FunNode n) {
+		FunNode fun = (FunNode) super.visitNode(n);
+		if (fun.declist.isEmpty()) functions.put(fun.entry, fun);
+		return fun;
+	}
+
+	@Override
+	public Node visitNode(MethodNode n) {
+		MethodNode method = (MethodNode) super.visitNode(n);
+		if (method.declist.isEmpty()) methods.put(method.entry, method);
+		return method;
+	}
+
+	@Override
+	public Node visitNode(CallNode n) {
+		CallNode call = (CallNode) super.visitNode(n);
+		FunNode fun = functions.get(call.entry);
+		if (fun == null) return call;
+		Node body = inline(new Substitution(fun.entry, call.arglist, call.nl, null), fun.exp);
+		return body != null ? body : call;
+	}
+
+	@Override
+	public Node visitNode(ClassCallNode n) {
+		ClassCallNode call = (ClassCallNode) super.visitNode(n);
+		MethodNode method = methods.get(call.methodEntry);
+		if (method == null) return call;
+		Substitution s = new Substitution(method.entry, call.arglist, call.nl, call);
+		Node body = inline(s, method.exp);
+		if (body == null || !s.dereferenced || ReachabilityASTVisitor.hasEffects(method.exp)) return call;
+		return body;
+	}
+
+	/*
+	 * Copia del corpo della funzione (o del metodo) callee, dichiarata a nesting level
+	 * callee.nl, nell'AR del chiamante a nesting level nl:
+	 * - i parametri (nesting level callee.nl+1, offset i+1) diventano gli argomenti;
+	 * - le dichiarazioni esterne al chiamato (nesting level <= callee.nl) sono raggiunte dal
+	 *   chiamante con la stessa catena statica, allungata di nl-callee.nl Access Link (quelli
+	 *   che il chiamante risale per calcolare l'Access Link del chiamato): i nodi che le usano
+	 *   vengono quindi ricreati con nesting level nl;
+	 * - nel corpo di un metodo l'Access Link e' l'oggetto, che nel chiamante e' la variabile
+	 *   object della chiamata: campi e metodi della classe (nesting level callee.nl) diventano
+	 *   FieldAccessNode e ClassCallNode su quella variabile.
+	 * failed indica che il corpo usa qualcosa che non si puo' riportare nel chiamante; size
+	 * conta i nodi del corpo, uses il massimo numero di usi di ogni parametro in un ramo e
+	 * dereferenced se il corpo di un metodo legge l'oggetto in ogni caso (non solo in un ramo
+	 * di un if o nel secondo operando di && e ||).
+	 */
+	private static class Substitution extends RewriteEASTVisitor {
+
+		private final STentry callee;
+		final List<Node> arglist;
+		private final int nl;
+		private final ClassCallNode object; // chiamata del metodo (null per le funzioni)
+		Map<Integer, Integer> uses = new HashMap<>(); // per indice del parametro
+		boolean failed = false;
+		int size = 0;
+		boolean dereferenced = false;
+
+		Substitution(STentry callee, List<Node> arglist, int nl, ClassCallNode object) {
+			this.callee = callee;
+			this.arglist = arglist;
+			this.nl = nl;
+			this.object = object;
+		}
+
+		@Override
+		public Node visit(Visitable v, String mark) {
+			size++;
+			return super.visit(v, mark);
+		}
+
+		// indice del parametro riferito da e, -1 se non e' un parametro del chiamato
+		private int parameter(STentry e) {
+			return e.nl == callee.nl + 1 && e.offset >= 1 && e.offset <= arglist.size() ? e.offset - 1 : -1;
+		}
+
+		// vero se e e' una dichiarazione esterna al chiamato, raggiungibile dal chiamante
+		private boolean outer(STentry e) {
+			if (object != null) return false; // nel corpo di un metodo solo parametri, campi e metodi
+			return e.nl <= callee.nl;
+		}
+
+		private boolean member(STentry e) {
+			return object != null && e.nl == callee.nl;
+		}
+
+		private Node argument(int i) {
+			uses.merge(i, 1, Integer::sum);
+			return arglist.get(i);
+		}
+
+		@Override
+		public Node visitNode(IfNode n) {
+			Node cond = visit(n.cond);
+			Map<Integer, Integer> beforeBranches = new HashMap<>(uses);
+			boolean condDereferenced = dereferenced;
+			Node th = visit(n.th);
+			Map<Integer, Integer> thenUses = uses;
+			boolean thenDereferenced = dereferenced;
+			uses = beforeBranches;
+			dereferenced = condDereferenced;
+			Node el = visit(n.el);
+			thenUses.forEach((i, k) -> uses.merge(i, k, Math::max));
+			dereferenced &= thenDereferenced;
+			return at(new IfNode(cond, th, el), n);
+		}
+
+		// il secondo operando di || e && puo' non essere valutato
+		@Override
+		public Node visitNode(OrNode n) {
+			Node left = visit(n.left);
+			boolean leftDereferenced = dereferenced;
+			Node right = visit(n.right);
+			dereferenced = leftDereferenced;
+			return at(new OrNode(left, right), n);
+		}
+
+		@Override
+		public Node visitNode(AndNode n) {
+			Node left = visit(n.left);
+			boolean leftDereferenced = dereferenced;
+			Node right = visit(n.right);
+			dereferenced = leftDereferenced;
+			return at(new AndNode(left, right), n);
+		}
+
+		@Override
+		public Node visitNode(IdNode n) {
+			int i = parameter(n.entry);
+			if (i >= 0) return argument(i);
+			if (member(n.entry)) {
+				dereferenced = true;
+				FieldAccessNode access = at(new FieldAccessNode(object.id1, n.id), n);
+				access.entry = object.entry;
+				access.fieldEntry = n.entry;
+				access.nl = object.nl;
+				return access;
+			}
+			if (!outer(n.entry)) failed = true;
+			IdNode id = (IdNode) super.visitNode(n);
+			id.nl = nl;
+			return id;
+		}
+
+		@Override
+		public Node visitNode(CallNode n) {
+			if (n.entry == callee) failed = true; // funzione ricorsiva
+			if (member(n.entry)) {
+				dereferenced = true;
+				ClassCallNode call = at(new ClassCallNode(object.id1, n.id, visitAll(n.arglist)), n);
+				call.entry = object.entry;
+				call.methodEntry = n.entry;
+				call.nl = object.nl;
+				return call;
+			}
+			if (!outer(n.entry)) failed = true;
+			CallNode call = (CallNode) super.visitNode(n);
+			call.nl = nl;
+			return call;
+		}
+
+		@Override
+		public Node visitNode(ClassCallNode n) {
+			if (n.methodEntry == callee) failed = true; // metodo ricorsivo
+			ClassCallNode call = (ClassCallNode) super.visitNode(n);
+			int i = parameter(n.entry);
+			if (i >= 0) {
+				// l'oggetto e' un parametro: si usa la variabile passata come argomento
+				if (!(arglist.get(i) instanceof IdNode)) { failed = true; return call; }
+				IdNode arg = (IdNode) argument(i);
+				call.entry = arg.entry;
+				call.nl = arg.nl;
+				return call;
+			}
+			if (!outer(n.entry)) failed = true;
+			call.nl = nl;
+			return call;
+		}
+
+		@Override
+		public Node visitNode(FieldAccessNode n) {
+			FieldAccessNode access = (FieldAccessNode) super.visitNode(n);
+			int i = parameter(n.entry);
+			if (i >= 0) {
+				if (!(arglist.get(i) instanceof IdNode)) { failed = true; return access; }
+				IdNode arg = (IdNode) argument(i);
+				access.entry = arg.entry;
+				access.nl = arg.nl;
+				return access;
+			}
+			if (!outer(n.entry)) failed = true;
+			access.nl = nl;
+			return access;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package compiler;
+
+import java.util.function.*;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import compiler.lib.*;
+import svm.*;
+
+/*
+ * Confronta il parsing LL di ANTLR (quello di default) con il parsing in due passi di
+ * svm.TwoStageParser (SLL con BailErrorStrategy, e LL solo se fallisce) su programmi FOOL
+ * generati con un numero crescente di funzioni, ognuna con espressioni lunghe (la regola
+ * exp e' ricorsiva a sinistra), e sul loro codice assembly (SVMParser.assembly).
+ * Per ogni dimensione: tempo del primo parsing con la cache DFA vuota (cold), miglior tempo
+ * con la cache gia' riempita (warm) e controllo che i due alberi sintattici siano uguali.
+ * I token sono letti una volta prima di misurare, quindi i tempi sono del solo parser.
+ * SVMParser ha code[] di ExecuteVM.CODESIZE celle, quindi per l'assembly si usano i
+ * programmi piu' piccoli che ci stanno.
+ * Uso: java compiler.ParseBenchmark [ripetizioni] [numero di funzioni ...]
+ */
+public class ParseBenchmark {
+
+	private static final int[] DEFAULT_SIZES = {100, 500, 1000, 5000, 10000};
+	private static final int[] ASSEMBLY_SIZES = {10, 20, 40};
+
+	public static void main(String[] args) throws Exception {
+		int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int[] sizes = DEFAULT_SIZES;
+		if (args.length > 1) {
+			sizes = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) sizes[i - 1] = Integer.parseInt(args[i]);
+		}
+
+		System.out.println("FOOLParser.prog");
+		header("functions");
+		for (int n : sizes) {
+			String source = program(n);
+			measure(n, repetitions, () -> new FOOLParser(tokens(new FOOLLexer(CharStreams.fromString(source)))), FOOLParser::prog);
+		}
+
+		System.out.println("\nSVMParser.assembly");
+		header("functions");
+		for (int n : ASSEMBLY_SIZES) {
+			String text = assembly(n);
+			measure(n, repetitions, () -> new SVMParser(tokens(new SVMLexer(CharStreams.fromString(text)))), SVMParser::assembly);
+		}
+	}
+
+	private static void header(String size) {
+		System.out.printf("%10s %10s %12s %12s %12s %12s %9s %9s%n", size, "tokens", "LL cold ms", "2-st cold ms",
+			"LL warm ms", "2-st warm ms", "speedup", "fallback");
+	}
+
+	// tempi del parsing LL e in due passi dei token prodotti da newParser: minimo su repetitions
+	// ripetizioni, alternando i due parser, dopo un giro a vuoto per il JIT
+	private static <P extends Parser, T extends ParserRuleContext> void measure(int n, int repetitions,
+			Supplier<P> newParser, Function<P,T> rule) {
+		int fallbacks = TwoStageParser.fallbacks.get();
+		long llCold = Long.MAX_VALUE, twoCold = Long.MAX_VALUE, llWarm = Long.MAX_VALUE, twoWarm = Long.MAX_VALUE;
+		for (int r = -1; r < repetitions; r++) {
+			long ll = time(newParser.get(), rule, true, false), two = time(newParser.get(), rule, true, true);
+			long llAgain = time(newParser.get(), rule, false, false), twoAgain = time(newParser.get(), rule, false, true);
+			if (r < 0) continue;
+			llCold = Math.min(llCold, ll);
+			twoCold = Math.min(twoCold, two);
+			llWarm = Math.min(llWarm, llAgain);
+			twoWarm = Math.min(twoWarm, twoAgain);
+		}
+		P ll = newParser.get(), twoStage = newParser.get();
+		String llTree = rule.apply(ll).toStringTree(ll);
+		String twoStageTree = TwoStageParser.parse(twoStage, rule).toStringTree(twoStage);
+		if (!llTree.equals(twoStageTree)) throw new IllegalStateException("Different parse trees for size "+n);
+		System.out.printf("%10d %10d %12.2f %12.2f %12.2f %12.2f %9.2f %9d%n", n, ll.getTokenStream().size(), llCold/1e6,
+			twoCold/1e6, llWarm/1e6, twoWarm/1e6, (double) llWarm/twoWarm, TwoStageParser.fallbacks.get() - fallbacks);
+	}
+
+	// tempo di un parsing, con la cache DFA (condivisa da tutti i parser della grammatica) vuota se cold
+	private static <P extends Parser, T extends ParserRuleContext> long time(P parser, Function<P,T> rule, boolean cold, boolean twoStage) {
+		if (cold) parser.getInterpreter().clearDFA();
+		parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+		long start = System.nanoTime();
+		if (twoStage) TwoStageParser.parse(parser, rule);
+		else rule.apply(parser);
+		long time = System.nanoTime() - start;
+		if (parser.getNumberOfSyntaxErrors() > 0) throw new IllegalStateException("Syntax errors in generated source");
+		return time;
+	}
+
+	private static CommonTokenStream tokens(Lexer lexer) {
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		tokens.fill();
+		return tokens;
+	}
+
+	// codice assembly del programma generato con n funzioni
+	private static String assembly(int n) {
+		CompilationContext context = new CompilationContext();
+		FOOLLexer lexer = new FOOLLexer(CharStreams.fromString(program(n)));
+		return FOOLCompiler.generate(lexer, new FOOLParser(new CommonTokenStream(lexer)), "generated", context, null).toString();
+	}
+
+	/*
+	programma con n funzioni: f(i) calcola espressioni lunghe con operatori di tutti i livelli
+	di precedenza, confronti e operatori booleani nella condizione dell'if, chiamate annidate
+	negli argomenti e parentesi, poi chiama f(i-1); il corpo principale chiama l'ultima
+	*/
+	static String program(int n) {
+		StringBuilder source = new StringBuilder("let\n");
+		for (int i = 0; i < n; i++) {
+			String previous = i == 0 ? "a" : "f"+(i - 1)+"(n - 1, b)";
+			source.append("  fun f").append(i).append(":int (n:int, m:int)\n")
+				.append("    let\n")
+				.append("      var a:int = n * 3 + m / 2 - (n + ").append(i).append(") * 2 + m * m - n / 7 + 1;\n")
+				.append("      var b:int = (a - m) * (n + 1) / (m * m + 1) - a + n * (2 - m) + ").append(i % 10).append(";\n")
+				.append("      fun g:bool (x:int, y:int) (x + 1 >= y * 2 - 3) && !(x == y + 1) || (x - y <= 0 && y >= 0);\n")
+				.append("    in if (n <= 0 || !g(a * 2 - b, b + 1) && m >= 0)\n")
+				.append("      then {a + b * 2 - (a - b) / 3}\n")
+				.append("      else {").append(previous).append(" + a * (b - 1) - (b + a) / 5 + n * m};\n");
+		}
+		return source.append("in print(f").append(n - 1).append("(3, 2));\n").toString();
+	}
+}
@@ -0,0 +1,230 @@
+package compiler;
+
+import java.io.*;
+import java.lang.management.*;
+import java.nio.file.*;
+import java.util.*;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.*;
+import compiler.lib.*;
+import svm.*;
+
+/*
+ * Benchmark di ogni fase del compilatore e della SVM, separatamente, su un programma piccolo
+ * (prova.fool), medio e grande (generati da ParseBenchmark.program con 200 e 5000 funzioni),
+ * sullo stile di JMH (che qui non si puo' usare senza un sistema di build): per ogni fase e
+ * dimensione alcune iterazioni di riscaldamento e poi di misura, ognuna di durata fissa, in
+ * cui la fase viene eseguita ripetutamente; l'input di ogni esecuzione e' preparato fuori
+ * dalla misura (come @Setup(Level.Invocation) di JMH) quando la fase modifica l'AST.
+ * Per ogni fase riporta, come JMH con -prof gc:
+ *   ops/s   throughput (media sulle iterazioni di misura, +- deviazione standard)
+ *   ms/op   tempo medio per esecuzione
+ *   MB/s    allocation rate (byte allocati dal thread durante la fase, per secondo)
+ *   KB/op   byte allocati per esecuzione (gc.alloc.rate.norm di JMH)
+ *   gc      raccolte del garbage collector della JVM durante le iterazioni di misura
+ * e per ogni dimensione il tempo totale della compilazione (fasi da parse a codegen e
+ * assemblaggio con Assembler), per confrontare versioni diverse e dimensionare le build.
+ * Fasi: parse (FOOLLexer e FOOLParser.prog), ast (ASTGenerationSTVisitor), symtable
+ * (SymbolTableASTVisitor), typecheck (TypeCheckEASTVisitor), codegen (CodeGenerationASTVisitor
+ * e SuperInstructions sull'AST ottimizzato), assembly (SVMParser.assembly, solo se il codice
+ * sta in ExecuteVM.CODESIZE celle), assembler (svm.Assembler, usato dal compilatore), cpu
+ * (ExecuteVM.cpu, output scartato).
+ * Uso: java compiler.PhaseBenchmark [-wi iterazioni] [-i iterazioni] [-t ms] [-size small|medium|huge] [fase ...]
+ *        default: 3 iterazioni di riscaldamento e 5 di misura da 1000 ms, tutte le dimensioni e fasi
+ */
+public class PhaseBenchmark {
+
+	private static final String[] SIZES = {"small", "medium", "huge"};
+	private static final String[] PHASES = {"parse", "ast", "symtable", "typecheck", "codegen", "assembly", "assembler", "cpu"};
+	// fasi che compongono la compilazione (per il totale)
+	private static final Set<String> COMPILE_PHASES = Set.of("parse", "ast", "symtable", "typecheck", "codegen", "assembler");
+
+	private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private interface Input {
+		Object get() throws Exception;
+	}
+
+	private interface Step {
+		Object apply(Object input) throws Exception;
+	}
+
+	// una fase: prepare produce (fuori dalla misura) l'input di run
+	private static final class Phase {
+		final Input prepare;
+		final Step run;
+
+		Phase(Input prepare, Step run) {
+			this.prepare = prepare;
+			this.run = run;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int warmups = 3, iterations = 5;
+		long iterationTime = 1000;
+		List<String> sizes = new ArrayList<>(), phases = new ArrayList<>();
+		for (int a = 0; a < args.length; a++) {
+			switch (args[a]) {
+				case "-wi": warmups = Integer.parseInt(args[++a]); break;
+				case "-i": iterations = Integer.parseInt(args[++a]); break;
+				case "-t": iterationTime = Long.parseLong(args[++a]); break;
+				case "-size": sizes.add(args[++a]); break;
+				default:
+					if (!Arrays.asList(PHASES).contains(args[a])) throw new IllegalArgumentException("Unknown phase "+args[a]);
+					phases.add(args[a]);
+			}
+		}
+		if (sizes.isEmpty()) sizes = Arrays.asList(SIZES);
+		if (phases.isEmpty()) phases = Arrays.asList(PHASES);
+		THREADS.setThreadAllocatedMemoryEnabled(true);
+
+		System.out.printf("# %d warmup and %d measurement iterations of %d ms, %s %s%n", warmups, iterations, iterationTime,
+			System.getProperty("java.vm.name"), System.getProperty("java.version"));
+		System.out.printf("%-10s %-7s %10s %12s %10s %12s %10s %12s %6s%n", "phase", "size", "chars", "ops/s", "+-",
+			"ms/op", "MB/s", "KB/op", "gc");
+		for (String size : sizes) {
+			String source = source(size);
+			double compileMs = 0;
+			for (String name : phases) {
+				Phase phase = phase(name, source);
+				if (phase == null) {
+					System.out.printf("%-10s %-7s %10d %12s%n", name, size, source.length(), "n/a (code > CODESIZE)");
+					continue;
+				}
+				double msPerOp = measure(name, size, source.length(), phase, warmups, iterations, iterationTime);
+				if (COMPILE_PHASES.contains(name)) compileMs += msPerOp;
+			}
+			if (phases.containsAll(COMPILE_PHASES)) System.out.printf("%-10s %-7s %10d %12.1f %10s %12.3f%n", "compile", size, source.length(), 1000/compileMs, "", compileMs);
+		}
+	}
+
+	private static String source(String size) throws IOException {
+		switch (size) {
+			case "small": return Files.readString(Paths.get("prova.fool"));
+			case "medium": return ParseBenchmark.program(200);
+			case "huge": return ParseBenchmark.program(5000);
+			default: throw new IllegalArgumentException("Unknown size "+size);
+		}
+	}
+
+	// iterazioni di riscaldamento e di misura della fase; restituisce i ms per esecuzione
+	private static double measure(String name, String size, int chars, Phase phase, int warmups, int iterations,
+			long iterationTime) throws Exception {
+		double[] throughput = new double[iterations];
+		long ops = 0, time = 0, allocated = 0, collections = 0;
+		for (int it = -warmups; it < iterations; it++) {
+			long iterationOps = 0, iterationNanos = 0, iterationBytes = 0, gcBefore = collections();
+			long end = System.nanoTime() + iterationTime * 1_000_000;
+			do {
+				Object input = phase.prepare.get();
+				long bytes = THREADS.getCurrentThreadAllocatedBytes(), start = System.nanoTime();
+				phase.run.apply(input);
+				iterationNanos += System.nanoTime() - start;
+				iterationBytes += THREADS.getCurrentThreadAllocatedBytes() - bytes;
+				iterationOps++;
+			} while (System.nanoTime() < end);
+			if (it < 0) continue;
+			throughput[it] = iterationOps / (iterationNanos / 1e9);
+			ops += iterationOps;
+			time += iterationNanos;
+			allocated += iterationBytes;
+			collections += collections() - gcBefore;
+		}
+		double mean = Arrays.stream(throughput).average().orElse(0);
+		double deviation = Math.sqrt(Arrays.stream(throughput).map(t -> (t - mean) * (t - mean)).sum() / Math.max(1, iterations - 1));
+		System.out.printf("%-10s %-7s %10d %12.1f %10.1f %12.3f %10.1f %12.1f %6d%n", name, size, chars, mean, deviation,
+			time / 1e6 / ops, allocated / 1e6 / (time / 1e9), allocated / 1024.0 / ops, collections);
+		return time / 1e6 / ops;
+	}
+
+	private static long collections() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) count += Math.max(0, gc.getCollectionCount());
+		return count;
+	}
+
+	// la fase name sul sorgente source (null se non si puo' eseguire su questo input)
+	private static Phase phase(String name, String source) throws Exception {
+		switch (name) {
+			case "parse": return new Phase(() -> source, s -> {
+				FOOLLexer lexer = new FOOLLexer(CharStreams.fromString((String) s));
+				return TwoStageParser.parse(new FOOLParser(new CommonTokenStream(lexer)), FOOLParser::prog);
+			});
+			case "ast": {
+				ParseTree tree = parse(source); // non modificato da ASTGenerationSTVisitor
+				return new Phase(() -> tree, t -> new ASTGenerationSTVisitor().visit((ParseTree) t));
+			}
+			case "symtable": {
+				ParseTree tree = parse(source);
+				return new Phase(() -> new ASTGenerationSTVisitor().visit(tree),
+					ast -> new SymbolTableASTVisitor(new CompilationContext(NO_OUTPUT)).visit((Node) ast));
+			}
+			case "typecheck": {
+				ParseTree tree = parse(source);
+				return new Phase(() -> enrich(tree), ast -> new TypeCheckEASTVisitor(new CompilationContext(NO_OUTPUT)).visit((Node) ast));
+			}
+			case "codegen": {
+				Node ast = optimize(enrich(parse(source))); // la generazione del codice non modifica l'AST
+				return new Phase(() -> ast, a -> SuperInstructions.fuse(new CodeGenerationASTVisitor(new CompilationContext(NO_OUTPUT)).visit((Node) a)));
+			}
+			case "assembly": {
+				Code code = generate(source);
+				if (code.assemble().codeLength > ExecuteVM.CODESIZE) return null;
+				String asm = code.toString();
+				return new Phase(() -> asm, a -> SVMParser.assemble(CharStreams.fromString((String) a)));
+			}
+			case "assembler": {
+				String asm = generate(source).toString();
+				return new Phase(() -> asm, a -> Assembler.assemble((String) a));
+			}
+			case "cpu": {
+				ObjectFile program = generate(source).assemble();
+				return new Phase(() -> program, p -> {
+					PrintStream console = System.out;
+					System.setOut(NO_OUTPUT);
+					try {
+						new ExecuteVM(((ObjectFile) p).code).cpu();
+					} finally {
+						System.setOut(console);
+					}
+					return null;
+				});
+			}
+			default: throw new IllegalArgumentException("Unknown phase "+name);
+		}
+	}
+
+	private static ParseTree parse(String source) {
+		FOOLParser parser = new FOOLParser(new CommonTokenStream(new FOOLLexer(CharStreams.fromString(source))));
+		ParseTree tree = TwoStageParser.parse(parser, FOOLParser::prog);
+		if (parser.getNumberOfSyntaxErrors() > 0) throw new IllegalStateException("Syntax errors in benchmark input");
+		return tree;
+	}
+
+	// AST arricchito dalla symbol table
+	private static Node enrich(ParseTree tree) throws Exception {
+		CompilationContext context = new CompilationContext(NO_OUTPUT);
+		Node ast = new ASTGenerationSTVisitor().visit(tree);
+		SymbolTableASTVisitor symtableVisitor = new SymbolTableASTVisitor(context);
+		symtableVisitor.visit(ast);
+		if (symtableVisitor.stErrors > 0) throw new IllegalStateException("Symbol table errors in benchmark input");
+		return ast;
+	}
+
+	// type checking e ottimizzazioni dell'AST arricchito, come in FOOLCompiler
+	private static Node optimize(Node ast) throws Exception {
+		CompilationContext context = new CompilationContext(NO_OUTPUT);
+		new TypeCheckEASTVisitor(context).visit(ast);
+		if (context.typeErrors > 0) throw new IllegalStateException("Type errors in benchmark input");
+		ast = new InliningASTVisitor().visit(ast);
+		ast = new ConstantFoldingASTVisitor().visit(ast);
+		return new DeadCodeEliminationASTVisitor().visit(ast);
+	}
+
+	private static Code generate(String source) {
+		FOOLLexer lexer = new FOOLLexer(CharStreams.fromString(source));
+		return FOOLCompiler.generate(lexer, new FOOLParser(new CommonTokenStream(lexer)), "benchmark", new CompilationContext(NO_OUTPUT), null);
+	}
+}
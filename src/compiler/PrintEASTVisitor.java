@@ -232,13 +232,23 @@ public class PrintEASTVisitor extends BaseEASTVisitor<Void,VoidException> {
 	public Void visitNode(ClassCallNode n) {
 		printNode(n,n.id2 +" at nesting level "+ n.nl);
 		visit(n.entry);
+		visit(n.methodEntry);
 		for (Node arg : n.arglist) visit(arg);
 		return null;
 	}
 
+	@Override
+	public Void visitNode(FieldAccessNode n) {
+		printNode(n,n.id1 + "." + n.id2 +" at nesting level "+ n.nl);
+		visit(n.entry);
+		visit(n.fieldEntry);
+		return null;
+	}
+
 	@Override
 	public Void visitNode(NewNode n) {
 		printNode(n,n.id);
+		visit(n.entry);
 		n.arglist.forEach(this::visit);
 		return null;
 	}
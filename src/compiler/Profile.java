@@ -0,0 +1,30 @@
+package compiler;
+
+import java.io.*;
+import svm.*;
+
+/*
+ * Esegue un programma FOOL con il profiler della SVM (ExecuteVM.cpuProfiled) e stampa le
+ * funzioni con piu' istruzioni eseguite; con un terzo argomento scrive anche il profilo in
+ * formato "collapsed stacks", da cui si ottiene un flame graph (es. flamegraph.pl file).
+ * Uso: java compiler.Profile file.fool [numero di funzioni] [file.collapsed]
+ */
+public class Profile {
+
+	public static void main(String[] args) throws Exception {
+		String fileName = args.length > 0 ? args[0] : "prova.fool";
+		int top = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		ObjectFile code = FOOLCompiler.compile(fileName);
+		Profiler profiler = new Profiler(code.labels, code.functionNames);
+		new ExecuteVM(code.code).cpuProfiled(profiler);
+
+		System.out.println();
+		profiler.printTop(System.out, top);
+		if (args.length > 2) {
+			try (PrintStream out = new PrintStream(new FileOutputStream(args[2]))) {
+				profiler.writeCollapsedStacks(out);
+			}
+		}
+	}
+}
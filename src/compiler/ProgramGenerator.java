@@ -0,0 +1,584 @@
+package compiler;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Function;
+import org.antlr.v4.runtime.*;
+import compiler.lib.*;
+import svm.*;
+
+/*
+ * Generatore di programmi FOOL ben tipati, deterministico dato il seme, per test di carico e
+ * benchmark su programmi molto piu' grandi di prova.fool. Il programma generato ha la forma
+ *
+ *   let
+ *     class C0 (a1:int, a2:bool ...) { fun m3:int (p4:int) ...; ... }         classi
+ *     var o0:C0 = new C0(...);                                                oggetti
+ *     fun f0:int (p:int, q:bool) let var ...; fun g:... in ...;               funzioni
+ *     fun r0:int (n:int, acc:int) let var o:C0 = new C0(...); in              ricorsive
+ *       if (n <= 0) then {acc} else {r0(n - 1, ...)};
+ *     var v0:int = print(... f0(...) ...);                                    stampe
+ *     var v9:int = print(r0(ricorsione, ...));
+ *   in print(v0 + ... + v9 + ...);
+ *
+ * rispettando le regole di FOOL.g4, di SymbolTableASTVisitor (classi prima delle altre
+ * dichiarazioni, senza ereditarieta', ogni nome usato dopo la sua dichiarazione, metodi che
+ * vedono solo campi, parametri e metodi precedenti della classe) e di TypeCheckEASTVisitor
+ * (int e bool senza mescolarli, stesso tipo nei due rami degli if).
+ * Terminazione: le chiamate vanno solo a funzioni e metodi dichiarati prima (nessuna
+ * ricorsione) tranne nelle funzioni r, la cui ricorsione e' lunga esattamente "ricorsione"
+ * livelli; ogni corpo di funzione o metodo contiene al piu' una chiamata e i divisori non ne
+ * contengono, quindi il costo dell'esecuzione cresce linearmente con il programma (le
+ * funzioni r non in coda usano uno stack proporzionale alla ricorsione).
+ * Output atteso: il generatore costruisce ogni espressione insieme alla sua semantica (interi
+ * a 32 bit come la SVM, divisione troncata, booleani stampati come 0 e 1) e calcola i valori
+ * stampati valutando il programma, senza passare dal compilatore.
+ * Uso: java compiler.ProgramGenerator [-seed n] [-classes n] [-fields n] [-methods n]
+ *          [-functions n] [-nesting n] [-depth n] [-new n] [-recursive n] [-recursion n]
+ *          [-check] [file.fool]
+ *        scrive il programma su file.fool (o su stdout) e l'output atteso su file.fool.expected;
+ *        con -check lo compila ed esegue con la SVM e lo confronta con l'output atteso
+ */
+public class ProgramGenerator {
+
+	// parametri della generazione
+	public static class Config {
+		public long seed = 1;
+		public int classes = 2; // classi
+		public int fields = 2; // campi per classe
+		public int methods = 3; // metodi per classe
+		public int functions = 10; // funzioni globali
+		public int nesting = 2; // livelli di funzioni annidate (let/fun) in ogni funzione globale
+		public int depth = 4; // profondita' delle espressioni
+		public int allocations = 4; // oggetti globali creati con new (se ci sono classi)
+		public int recursive = 2; // funzioni ricorsive (una new per livello se ci sono classi)
+		public int recursion = 100; // livelli di ricorsione a runtime
+	}
+
+	// programma generato e valori che stampa, uno per riga
+	public static class Program {
+		public final String source;
+		public final List<String> expectedOutput;
+
+		Program(String source, List<String> expectedOutput) {
+			this.source = source;
+			this.expectedOutput = expectedOutput;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Config config = new Config();
+		boolean check = false;
+		String fileName = null;
+		for (int a = 0; a < args.length; a++) {
+			switch (args[a]) {
+				case "-seed": config.seed = Long.parseLong(args[++a]); break;
+				case "-classes": config.classes = Integer.parseInt(args[++a]); break;
+				case "-fields": config.fields = Integer.parseInt(args[++a]); break;
+				case "-methods": config.methods = Integer.parseInt(args[++a]); break;
+				case "-functions": config.functions = Integer.parseInt(args[++a]); break;
+				case "-nesting": config.nesting = Integer.parseInt(args[++a]); break;
+				case "-depth": config.depth = Integer.parseInt(args[++a]); break;
+				case "-new": config.allocations = Integer.parseInt(args[++a]); break;
+				case "-recursive": config.recursive = Integer.parseInt(args[++a]); break;
+				case "-recursion": config.recursion = Integer.parseInt(args[++a]); break;
+				case "-check": check = true; break;
+				default: fileName = args[a];
+			}
+		}
+		Program program = generate(config);
+		if (fileName == null) {
+			System.out.print(program.source);
+		} else {
+			Files.writeString(Paths.get(fileName), program.source);
+			Files.write(Paths.get(fileName+".expected"), program.expectedOutput);
+		}
+		if (check) {
+			List<String> output = run(program.source);
+			boolean ok = output.equals(program.expectedOutput);
+			System.err.println(ok ? "OK: "+output.size()+" values printed as expected"
+				: "MISMATCH: expected "+program.expectedOutput+" but got "+output);
+			if (!ok) System.exit(1);
+		}
+	}
+
+	// compila ed esegue source con la SVM, restituendo le righe stampate
+	public static List<String> run(String source) {
+		ObjectFile object = FOOLCompiler.compile(CharStreams.fromString(source), "generated", new CompilationContext());
+		PrintStream console = System.out;
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+		try {
+			new ExecuteVM(object.code).cpu();
+		} finally {
+			System.setOut(console);
+		}
+		String text = buffer.toString(StandardCharsets.UTF_8);
+		return text.isEmpty() ? List.of() : Arrays.asList(text.split("\n"));
+	}
+
+	public static Program generate(Config config) {
+		return new ProgramGenerator(config).program();
+	}
+
+	/*------------------------------------------------------------------
+	 * MODELLO DEL PROGRAMMA: OGNI ESPRESSIONE HA IL SUO TESTO E LA SUA SEMANTICA
+	 *------------------------------------------------------------------*/
+
+	private static final String INT = "int", BOOL = "bool";
+
+	private static class Exp {
+		final String text;
+		final Function<Env,Object> eval;
+
+		Exp(String text, Function<Env,Object> eval) {
+			this.text = text;
+			this.eval = eval;
+		}
+	}
+
+	// ambiente di valutazione: valori di variabili, parametri e campi, chiusure di funzioni e metodi
+	private static class Env {
+		final Map<String,Object> values = new HashMap<>();
+		final Env parent;
+
+		Env(Env parent) {
+			this.parent = parent;
+		}
+
+		Object lookup(String name) {
+			for (Env env = this; env != null; env = env.parent)
+				if (env.values.containsKey(name)) return env.values.get(name);
+			throw new IllegalStateException("Unbound "+name);
+		}
+	}
+
+	// dichiarazione di variabile (o di oggetto) in un let
+	private static class VarDec {
+		final String name;
+		final Exp exp;
+
+		VarDec(String name, Exp exp) {
+			this.name = name;
+			this.exp = exp;
+		}
+	}
+
+	// funzione o metodo: decs contiene VarDec e FunDec
+	private static class FunDec {
+		final String name, ret;
+		final List<String> params = new ArrayList<>();
+		final List<Object> decs = new ArrayList<>();
+		Exp body;
+
+		FunDec(String name, String ret) {
+			this.name = name;
+			this.ret = ret;
+		}
+	}
+
+	private static class Closure {
+		final FunDec fun;
+		final Env env;
+
+		Closure(FunDec fun, Env env) {
+			this.fun = fun;
+			this.env = env;
+		}
+
+		Object call(Object[] args) {
+			Env env = new Env(this.env);
+			for (int i = 0; i < args.length; i++) env.values.put(fun.params.get(i), args[i]);
+			bind(fun.decs, env);
+			return fun.body.eval.apply(env);
+		}
+	}
+
+	// oggetto: campi e metodi nel suo ambiente
+	private static class Obj {
+		final Env env = new Env(null);
+	}
+
+	private static void bind(List<Object> decs, Env env) {
+		for (Object dec : decs) {
+			if (dec instanceof VarDec) env.values.put(((VarDec) dec).name, ((VarDec) dec).exp.eval.apply(env));
+			else env.values.put(((FunDec) dec).name, new Closure((FunDec) dec, env));
+		}
+	}
+
+	private static class ClassDec {
+		final String name;
+		final List<String> fields = new ArrayList<>(), fieldTypes = new ArrayList<>();
+		final List<FunDec> methods = new ArrayList<>();
+		final List<List<String>> methodParamTypes = new ArrayList<>();
+
+		ClassDec(String name) {
+			this.name = name;
+		}
+	}
+
+	/*------------------------------------------------------------------
+	 * SCOPE DURANTE LA GENERAZIONE: NOMI GIA' DICHIARATI E VISIBILI
+	 *------------------------------------------------------------------*/
+
+	// simbolo visibile: variabile (type int o bool), funzione (ret e paramTypes) o oggetto (cls)
+	private static class Sym {
+		final String name, type;
+		final List<String> paramTypes;
+		final ClassDec cls;
+
+		Sym(String name, String type, List<String> paramTypes, ClassDec cls) {
+			this.name = name;
+			this.type = type;
+			this.paramTypes = paramTypes;
+			this.cls = cls;
+		}
+	}
+
+	private static class Scope {
+		final Scope parent;
+		final List<Sym> symbols = new ArrayList<>();
+
+		Scope(Scope parent) {
+			this.parent = parent;
+		}
+
+		List<Sym> visible() {
+			List<Sym> all = new ArrayList<>();
+			for (Scope s = this; s != null; s = s.parent) all.addAll(s.symbols);
+			return all;
+		}
+	}
+
+	/*------------------------------------------------------------------
+	 * GENERAZIONE
+	 *------------------------------------------------------------------*/
+
+	private final Config config;
+	private final Random random;
+	private int names = 0;
+
+	private ProgramGenerator(Config config) {
+		this.config = config;
+		this.random = new Random(config.seed);
+	}
+
+	private String fresh(String prefix) {
+		return prefix+(names++);
+	}
+
+	private String randomType() {
+		return random.nextBoolean() ? INT : BOOL;
+	}
+
+	private Program program() {
+		StringBuilder source = new StringBuilder("let\n");
+		Scope global = new Scope(null);
+		List<Object> decs = new ArrayList<>();
+		List<ClassDec> classes = new ArrayList<>();
+		List<String> prints = new ArrayList<>();
+
+		for (int c = 0; c < config.classes; c++) classes.add(classDec(source));
+
+		for (int o = 0; o < config.allocations && !classes.isEmpty(); o++) {
+			ClassDec cls = classes.get(o % classes.size());
+			String name = fresh("o");
+			Exp exp = newExp(cls, global, new int[] {1});
+			source.append("  var ").append(name).append(":").append(cls.name).append(" = ").append(exp.text).append(";\n");
+			decs.add(new VarDec(name, exp));
+			global.symbols.add(new Sym(name, cls.name, null, cls));
+		}
+
+		List<Sym> functions = new ArrayList<>();
+		for (int f = 0; f < config.functions; f++) {
+			FunDec fun = funDec(fresh("f"), global, config.nesting, source, "  ");
+			decs.add(fun);
+			functions.add(global.symbols.get(global.symbols.size() - 1));
+		}
+
+		List<String> recursive = new ArrayList<>();
+		for (int r = 0; r < config.recursive; r++) {
+			FunDec fun = recursiveDec(fresh("r"), r % 2 == 0, global, classes, source);
+			decs.add(fun);
+			recursive.add(fun.name);
+		}
+
+		// ogni funzione globale viene chiamata dall'inizializzazione di una variabile stampata
+		for (Sym fun : functions) {
+			Exp call = call(fun, null, global, 1, new int[] {0});
+			Exp exp = fun.type.equals(INT) ? binary(call, "+", exp(INT, global, config.depth / 2, new int[] {1}), (l, r) -> (int) l + (int) r)
+				: ifExp(call, exp(INT, global, config.depth / 2, new int[] {0}), exp(INT, global, config.depth / 2, new int[] {0}));
+			prints.add(printVar(exp, global, decs, source));
+		}
+		for (String name : recursive) {
+			int start = random.nextInt(10);
+			prints.add(printVar(new Exp(name+"("+config.recursion+", "+start+")",
+				env -> ((Closure) env.lookup(name)).call(new Object[] {config.recursion, start})), global, decs, source));
+		}
+
+		String sum = prints.isEmpty() ? "0" : String.join(" + ", prints);
+		if (decs.isEmpty()) source.setLength(0); // let senza dichiarazioni non e' ammesso da FOOL.g4
+		else source.append("in ");
+		source.append("print(").append(sum).append(");\n");
+
+		// valutazione del programma per l'output atteso (su un thread con uno stack grande per la ricorsione)
+		List<String> output = new ArrayList<>();
+		Runnable evaluation = () -> {
+			Env env = new Env(null);
+			for (Object dec : decs) {
+				if (dec instanceof VarDec && ((VarDec) dec).name.startsWith("v")) {
+					Object value = ((VarDec) dec).exp.eval.apply(env);
+					output.add(String.valueOf(value));
+					env.values.put(((VarDec) dec).name, value);
+				} else {
+					bind(List.of(dec), env);
+				}
+			}
+			int total = 0;
+			for (String name : prints) total += (int) env.lookup(name);
+			output.add(String.valueOf(total));
+		};
+		Thread thread = new Thread(null, evaluation, "evaluation", 1L << 30);
+		thread.start();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+		return new Program(source.toString(), output);
+	}
+
+	// var vN:int = print(exp); restituisce il nome della variabile
+	private String printVar(Exp exp, Scope global, List<Object> decs, StringBuilder source) {
+		String name = fresh("v");
+		source.append("  var ").append(name).append(":int = print(").append(exp.text).append(");\n");
+		decs.add(new VarDec(name, exp));
+		global.symbols.add(new Sym(name, INT, null, null));
+		return name;
+	}
+
+	private ClassDec classDec(StringBuilder source) {
+		ClassDec cls = new ClassDec(fresh("C"));
+		Scope scope = new Scope(null); // i metodi vedono solo la classe
+		List<String> fields = new ArrayList<>();
+		for (int f = 0; f < config.fields; f++) {
+			String name = fresh("a"), type = f == 0 ? INT : randomType();
+			cls.fields.add(name);
+			cls.fieldTypes.add(type);
+			scope.symbols.add(new Sym(name, type, null, null));
+			fields.add(name+":"+type);
+		}
+		source.append("  class ").append(cls.name).append(" (").append(String.join(", ", fields)).append(") {\n");
+		for (int m = 0; m < config.methods; m++) {
+			FunDec method = funDec(fresh("m"), scope, 0, source, "    ");
+			cls.methods.add(method);
+			cls.methodParamTypes.add(scope.symbols.get(scope.symbols.size() - 1).paramTypes);
+		}
+		source.append("  }\n");
+		return cls;
+	}
+
+	/*
+	fun name:ret (parametri) let var ...; fun ...; var ...; in corpo;
+	con al piu' nesting livelli di funzioni annidate; la funzione viene aggiunta allo scope
+	dopo il corpo (niente ricorsione). Il corpo e le variabili del let fanno al piu' una chiamata
+	*/
+	private FunDec funDec(String name, Scope scope, int nesting, StringBuilder source, String indent) {
+		FunDec fun = new FunDec(name, randomType());
+		Scope local = new Scope(scope);
+		List<String> params = new ArrayList<>(), paramTypes = new ArrayList<>();
+		int count = 1 + random.nextInt(3);
+		for (int p = 0; p < count; p++) {
+			String par = fresh("p"), type = p == 0 ? INT : randomType();
+			fun.params.add(par);
+			paramTypes.add(type);
+			params.add(par+":"+type);
+			local.symbols.add(new Sym(par, type, null, null));
+		}
+		int[] budget = {1};
+		StringBuilder decs = new StringBuilder();
+		String inner = indent+"    ";
+		if (random.nextBoolean()) varDec(fun, local, budget, decs, inner);
+		if (nesting > 0) fun.decs.add(funDec(fresh("g"), local, nesting - 1, decs, inner));
+		if (random.nextBoolean()) varDec(fun, local, budget, decs, inner);
+		fun.body = exp(fun.ret, local, config.depth, budget);
+		source.append(indent).append("fun ").append(name).append(":").append(fun.ret).append(" (").append(String.join(", ", params)).append(")\n");
+		if (decs.length() > 0) source.append(indent).append("  let\n").append(decs).append(indent).append("  in ");
+		else source.append(indent).append("  ");
+		source.append(fun.body.text).append(";\n");
+		scope.symbols.add(new Sym(name, fun.ret, paramTypes, null));
+		return fun;
+	}
+
+	private void varDec(FunDec fun, Scope local, int[] budget, StringBuilder decs, String indent) {
+		String name = fresh("x"), type = randomType();
+		Exp exp = exp(type, local, Math.max(1, config.depth - 1), budget);
+		decs.append(indent).append("var ").append(name).append(":").append(type).append(" = ").append(exp.text).append(";\n");
+		fun.decs.add(new VarDec(name, exp));
+		local.symbols.add(new Sym(name, type, null, null));
+	}
+
+	/*
+	fun rN:int (n:int, acc:int) let var o:C = new C(...); in
+	  if (n <= 0) then {acc} else {rN(n - 1, exp)}          (in coda)
+	  if (n <= 0) then {acc} else {exp + rN(n - 1, acc)}    (non in coda)
+	*/
+	private FunDec recursiveDec(String name, boolean tail, Scope global, List<ClassDec> classes, StringBuilder source) {
+		FunDec fun = new FunDec(name, INT);
+		Scope local = new Scope(global);
+		String n = fresh("n"), acc = fresh("acc");
+		fun.params.add(n);
+		fun.params.add(acc);
+		local.symbols.add(new Sym(n, INT, null, null));
+		local.symbols.add(new Sym(acc, INT, null, null));
+		source.append("  fun ").append(name).append(":int (").append(n).append(":int, ").append(acc).append(":int)\n");
+		int[] budget = {1};
+		if (!classes.isEmpty()) {
+			ClassDec cls = classes.get(random.nextInt(classes.size()));
+			String o = fresh("o");
+			Exp exp = newExp(cls, local, new int[] {0});
+			source.append("    let var ").append(o).append(":").append(cls.name).append(" = ").append(exp.text).append(";\n    in ");
+			fun.decs.add(new VarDec(o, exp));
+			local.symbols.add(new Sym(o, cls.name, null, cls));
+		} else {
+			source.append("    ");
+		}
+		Exp step = exp(INT, local, config.depth, budget);
+		String recursion = tail ? name+"("+n+" - 1, "+step.text+")" : "("+step.text+" + "+name+"("+n+" - 1, "+acc+"))";
+		fun.body = new Exp("if ("+n+" <= 0) then {"+acc+"} else {"+recursion+"}", env -> {
+			int nValue = (int) env.lookup(n), accValue = (int) env.lookup(acc);
+			if (nValue <= 0) return accValue;
+			Closure self = (Closure) env.lookup(name);
+			if (tail) return self.call(new Object[] {nValue - 1, step.eval.apply(env)});
+			int left = (int) step.eval.apply(env);
+			return left + (int) self.call(new Object[] {nValue - 1, accValue});
+		});
+		source.append(fun.body.text).append(";\n");
+		return fun;
+	}
+
+	// new C(argomenti dei tipi dei campi)
+	private Exp newExp(ClassDec cls, Scope scope, int[] budget) {
+		List<Exp> args = new ArrayList<>();
+		for (String type : cls.fieldTypes) args.add(exp(type, scope, 2, budget));
+		return new Exp("new "+cls.name+"("+texts(args)+")", env -> {
+			Obj obj = new Obj();
+			for (int f = 0; f < args.size(); f++) obj.env.values.put(cls.fields.get(f), args.get(f).eval.apply(env));
+			for (FunDec method : cls.methods) obj.env.values.put(method.name, new Closure(method, obj.env));
+			return obj;
+		});
+	}
+
+	private static String texts(List<Exp> exps) {
+		StringJoiner text = new StringJoiner(", ");
+		for (Exp exp : exps) text.add(exp.text);
+		return text.toString();
+	}
+
+	/*
+	espressione di tipo type (int o bool) profonda depth: il primo sottoalbero ha profondita'
+	depth-1, gli altri una profondita' casuale minore; budget[0] e' il numero di chiamate che
+	si possono ancora fare
+	*/
+	private Exp exp(String type, Scope scope, int depth, int[] budget) {
+		List<Sym> visible = scope.visible();
+		if (budget[0] > 0 && random.nextInt(3) == 0) {
+			List<Object[]> callees = new ArrayList<>(); // {simbolo della funzione, oggetto o null}
+			for (Sym sym : visible) {
+				if (sym.paramTypes != null && sym.type.equals(type)) callees.add(new Object[] {sym, null});
+				if (sym.cls != null)
+					for (int m = 0; m < sym.cls.methods.size(); m++)
+						if (sym.cls.methods.get(m).ret.equals(type))
+							callees.add(new Object[] {new Sym(sym.cls.methods.get(m).name, type, sym.cls.methodParamTypes.get(m), null), sym});
+			}
+			if (!callees.isEmpty()) {
+				Object[] callee = callees.get(random.nextInt(callees.size()));
+				return call((Sym) callee[0], (Sym) callee[1], scope, depth, budget);
+			}
+		}
+		if (depth <= 0 || random.nextInt(4) == 0) return leaf(type, visible);
+		int sub = Math.max(0, depth - 1);
+		if (type.equals(INT)) {
+			switch (random.nextInt(6)) {
+				case 0: return binary(exp(INT, scope, sub, budget), "+", exp(INT, scope, random.nextInt(depth), budget), (l, r) -> (int) l + (int) r);
+				case 1: return binary(exp(INT, scope, sub, budget), "-", exp(INT, scope, random.nextInt(depth), budget), (l, r) -> (int) l - (int) r);
+				case 2: return binary(exp(INT, scope, sub, budget), "*", exp(INT, scope, random.nextInt(depth), budget), (l, r) -> (int) l * (int) r);
+				case 3: { // divisore r*r+1, mai 0 (nemmeno con l'overflow), senza chiamate perche' r compare due volte
+					Exp l = exp(INT, scope, sub, budget), r = exp(INT, scope, random.nextInt(depth), new int[] {0});
+					return new Exp("("+l.text+" / (("+r.text+" * "+r.text+") + 1))", env -> {
+						int divisor = (int) r.eval.apply(env);
+						return (int) l.eval.apply(env) / (divisor * divisor + 1);
+					});
+				}
+				case 4: return ifExp(exp(BOOL, scope, random.nextInt(depth), budget), exp(INT, scope, sub, budget), exp(INT, scope, random.nextInt(depth), budget));
+				default: return leaf(INT, visible);
+			}
+		}
+		switch (random.nextInt(8)) {
+			case 0: return binary(exp(BOOL, scope, sub, budget), "&&", exp(BOOL, scope, random.nextInt(depth), budget), (l, r) -> (boolean) l && (boolean) r);
+			case 1: return binary(exp(BOOL, scope, sub, budget), "||", exp(BOOL, scope, random.nextInt(depth), budget), (l, r) -> (boolean) l || (boolean) r);
+			case 2: {
+				Exp e = exp(BOOL, scope, sub, budget);
+				// tra parentesi perche' in FOOL.g4 NOT exp ha la precedenza piu' bassa: !a || b e' !(a || b)
+				return new Exp("(!"+e.text+")", env -> !(boolean) e.eval.apply(env));
+			}
+			case 3: return binary(exp(INT, scope, sub, budget), "==", exp(INT, scope, random.nextInt(depth), budget), (l, r) -> l.equals(r));
+			case 4: return binary(exp(BOOL, scope, sub, budget), "==", exp(BOOL, scope, random.nextInt(depth), budget), (l, r) -> l.equals(r));
+			case 5: return binary(exp(INT, scope, sub, budget), "<=", exp(INT, scope, random.nextInt(depth), budget), (l, r) -> (int) l <= (int) r);
+			case 6: return binary(exp(INT, scope, sub, budget), ">=", exp(INT, scope, random.nextInt(depth), budget), (l, r) -> (int) l >= (int) r);
+			default: return ifExp(exp(BOOL, scope, random.nextInt(depth), budget), exp(BOOL, scope, sub, budget), exp(BOOL, scope, random.nextInt(depth), budget));
+		}
+	}
+
+	// costante o variabile visibile del tipo type
+	private Exp leaf(String type, List<Sym> visible) {
+		List<Sym> vars = new ArrayList<>();
+		for (Sym sym : visible) if (sym.paramTypes == null && sym.cls == null && sym.type.equals(type)) vars.add(sym);
+		if (!vars.isEmpty() && random.nextInt(5) < 3) {
+			String name = vars.get(random.nextInt(vars.size())).name;
+			return new Exp(name, env -> env.lookup(name));
+		}
+		if (type.equals(BOOL)) {
+			boolean value = random.nextBoolean();
+			return new Exp(String.valueOf(value), env -> value);
+		}
+		int value = random.nextInt(60) - 10;
+		return new Exp(String.valueOf(value), env -> value);
+	}
+
+	private interface Operator {
+		Object apply(Object left, Object right);
+	}
+
+	private static Exp binary(Exp l, String op, Exp r, Operator operator) {
+		return new Exp("("+l.text+" "+op+" "+r.text+")", env -> {
+			if (op.equals("&&") || op.equals("||")) { // cortocircuito (le espressioni non hanno effetti)
+				boolean left = (boolean) l.eval.apply(env);
+				return op.equals("&&") ? left && (boolean) r.eval.apply(env) : left || (boolean) r.eval.apply(env);
+			}
+			return operator.apply(l.eval.apply(env), r.eval.apply(env));
+		});
+	}
+
+	private static Exp ifExp(Exp cond, Exp th, Exp el) {
+		return new Exp("if ("+cond.text+") then {"+th.text+"} else {"+el.text+"}",
+			env -> (boolean) cond.eval.apply(env) ? th.eval.apply(env) : el.eval.apply(env));
+	}
+
+	// chiamata della funzione fun (o del metodo fun dell'oggetto object) con argomenti senza chiamate
+	private Exp call(Sym fun, Sym object, Scope scope, int depth, int[] budget) {
+		budget[0]--;
+		List<Exp> args = new ArrayList<>();
+		for (String type : fun.paramTypes) args.add(exp(type, scope, Math.max(0, Math.min(depth - 1, 2)), new int[] {0}));
+		String callee = object == null ? fun.name : object.name+"."+fun.name;
+		return new Exp(callee+"("+texts(args)+")", env -> {
+			Object[] values = new Object[args.size()];
+			for (int a = 0; a < values.length; a++) values[a] = args.get(a).eval.apply(env);
+			Closure closure = object == null ? (Closure) env.lookup(fun.name)
+				: (Closure) ((Obj) env.lookup(object.name)).env.values.get(fun.name);
+			return closure.call(values);
+		});
+	}
+}
@@ -0,0 +1,206 @@
+package compiler;
+
+import java.util.*;
+import compiler.AST.*;
+import compiler.exc.*;
+import compiler.lib.*;
+
+/*
+ * Analisi di raggiungibilita' delle dichiarazioni sull'AST arricchito (usata da
+ * DeadCodeEliminationASTVisitor): visitando un ProgLetInNode calcola in live le STentry
+ * delle dichiarazioni (var, fun, classi e metodi) che possono essere usate eseguendo il
+ * programma.
+ * Partendo dall'espressione del programma, una dichiarazione e' raggiungibile se e'
+ * riferita da un'espressione raggiungibile tramite IdNode.entry, CallNode.entry,
+ * ClassCallNode.methodEntry o NewNode.entry; il corpo (e le dichiarazioni locali) di una
+ * funzione o di un metodo raggiungibile sono a loro volta raggiungibili.
+ * Una var il cui valore iniziale puo' avere effetti (print, chiamate, divisioni per zero,
+ * accessi ai campi di null) viene sempre mantenuta se lo e' lo scope che la contiene.
+ *
+ * Sulle espressioni visitNode(n) ritorna true se la valutazione di n puo' avere effetti, e
+ * aggiunge a references le STentry riferite.
+ */
+public class ReachabilityASTVisitor extends BaseASTVisitor<Boolean,VoidException> {
+
+	final Set<STentry> live = new HashSet<>();
+	// dichiarazione di ogni STentry di var, fun, classe o metodo
+	private final Map<STentry, DecNode> declarations = new HashMap<>();
+	private List<STentry> references = new ArrayList<>();
+
+	ReachabilityASTVisitor() {}
+
+	private void index(List<? extends DecNode> declist) {
+		for (DecNode dec : declist) {
+			if (dec instanceof VarNode) declarations.put(((VarNode) dec).entry, dec);
+			if (dec instanceof FunNode) {
+				declarations.put(((FunNode) dec).entry, dec);
+				index(((FunNode) dec).declist);
+			}
+			if (dec instanceof ClassNode) {
+				declarations.put(((ClassNode) dec).entry, dec);
+				index(((ClassNode) dec).methods);
+			}
+			if (dec instanceof MethodNode) {
+				declarations.put(((MethodNode) dec).entry, dec);
+				index(((MethodNode) dec).declist);
+			}
+		}
+	}
+
+	// vero se la valutazione di exp puo' avere effetti
+	static boolean hasEffects(Node exp) {
+		return new ReachabilityASTVisitor().visit(exp);
+	}
+
+	private boolean visitEffects(Node exp) {
+		List<STentry> prevReferences = references;
+		references = new ArrayList<>(); // i riferimenti di exp non la rendono raggiungibile
+		boolean effects = visit(exp);
+		references = prevReferences;
+		return effects;
+	}
+
+	// rende raggiungibili l'espressione di uno scope e le sue var con effetti
+	private void reach(List<DecNode> declist, Node exp) {
+		visit(exp);
+		for (DecNode dec : declist)
+			if (dec instanceof VarNode && visitEffects(((VarNode) dec).exp)) references.add(((VarNode) dec).entry);
+	}
+
+	@Override
+	public Boolean visitNode(ProgLetInNode n) {
+		index(n.declist);
+		reach(n.declist, n.exp);
+		while (!references.isEmpty()) {
+			STentry entry = references.remove(references.size() - 1);
+			if (!live.add(entry)) continue;
+			DecNode dec = declarations.get(entry); // null per parametri e campi
+			if (dec instanceof VarNode) visit(((VarNode) dec).exp);
+			if (dec instanceof FunNode) reach(((FunNode) dec).declist, ((FunNode) dec).exp);
+			if (dec instanceof MethodNode) reach(((MethodNode) dec).declist, ((MethodNode) dec).exp);
+		}
+		return true;
+	}
+
+	@Override
+	public Boolean visitNode(ProgNode n) {
+		return visit(n.exp);
+	}
+
+	@Override
+	public Boolean visitNode(PrintNode n) {
+		visit(n.exp);
+		return true;
+	}
+
+	@Override
+	public Boolean visitNode(IfNode n) {
+		return visit(n.cond) | visit(n.th) | visit(n.el);
+	}
+
+	@Override
+	public Boolean visitNode(EqualNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(TimesNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(PlusNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(CallNode n) {
+		references.add(n.entry);
+		for (Node arg : n.arglist) visit(arg);
+		return true;
+	}
+
+	@Override
+	public Boolean visitNode(IdNode n) {
+		references.add(n.entry);
+		return false;
+	}
+
+	@Override
+	public Boolean visitNode(BoolNode n) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitNode(IntNode n) {
+		return false;
+	}
+
+	// OPERATOR EXTENSION
+
+	@Override
+	public Boolean visitNode(GreaterEqualNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(LessEqualNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(NotNode n) {
+		return visit(n.exp);
+	}
+
+	@Override
+	public Boolean visitNode(MinusNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(OrNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(DivNode n) {
+		visit(n.left);
+		visit(n.right);
+		return true; // divisione per zero
+	}
+
+	@Override
+	public Boolean visitNode(AndNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	// OBJECT-ORIENTED EXTENSION
+
+	@Override
+	public Boolean visitNode(ClassCallNode n) {
+		references.add(n.entry);
+		references.add(n.methodEntry);
+		for (Node arg : n.arglist) visit(arg);
+		return true;
+	}
+
+	@Override
+	public Boolean visitNode(FieldAccessNode n) {
+		references.add(n.entry);
+		return true; // campo di null
+	}
+
+	@Override
+	public Boolean visitNode(NewNode n) {
+		references.add(n.entry);
+		boolean effects = false;
+		for (Node arg : n.arglist) effects |= visit(arg);
+		return effects;
+	}
+
+	@Override
+	public Boolean visitNode(EmptyNode n) {
+		return false;
+	}
+}
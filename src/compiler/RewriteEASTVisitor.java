@@ -0,0 +1,266 @@
+package compiler;
+
+import java.util.*;
+import compiler.AST.*;
+import compiler.exc.*;
+import compiler.lib.*;
+
+/*
+ * Base delle trasformazioni dell'AST arricchito (ottimizzazioni tra type checking e
+ * generazione del codice): visitNode(n) ritorna il nodo che sostituisce n.
+ * Di default ogni nodo con figli viene ricreato (i campi sono final) con i figli trasformati,
+ * copiando linea, tipo (anche quello calcolato dal type checking), nesting level e STentry; foglie, parametri e campi restano invariati.
+ * Le sottoclassi ridefiniscono i nodi che trasformano e, con entry(), possono sostituire le
+ * STentry riferite (es. per assegnare nuovi offset).
+ */
+public class RewriteEASTVisitor extends BaseASTVisitor<Node,VoidException> {
+
+	protected RewriteEASTVisitor() {}
+	protected RewriteEASTVisitor(boolean debug) { super(false,debug); } // enables print for debugging
+
+	// STentry da usare nel nodo ricreato al posto di e
+	protected STentry entry(STentry e) {
+		return e;
+	}
+
+	protected static <N extends Node> N at(N n, Node old) {
+		n.setLine(old.getLine());
+		n.setExpType(old.getExpType());
+		return n;
+	}
+
+	protected List<Node> visitAll(List<Node> nodes) {
+		List<Node> result = new ArrayList<>();
+		for (Node node : nodes) result.add(visit(node));
+		return result;
+	}
+
+	// dichiarazioni di variabili, funzioni e classi (di un let o del programma)
+	protected List<DecNode> visitDecs(List<DecNode> declist) {
+		List<DecNode> result = new ArrayList<>();
+		for (DecNode dec : declist) result.add((DecNode) visit(dec));
+		return result;
+	}
+
+	protected List<MethodNode> visitMethods(List<MethodNode> methods) {
+		List<MethodNode> result = new ArrayList<>();
+		for (MethodNode method : methods) result.add((MethodNode) visit(method));
+		return result;
+	}
+
+	@Override
+	public Node visitNode(ProgLetInNode n) {
+		if (print) printNode(n);
+		List<DecNode> declist = visitDecs(n.declist);
+		return new ProgLetInNode(declist, visit(n.exp));
+	}
+
+	@Override
+	public Node visitNode(ProgNode n) {
+		if (print) printNode(n);
+		return new ProgNode(visit(n.exp));
+	}
+
+	@Override
+	public Node visitNode(FunNode n) {
+		if (print) printNode(n,n.id);
+		STentry entry = entry(n.entry);
+		List<DecNode> declist = visitDecs(n.declist);
+		FunNode fun = at(new FunNode(n.id, n.retType, n.parlist, declist, visit(n.exp)), n);
+		fun.setType(n.getType());
+		fun.entry = entry;
+		return fun;
+	}
+
+	@Override
+	public Node visitNode(ParNode n) {
+		if (print) printNode(n,n.id);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(VarNode n) {
+		if (print) printNode(n,n.id);
+		VarNode var = at(new VarNode(n.id, n.getType(), visit(n.exp)), n);
+		var.entry = entry(n.entry);
+		return var;
+	}
+
+	@Override
+	public Node visitNode(PrintNode n) {
+		if (print) printNode(n);
+		return at(new PrintNode(visit(n.exp)), n);
+	}
+
+	@Override
+	public Node visitNode(IfNode n) {
+		if (print) printNode(n);
+		Node cond = visit(n.cond);
+		Node th = visit(n.th);
+		return at(new IfNode(cond, th, visit(n.el)), n);
+	}
+
+	@Override
+	public Node visitNode(EqualNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left);
+		return at(new EqualNode(left, visit(n.right)), n);
+	}
+
+	@Override
+	public Node visitNode(TimesNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left);
+		return at(new TimesNode(left, visit(n.right)), n);
+	}
+
+	@Override
+	public Node visitNode(PlusNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left);
+		return at(new PlusNode(left, visit(n.right)), n);
+	}
+
+	@Override
+	public Node visitNode(CallNode n) {
+		if (print) printNode(n,n.id);
+		CallNode call = at(new CallNode(n.id, visitAll(n.arglist)), n);
+		call.entry = entry(n.entry);
+		call.nl = n.nl;
+		return call;
+	}
+
+	@Override
+	public Node visitNode(IdNode n) {
+		if (print) printNode(n,n.id);
+		IdNode id = at(new IdNode(n.id), n);
+		id.entry = entry(n.entry);
+		id.nl = n.nl;
+		return id;
+	}
+
+	@Override
+	public Node visitNode(BoolNode n) {
+		if (print) printNode(n,n.val.toString());
+		return n;
+	}
+
+	@Override
+	public Node visitNode(IntNode n) {
+		if (print) printNode(n,n.val.toString());
+		return n;
+	}
+
+	// OPERATOR EXTENSION
+
+	@Override
+	public Node visitNode(GreaterEqualNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left);
+		return at(new GreaterEqualNode(left, visit(n.right)), n);
+	}
+
+	@Override
+	public Node visitNode(LessEqualNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left);
+		return at(new LessEqualNode(left, visit(n.right)), n);
+	}
+
+	@Override
+	public Node visitNode(NotNode n) {
+		if (print) printNode(n);
+		return at(new NotNode(visit(n.exp)), n);
+	}
+
+	@Override
+	public Node visitNode(MinusNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left);
+		return at(new MinusNode(left, visit(n.right)), n);
+	}
+
+	@Override
+	public Node visitNode(OrNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left);
+		return at(new OrNode(left, visit(n.right)), n);
+	}
+
+	@Override
+	public Node visitNode(DivNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left);
+		return at(new DivNode(left, visit(n.right)), n);
+	}
+
+	@Override
+	public Node visitNode(AndNode n) {
+		if (print) printNode(n);
+		Node left = visit(n.left);
+		return at(new AndNode(left, visit(n.right)), n);
+	}
+
+	// OBJECT-ORIENTED EXTENSION
+
+	@Override
+	public Node visitNode(ClassNode n) {
+		if (print) printNode(n,n.id);
+		STentry entry = entry(n.entry);
+		ClassNode cl = at(new ClassNode(n.id, n.fields, visitMethods(n.methods)), n);
+		cl.type = n.type;
+		cl.entry = entry;
+		return cl;
+	}
+
+	@Override
+	public Node visitNode(FieldNode n) {
+		if (print) printNode(n,n.id);
+		return n;
+	}
+
+	@Override
+	public Node visitNode(MethodNode n) {
+		if (print) printNode(n,n.id);
+		STentry entry = entry(n.entry);
+		List<DecNode> declist = visitDecs(n.declist);
+		MethodNode method = at(new MethodNode(n.id, n.retType, n.parlist, declist, visit(n.exp)), n);
+		method.setType((MethodTypeNode) n.getType());
+		method.entry = entry;
+		return method;
+	}
+
+	@Override
+	public Node visitNode(ClassCallNode n) {
+		if (print) printNode(n,n.id1+"."+n.id2);
+		ClassCallNode call = at(new ClassCallNode(n.id1, n.id2, visitAll(n.arglist)), n);
+		call.entry = entry(n.entry);
+		call.methodEntry = entry(n.methodEntry);
+		call.nl = n.nl;
+		return call;
+	}
+
+	@Override
+	public Node visitNode(FieldAccessNode n) {
+		if (print) printNode(n,n.id1+"."+n.id2);
+		FieldAccessNode access = at(new FieldAccessNode(n.id1, n.id2), n);
+		access.entry = entry(n.entry);
+		access.fieldEntry = n.fieldEntry;
+		access.nl = n.nl;
+		return access;
+	}
+
+	@Override
+	public Node visitNode(NewNode n) {
+		if (print) printNode(n,n.id);
+		NewNode node = at(new NewNode(n.id, visitAll(n.arglist)), n);
+		node.entry = entry(n.entry);
+		return node;
+	}
+
+	@Override
+	public Node visitNode(EmptyNode n) {
+		if (print) printNode(n);
+		return n;
+	}
+}
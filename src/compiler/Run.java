@@ -0,0 +1,32 @@
+package compiler;
+
+import java.nio.file.*;
+import compiler.lib.*;
+import svm.*;
+
+/*
+ * Esegue un programma FOOL passando dalla CompilationCache (default: directory .foolcache):
+ * se il sorgente e' gia' stato compilato il suo file oggetto (vedi svm.ObjectFile) viene
+ * caricato direttamente, senza ripassare dal compilatore e dall'assembler; altrimenti il
+ * programma viene compilato, riusando il codice delle funzioni globali non cambiate, e il
+ * file oggetto salvato nella cache per le esecuzioni successive.
+ * Uso: java compiler.Run [-cache dir] [-stats] [file.fool]
+ *        -stats stampa su stderr hit e miss della cache
+ */
+public class Run {
+
+	public static void main(String[] args) throws Exception {
+		String fileName = "prova.fool", cacheDir = ".foolcache";
+		boolean stats = false;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-cache") && i+1 < args.length) cacheDir = args[++i];
+			else if (args[i].equals("-stats")) stats = true;
+			else fileName = args[i];
+		}
+
+		CompilationCache cache = new CompilationCache(Paths.get(cacheDir), FOOLCompiler.OPTIONS);
+		ObjectFile program = FOOLCompiler.compile(fileName, new CompilationContext(), cache);
+		if (stats) System.err.println("Compilation cache: "+cache);
+		new ExecuteVM(program.code).cpu();
+	}
+}
@@ -13,9 +13,10 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 	private int nestingLevel=0; // current nesting level
 	private int decOffset=-2; // counter for offset of local declarations at current nesting level 
 	int stErrors=0;
+	private final CompilationContext context;
 
-	SymbolTableASTVisitor() {}
-	SymbolTableASTVisitor(boolean debug) {super(debug);} // enables print for debugging
+	SymbolTableASTVisitor(CompilationContext context) {this.context = context;}
+	SymbolTableASTVisitor(CompilationContext context, boolean debug) {super(debug); this.context = context;} // enables print for debugging
 
 	private STentry stLookup(String id) {
 		int j = nestingLevel;
@@ -50,9 +51,10 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		List<TypeNode> parTypes = new ArrayList<>();  
 		for (ParNode par : n.parlist) parTypes.add(par.getType()); 
 		STentry entry = new STentry(nestingLevel, new ArrowTypeNode(parTypes,n.retType),decOffset--);
+		n.entry = entry;
 		//inserimento di ID nella symtable
 		if (hm.put(n.id, entry) != null) {
-			System.out.println("Fun id " + n.id + " at line "+ n.getLine() +" already declared");
+			context.out.println("Fun id " + n.id + " at line "+ n.getLine() +" already declared");
 			stErrors++;
 		}
 		// set del tipo della funzione
@@ -67,7 +69,7 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		int parOffset=1;
 		for (ParNode par : n.parlist)
 			if (hmn.put(par.id, new STentry(nestingLevel,par.getType(),parOffset++)) != null) {
-				System.out.println("Par id " + par.id + " at line "+ n.getLine() +" already declared");
+				context.out.println("Par id " + par.id + " at line "+ n.getLine() +" already declared");
 				stErrors++;
 			}
 		for (Node dec : n.declist) visit(dec);
@@ -84,9 +86,10 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		visit(n.exp);
 		Map<String, STentry> hm = symTable.get(nestingLevel);
 		STentry entry = new STentry(nestingLevel,n.getType(),decOffset--);
+		n.entry = entry;
 		//inserimento di ID nella symtable
 		if (hm.put(n.id, entry) != null) {
-			System.out.println("Var id " + n.id + " at line "+ n.getLine() +" already declared");
+			context.out.println("Var id " + n.id + " at line "+ n.getLine() +" already declared");
 			stErrors++;
 		}
 		return null;
@@ -137,7 +140,7 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		if (print) printNode(n);
 		STentry entry = stLookup(n.id);
 		if (entry == null) {
-			System.out.println("Fun id " + n.id + " at line "+ n.getLine() + " not declared");
+			context.out.println("Fun id " + n.id + " at line "+ n.getLine() + " not declared");
 			stErrors++;
 		} else {
 			n.entry = entry;
@@ -152,7 +155,7 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		if (print) printNode(n);
 		STentry entry = stLookup(n.id);
 		if (entry == null) {
-			System.out.println("Var or Par id " + n.id + " at line "+ n.getLine() + " not declared");
+			context.out.println("Var or Par id " + n.id + " at line "+ n.getLine() + " not declared");
 			stErrors++;
 		} else {
 			n.entry = entry;
@@ -243,9 +246,10 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		// imposto il tipo della classe e creo una entry (relativa alla classe) nel nesting level 0
 		n.type = classTypeNode;
 		STentry entry = new STentry(0, classTypeNode,decOffset--);
+		n.entry = entry;
 		//inserimento di ID nella symtable
 		if (hm.put(n.id, entry) != null) {
-			System.out.println("Class id " + n.id + " at line "+ n.getLine() +" already declared");
+			context.out.println("Class id " + n.id + " at line "+ n.getLine() +" already declared");
 			stErrors++;
 		}
 		// creazione della virtual table
@@ -258,7 +262,7 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		int fieldOffset=-1;
 		for (FieldNode field : n.fields){
 			if (virtualTable.put(field.id, new STentry(nestingLevel, field.getType(), fieldOffset--)) != null){
-				System.out.println("Field id " + field.id + " at line "+ n.getLine() +" already declared");
+				context.out.println("Field id " + field.id + " at line "+ n.getLine() +" already declared");
 				stErrors++;
 			}
 			// aggiungo il campo in allFields in posizione -offset-1 (da 0 a n-1)
@@ -269,8 +273,9 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		decOffset=0;
 		for (MethodNode method : n.methods) {
 			visit(method);
-			if (virtualTable.put(method.id, new STentry(nestingLevel, method.getType(), decOffset)) != null ){
-				System.out.println("Method id " + method.id + " at line "+ n.getLine() +" already declared");
+			method.entry = new STentry(nestingLevel, method.getType(), decOffset);
+			if (virtualTable.put(method.id, method.entry) != null ){
+				context.out.println("Method id " + method.id + " at line "+ n.getLine() +" already declared");
 				stErrors++;
 			}
 			decOffset++;
@@ -300,7 +305,7 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		int parOffset=1;
 		for (ParNode par : n.parlist)
 			if (hmn.put(par.id, new STentry(nestingLevel,par.getType(),parOffset++)) != null) {
-				System.out.println("Par id " + par.id + " at line "+ n.getLine() +" already declared");
+				context.out.println("Par id " + par.id + " at line "+ n.getLine() +" already declared");
 				stErrors++;
 			}
 		for (Node dec : n.declist) visit(dec);
@@ -316,17 +321,17 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		if (print) printNode(n);
 		STentry classEntry = stLookup(n.id1);
 		if (classEntry == null) {
-			System.out.println("Object id " + n.id1 + " at line "+ n.getLine() + " not declared");
+			context.out.println("Object id " + n.id1 + " at line "+ n.getLine() + " not declared");
 			stErrors++;
 		} else {
 			if (!(classEntry.type instanceof RefTypeNode)){
-				System.out.println("Object id " + n.id1 + " at line "+ n.getLine() + " has not a RefTypeNode");
+				context.out.println("Object id " + n.id1 + " at line "+ n.getLine() + " has not a RefTypeNode");
 				stErrors++;
 			} else{
 				// cerco il metodo nella virtual table della classe dell'oggetto
 				STentry methodEntry = classTable.get(((RefTypeNode) classEntry.type).id).get(n.id2);
 				if (methodEntry == null){
-					System.out.println("Method id " + n.id2 + " at line "+ n.getLine() + " not declared");
+					context.out.println("Method id " + n.id2 + " at line "+ n.getLine() + " not declared");
 					stErrors++;
 				}else{
 					n.entry = classEntry;
@@ -349,7 +354,7 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		* */
 		STentry entry = symTable.get(0).get(n.id);
 		if (entry == null || !classTable.containsKey(n.id)) {
-			System.out.println("Class id " + n.id + " at line "+ n.getLine() + " not declared");
+			context.out.println("Class id " + n.id + " at line "+ n.getLine() + " not declared");
 			stErrors++;
 		} else {
 			n.entry = entry;
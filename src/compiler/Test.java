@@ -13,13 +13,15 @@ public class Test {
    			
     	String fileName = "prova.fool";
 
+    	CompilationContext context = new CompilationContext(); // stato della compilazione (label, codice delle funzioni, errori)
+
     	CharStream chars = CharStreams.fromFileName(fileName);
     	FOOLLexer lexer = new FOOLLexer(chars);
     	CommonTokenStream tokens = new CommonTokenStream(lexer);
     	FOOLParser parser = new FOOLParser(tokens);
 
     	System.out.println("Generating ST via lexer and parser.");
-    	ParseTree st = parser.prog();
+    	ParseTree st = TwoStageParser.parse(parser, FOOLParser::prog); // SLL, e LL solo se serve
     	System.out.println("You had "+lexer.lexicalErrors+" lexical errors and "+
     		parser.getNumberOfSyntaxErrors()+" syntax errors.\n");
 
@@ -29,7 +31,7 @@ public class Test {
     	System.out.println("");
 
     	System.out.println("Enriching AST via symbol table.");
-    	SymbolTableASTVisitor symtableVisitor = new SymbolTableASTVisitor(false);
+    	SymbolTableASTVisitor symtableVisitor = new SymbolTableASTVisitor(context, false);
     	symtableVisitor.visit(ast);
     	System.out.println("You had "+symtableVisitor.stErrors+" symbol table errors.\n");
 
@@ -39,7 +41,7 @@ public class Test {
 
     	System.out.println("Checking Types.");
     	try {
-    		TypeCheckEASTVisitor typeCheckVisitor = new TypeCheckEASTVisitor(true);
+    		TypeCheckEASTVisitor typeCheckVisitor = new TypeCheckEASTVisitor(context, true);
     		TypeNode mainType = typeCheckVisitor.visit(ast);
     		System.out.print("Type of main program expression is: ");
     		new PrintEASTVisitor().visit(mainType);
@@ -48,35 +50,35 @@ public class Test {
     	} catch (TypeException e) {
     		System.out.println("Type checking error in main program expression: "+e.text); 
     	}       	
-    	System.out.println("You had "+FOOLlib.typeErrors+" type checking errors.\n");
+    	System.out.println("You had "+context.typeErrors+" type checking errors.\n");
 
-    	int frontEndErrors = lexer.lexicalErrors+parser.getNumberOfSyntaxErrors()+symtableVisitor.stErrors+FOOLlib.typeErrors;
+    	int frontEndErrors = lexer.lexicalErrors+parser.getNumberOfSyntaxErrors()+symtableVisitor.stErrors+context.typeErrors;
 		System.out.println("You had a total of "+frontEndErrors+" front-end errors.\n");
 		
 		if ( frontEndErrors > 0) System.exit(1);   
 
+    	System.out.println("Optimizing AST.");
+    	ast = new InliningASTVisitor().visit(ast); // sostituisce le chiamate a funzioni e metodi piccoli con il loro corpo
+    	ast = new ConstantFoldingASTVisitor().visit(ast); // calcola le espressioni costanti e propaga le var costanti
+    	ast = new DeadCodeEliminationASTVisitor().visit(ast); // toglie le dichiarazioni mai usate
+    	System.out.println("");
+
     	System.out.println("Generating code.");
-    	String code = new CodeGenerationASTVisitor(true).visit(ast);
-    	BufferedWriter out = new BufferedWriter(new FileWriter(fileName+".asm")); 
-    	out.write(code);
+    	Code code = new CodeGenerationASTVisitor(context, true).visit(ast);
+    	code = SuperInstructions.fuse(code); // sostituisce le sequenze ricorrenti con superistruzioni
+    	BufferedWriter out = new BufferedWriter(new FileWriter(fileName+".asm")); // disassemblato, solo per debug
+    	code.write(out);
     	out.close(); 
     	System.out.println("");
 
     	System.out.println("Assembling generated code.");
-    	CharStream charsASM = CharStreams.fromFileName(fileName+".asm");
-    	SVMLexer lexerASM = new SVMLexer(charsASM);
-    	CommonTokenStream tokensASM = new CommonTokenStream(lexerASM);
-    	SVMParser parserASM = new SVMParser(tokensASM);
-
-    	parserASM.assembly();
-
-    	// needed only for debug
-    	System.out.println("You had: "+lexerASM.lexicalErrors+" lexical errors and "+parserASM.getNumberOfSyntaxErrors()+" syntax errors.\n");
-    	if (lexerASM.lexicalErrors+parserASM.getNumberOfSyntaxErrors()>0) System.exit(1);
+    	ObjectFile program = code.assemble(); // risolve le label senza riassemblare il testo
+    	program.write(Paths.get(fileName+".svmo")); // eseguibile poi con compiler.Run senza ricompilare
+    	System.out.println("");
 
     	System.out.println("Running generated code via Stack Virtual Machine.");
-		//ExecuteVM vm = new ExecuteVM(parserASM.code,parserASM.sourceMap,Files.readAllLines(Paths.get(fileName+".asm")));
-    	ExecuteVM vm = new ExecuteVM(parserASM.code);
+		//ExecuteVM vm = new ExecuteVM(program.code,program.sourceMap,Files.readAllLines(Paths.get(fileName+".asm")));
+    	ExecuteVM vm = new ExecuteVM(program.code);
     	vm.cpu();
 
     }
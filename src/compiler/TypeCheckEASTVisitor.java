@@ -13,8 +13,25 @@ import static compiler.TypeRels.*;
 //visitSTentry(s) ritorna, per una STentry s, il tipo contenuto al suo interno
 public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException> {
 
-	TypeCheckEASTVisitor() { super(true); } // enables incomplete tree exceptions 
-	TypeCheckEASTVisitor(boolean debug) { super(true,debug); } // enables print for debugging
+	private final CompilationContext context;
+
+	TypeCheckEASTVisitor(CompilationContext context) { super(true); this.context = context; } // enables incomplete tree exceptions 
+	TypeCheckEASTVisitor(CompilationContext context, boolean debug) { super(true,debug); this.context = context; } // enables print for debugging
+
+	// errore di tipo, contato negli errori della compilazione
+	private TypeException typeError(String text, int line) {
+		context.typeErrors++;
+		return new TypeException(text, line);
+	}
+
+	// il tipo calcolato resta nel nodo dell'espressione (la generazione del codice lo usa per
+	// sapere quali valori sullo stack sono riferimenti)
+	@Override
+	public TypeNode visit(Visitable v, String mark) throws TypeException {
+		TypeNode type = super.visit(v, mark);
+		if (type != null && v instanceof Node) ((Node) v).setExpType(type);
+		return type;
+	}
 
 	//checks that a type object is visitable (not incomplete) 
 	private TypeNode ckvisit(TypeNode t) throws TypeException {
@@ -30,7 +47,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 				visit(dec);
 			} catch (IncomplException e) { 
 			} catch (TypeException e) {
-				System.out.println("Type checking error in a declaration: " + e.text);
+				context.out.println("Type checking error in a declaration: " + e.text);
 			}
 		return visit(n.exp);
 	}
@@ -49,10 +66,10 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 				visit(dec);
 			} catch (IncomplException e) { 
 			} catch (TypeException e) {
-				System.out.println("Type checking error in a declaration: " + e.text);
+				context.out.println("Type checking error in a declaration: " + e.text);
 			}
 		if ( !isSubtype(visit(n.exp),ckvisit(n.retType)) ) 
-			throw new TypeException("Wrong return type for function " + n.id,n.getLine());
+			throw typeError("Wrong return type for function " + n.id,n.getLine());
 		return null;
 	}
 
@@ -60,7 +77,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 	public TypeNode visitNode(VarNode n) throws TypeException {
 		if (print) printNode(n,n.id);
 		if ( !isSubtype(visit(n.exp),ckvisit(n.getType())) )
-			throw new TypeException("Incompatible value for variable " + n.id,n.getLine());
+			throw typeError("Incompatible value for variable " + n.id,n.getLine());
 		return null;
 	}
 
@@ -74,12 +91,12 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 	public TypeNode visitNode(IfNode n) throws TypeException {
 		if (print) printNode(n);
 		if ( !(isSubtype(visit(n.cond), new BoolTypeNode())) )
-			throw new TypeException("Non boolean condition in if",n.getLine());
+			throw typeError("Non boolean condition in if",n.getLine());
 		TypeNode t = visit(n.th);
 		TypeNode e = visit(n.el);
 		if (isSubtype(t, e)) return e;
 		if (isSubtype(e, t)) return t;
-		throw new TypeException("Incompatible types in then-else branches",n.getLine());
+		throw typeError("Incompatible types in then-else branches",n.getLine());
 	}
 
 	@Override
@@ -88,7 +105,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		TypeNode l = visit(n.left);
 		TypeNode r = visit(n.right);
 		if ( !(isSubtype(l, r) || isSubtype(r, l)) )
-			throw new TypeException("Incompatible types in equal",n.getLine());
+			throw typeError("Incompatible types in equal",n.getLine());
 		return new BoolTypeNode();
 	}
 
@@ -97,7 +114,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		if (print) printNode(n);
 		if ( !(isSubtype(visit(n.left), new IntTypeNode())
 				&& isSubtype(visit(n.right), new IntTypeNode())) )
-			throw new TypeException("Non integers in multiplication",n.getLine());
+			throw typeError("Non integers in multiplication",n.getLine());
 		return new IntTypeNode();
 	}
 
@@ -106,7 +123,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		if (print) printNode(n);
 		if ( !(isSubtype(visit(n.left), new IntTypeNode())
 				&& isSubtype(visit(n.right), new IntTypeNode())) )
-			throw new TypeException("Non integers in sum",n.getLine());
+			throw typeError("Non integers in sum",n.getLine());
 		return new IntTypeNode();
 	}
 
@@ -117,17 +134,17 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		if (print) printNode(n,n.id);
 		TypeNode t = visit(n.entry);
 		if ( !(t instanceof ArrowTypeNode) && !(t instanceof MethodTypeNode) )
-			throw new TypeException("Invocation of a non-function "+n.id,n.getLine());
+			throw typeError("Invocation of a non-function "+n.id,n.getLine());
 
 		ArrowTypeNode at;
 		if (t instanceof MethodTypeNode) at = ((MethodTypeNode) t).fun;
 		else at = (ArrowTypeNode) t;
 
 		if ( !(at.parlist.size() == n.arglist.size()) )
-			throw new TypeException("Wrong number of parameters in the invocation of "+n.id,n.getLine());
+			throw typeError("Wrong number of parameters in the invocation of "+n.id,n.getLine());
 		for (int i = 0; i < n.arglist.size(); i++)
 			if ( !(isSubtype(visit(n.arglist.get(i)),at.parlist.get(i))) )
-				throw new TypeException("Wrong type for "+(i+1)+"-th parameter in the invocation of "+n.id,n.getLine());
+				throw typeError("Wrong type for "+(i+1)+"-th parameter in the invocation of "+n.id,n.getLine());
 		return at.ret;
 	}
 
@@ -136,7 +153,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		if (print) printNode(n,n.id);
 		TypeNode t = visit(n.entry);
 		if (t instanceof ArrowTypeNode || t instanceof MethodTypeNode || t instanceof ClassTypeNode)
-			throw new TypeException("Wrong usage of identifier " + n.id,n.getLine());
+			throw typeError("Wrong usage of identifier " + n.id,n.getLine());
 		return t;
 	}
 
@@ -188,7 +205,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		TypeNode l = visit(n.left);
 		TypeNode r = visit(n.right);
 		if ( !(isSubtype(l, r) || isSubtype(r, l)) )
-			throw new TypeException("Incompatible types in greater equal",n.getLine());
+			throw typeError("Incompatible types in greater equal",n.getLine());
 		return new BoolTypeNode();
 	}
 
@@ -198,7 +215,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		TypeNode l = visit(n.left);
 		TypeNode r = visit(n.right);
 		if ( !(isSubtype(l, r) || isSubtype(r, l)) )
-			throw new TypeException("Incompatible types in less equal",n.getLine());
+			throw typeError("Incompatible types in less equal",n.getLine());
 		return new BoolTypeNode();
 	}
 
@@ -206,7 +223,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 	public TypeNode visitNode(NotNode n) throws TypeException {
 		if (print) printNode(n);
 		if ( !isSubtype(visit(n.exp), new BoolTypeNode()) )
-			throw new TypeException("Non boolean in not",n.getLine());
+			throw typeError("Non boolean in not",n.getLine());
 		return new BoolTypeNode();
 	}
 
@@ -215,7 +232,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		if (print) printNode(n);
 		if ( !(isSubtype(visit(n.left), new IntTypeNode())
 				&& isSubtype(visit(n.right), new IntTypeNode())) )
-			throw new TypeException("Non integers in minus",n.getLine());
+			throw typeError("Non integers in minus",n.getLine());
 		return new IntTypeNode();
 	}
 
@@ -224,7 +241,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		if (print) printNode(n);
 		if ( !(isSubtype(visit(n.left), new BoolTypeNode())
 				&& isSubtype(visit(n.right), new BoolTypeNode())) )
-			throw new TypeException("Non booleans in or",n.getLine());
+			throw typeError("Non booleans in or",n.getLine());
 		return new BoolTypeNode();
 	}
 
@@ -233,7 +250,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		if (print) printNode(n);
 		if ( !(isSubtype(visit(n.left), new IntTypeNode())
 				&& isSubtype(visit(n.right), new IntTypeNode())) )
-			throw new TypeException("Non integers in div",n.getLine());
+			throw typeError("Non integers in div",n.getLine());
 		return new IntTypeNode();
 	}
 
@@ -242,7 +259,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		if (print) printNode(n);
 		if ( !(isSubtype(visit(n.left), new BoolTypeNode())
 				&& isSubtype(visit(n.right), new BoolTypeNode())) )
-			throw new TypeException("Non booleans in and",n.getLine());
+			throw typeError("Non booleans in and",n.getLine());
 		return new BoolTypeNode();
 	}
 
@@ -256,7 +273,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 				visit(method);
 			} catch (IncomplException e) {
 			} catch (TypeException e) {
-				System.out.println("Type checking error in a declaration: " + e.text);
+				context.out.println("Type checking error in a declaration: " + e.text);
 			}
 		return null;
 	}
@@ -269,10 +286,10 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 				visit(dec);
 			} catch (IncomplException e) {
 			} catch (TypeException e) {
-				System.out.println("Type checking error in a declaration: " + e.text);
+				context.out.println("Type checking error in a declaration: " + e.text);
 			}
 		if ( !isSubtype(visit(n.exp),ckvisit(n.retType)) )
-			throw new TypeException("Wrong return type for method " + n.id,n.getLine());
+			throw typeError("Wrong return type for method " + n.id,n.getLine());
 		return null;
 	}
 
@@ -288,10 +305,10 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 			at = ((MethodTypeNode) n.methodEntry.type).fun;
 		}
 		if ( !(at.parlist.size() == n.arglist.size()) )
-			throw new TypeException("Wrong number of parameters in the invocation of "+n.id2,n.getLine());
+			throw typeError("Wrong number of parameters in the invocation of "+n.id2,n.getLine());
 		for (int i = 0; i < n.arglist.size(); i++)
 			if ( !(isSubtype(visit(n.arglist.get(i)),at.parlist.get(i))) )
-				throw new TypeException("Wrong type for "+(i+1)+"-th parameter in the invocation of "+n.id2,n.getLine());
+				throw typeError("Wrong type for "+(i+1)+"-th parameter in the invocation of "+n.id2,n.getLine());
 		return at.ret;
 	}
 
@@ -305,11 +322,11 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		    */
 		ClassTypeNode classType = (ClassTypeNode) n.entry.type;
 		if (classType.allFields.size() != n.arglist.size()){
-			throw new TypeException("Wrong number of parameters in object creation", n.getLine());
+			throw typeError("Wrong number of parameters in object creation", n.getLine());
 		}
 		for (int i = 0; i < n.arglist.size(); i++){
 			if (!isSubtype(visit(n.arglist.get(i)), classType.allFields.get(i))){
-				throw new TypeException("Wrong number of parameters in object creation "+n.id,n.getLine());
+				throw typeError("Wrong number of parameters in object creation "+n.id,n.getLine());
 			}
 		}
 		return new RefTypeNode(n.id);
@@ -0,0 +1,100 @@
+package compiler;
+
+import java.io.*;
+import java.util.*;
+import svm.*;
+
+/*
+ * Confronta i tempi di esecuzione dei diversi loop di esecuzione della SVM
+ * (switch sul bytecode ANTLR, codice pre-decodificato, caching della cima dello
+ * stack e traduzione JIT, anche con il garbage collector conservativo o con quello
+ * generazionale attivo) su prova.fool e sui programmi ricorsivi in bench/.
+ * Uso: java compiler.VMBenchmark [ripetizioni] [file.fool ...]
+ */
+public class VMBenchmark {
+
+	private static final String[] DEFAULT_FILES = {"prova.fool", "bench/fib.fool", "bench/ackermann.fool", "bench/nested.fool", "bench/quicksort.fool", "bench/garbage.fool", "bench/tailrec.fool", "bench/temporaries.fool", "bench/nullguard.fool"};
+	// programmi che stampano anche indirizzi di oggetti (diversi con ogni organizzazione dello
+	// heap): per questi si confronta solo l'ultima riga, il risultato
+	private static final Set<String> PRINTS_ADDRESSES = Set.of("bench/temporaries.fool");
+
+	private interface Engine {
+		void run(ExecuteVM vm);
+	}
+
+	private static final String[] ENGINE_NAMES = {"switch", "decoded", "cached", "jit", "switch+gc", "jit+gc", "switch+gen", "cached+gen", "jit+gen"};
+	private static final Engine[] ENGINES = {ExecuteVM::cpu, ExecuteVM::cpuDecoded, ExecuteVM::cpuCached, ExecuteVM::cpuJIT, ExecuteVM::cpu, ExecuteVM::cpuJIT, ExecuteVM::cpu, ExecuteVM::cpuCached, ExecuteVM::cpuJIT};
+	private static final boolean[] COLLECT_GARBAGE = {false, false, false, false, true, true, false, false, false};
+	private static final boolean[] GENERATIONAL = {false, false, false, false, false, false, true, true, true};
+
+	public static void main(String[] args) throws Exception {
+		int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		String[] files = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : DEFAULT_FILES;
+
+		PrintStream console = System.out;
+		for (String fileName : files) {
+			ObjectFile code = FOOLCompiler.compile(fileName);
+			console.println(fileName);
+			String expected = null;
+			for (int e = 0; e < ENGINES.length; e++) {
+				// l'output deve essere lo stesso per ogni modalita' di esecuzione
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				ExecuteVM vm = runCapturingOutput(e, code, buffer);
+				String output = buffer.toString();
+				if (PRINTS_ADDRESSES.contains(fileName)) output = lastLine(output);
+				if (expected == null) expected = output;
+				else if (!expected.equals(output))
+					throw new IllegalStateException("Output of engine "+ENGINE_NAMES[e]+" differs on "+fileName);
+				for (int r = 0; r < repetitions; r++) timeRun(e, code); // riscaldamento del JIT
+				long best = Long.MAX_VALUE, total = 0;
+				for (int r = 0; r < repetitions; r++) {
+					long time = timeRun(e, code);
+					best = Math.min(best, time);
+					total += time;
+				}
+				console.printf("  %-10s best %8.3f ms   avg %8.3f ms%n", ENGINE_NAMES[e], best/1e6, total/1e6/repetitions);
+				// statistiche dell'esecuzione di controllo, sotto la riga dei tempi dello stesso motore
+				if (vm.getGCStats() != null) console.printf("  %-10s %s%n", ENGINE_NAMES[e], vm.getGCStats());
+				// le inline cache si comportano allo stesso modo con ogni modalita' di esecuzione
+				if (e == 0) console.printf("  %-10s %s%n  %-10s Stack: %d cells%n", ENGINE_NAMES[e], vm.getInlineCacheStats(), ENGINE_NAMES[e], vm.getStackCells());
+			}
+		}
+	}
+
+	private static String lastLine(String output) {
+		String[] lines = output.split("\n");
+		return lines[lines.length - 1];
+	}
+
+	private static ExecuteVM newVM(int engine, ObjectFile code) {
+		if (GENERATIONAL[engine])
+			return new ExecuteVM(code.code, ExecuteVM.DEFAULT_STACKSIZE, ExecuteVM.DEFAULT_HEAPSIZE, code.stackMaps);
+		return new ExecuteVM(code.code, ExecuteVM.DEFAULT_STACKSIZE, ExecuteVM.DEFAULT_HEAPSIZE, COLLECT_GARBAGE[engine]);
+	}
+
+	// esegue code con il motore engine scrivendo l'output in buffer; restituisce la VM per le statistiche
+	private static ExecuteVM runCapturingOutput(int engine, ObjectFile code, ByteArrayOutputStream buffer) {
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(buffer));
+		ExecuteVM vm = newVM(engine, code);
+		try {
+			ENGINES[engine].run(vm);
+		} finally {
+			System.setOut(console);
+		}
+		return vm;
+	}
+
+	private static long timeRun(int engine, ObjectFile code) {
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			ExecuteVM vm = newVM(engine, code);
+			long start = System.nanoTime();
+			ENGINES[engine].run(vm);
+			return System.nanoTime() - start;
+		} finally {
+			System.setOut(console);
+		}
+	}
+}
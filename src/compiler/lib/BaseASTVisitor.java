@@ -85,6 +85,7 @@ public class BaseASTVisitor<S,E extends Exception> {
 	public S visitNode(MethodNode n) throws E {throw new UnimplException();}
 	// chiamata al metodo di una classe
 	public S visitNode(ClassCallNode n) throws E {throw new UnimplException();}
+	public S visitNode(FieldAccessNode n) throws E {throw new UnimplException();}
 	public S visitNode(NewNode n) throws E {throw new UnimplException();}
 	public S visitNode(EmptyNode n) throws E {throw new UnimplException();}
 
@@ -0,0 +1,62 @@
+package compiler.lib;
+
+import java.io.PrintStream;
+import java.util.*;
+import svm.Code;
+
+/*
+ * Stato di una singola compilazione, passato ai visitor che ne hanno bisogno
+ * (SymbolTableASTVisitor, TypeCheckEASTVisitor, CodeGenerationASTVisitor) al posto dei
+ * campi statici di FOOLlib: compilazioni diverse, anche in thread diversi (vedi
+ * FOOLCompiler.compileAll), non condividono contatori, label e codice delle funzioni.
+ */
+public class CompilationContext {
+
+	// messaggi di errore della compilazione
+	public final PrintStream out;
+
+	public int typeErrors = 0;
+
+	public CompilationContext() {
+		this(System.out);
+	}
+
+	public CompilationContext(PrintStream out) {
+		this(out, "");
+	}
+
+	// le label generate iniziano con labelPrefix (usato per il codice delle dichiarazioni
+	// salvato nella CompilationCache, che non deve scontrarsi con le label di altre compilazioni)
+	public CompilationContext(PrintStream out, String labelPrefix) {
+		this.out = out;
+		this.labelPrefix = labelPrefix;
+	}
+
+	private final String labelPrefix;
+
+	private int labCount = 0;
+
+	public String freshLabel() {
+		return labelPrefix+"label"+(labCount++);
+	}
+
+	private int funlabCount = 0;
+
+	public String freshFunLabel() {
+		return labelPrefix+"function"+(funlabCount++);
+	}
+
+	// codice delle funzioni e dei metodi, un segmento per funzione (concatenati solo da getCode)
+	private List<Code> funCode = new ArrayList<>();
+
+	public void putCode(Code c) {
+		funCode.add(c);
+	}
+
+	// restituisce il codice delle funzioni accumulato e lo svuota
+	public Code getCode() {
+		Code code = Code.join(funCode.toArray(new Code[0]));
+		funCode = new ArrayList<>();
+		return code;
+	}
+}
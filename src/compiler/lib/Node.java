@@ -8,6 +8,12 @@ public abstract class Node implements Visitable {
 
 	public int getLine() { return line; }
 
+	TypeNode expType;  // type computed by type checking, null if unset
+
+	public void setExpType(TypeNode t) { expType=t; }
+
+	public TypeNode getExpType() { return expType; }
+
 }
 
 	  
\ No newline at end of file
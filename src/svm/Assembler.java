@@ -0,0 +1,412 @@
+package svm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * ASSEMBLER DELLA SVM SCRITTO A MANO, ALTERNATIVO A SVMLexer/SVMParser: RICONOSCE LO
+ * STESSO LINGUAGGIO DI SVM.g4 E PRODUCE LO STESSO code[] (CON GLI STESSI CODICI OPERATIVI,
+ * I TIPI DEI TOKEN DI SVMParser), MA IN UN SOLO PASSO SUI BYTE DEL SORGENTE, SENZA
+ * COSTRUIRE TOKEN NE' ALBERO SINTATTICO:
+ * - I TOKEN SONO RICONOSCIUTI SUL POSTO (INIZIO, FINE E RIGA NEI CAMPI tokenStart,
+ *   tokenEnd, tokenLine), COME LE PAROLE CHIAVE, CONFRONTANDO I BYTE;
+ * - LE LABEL SONO NUMERATE CON UNA TABELLA HASH AD INDIRIZZAMENTO APERTO SUI BYTE DEL
+ *   NOME (labelTable), SENZA CREARE STRINGHE: PER OGNI NUMERO labelAddress CONTIENE
+ *   L'INDIRIZZO DI DEFINIZIONE;
+ * - I RIFERIMENTI ALLE LABEL SONO RISOLTI ALLA FINE (BACKPATCHING) DALLE COPPIE
+ *   (INDIRIZZO, NUMERO DELLA LABEL) IN patchAddress E patchLabel;
+ * - code E sourceMap CRESCONO RADDOPPIANDO, QUINDI NON C'E' IL LIMITE DI CODESIZE CELLE.
+ * GLI ARRAY FINALI HANNO ALMENO ExecuteVM.CODESIZE CELLE, COME QUELLI DI SVMParser.
+ */
+public final class Assembler {
+
+    // PAROLE CHIAVE DI SVM.g4 E RELATIVI TIPI DI TOKEN (= CODICI OPERATIVI)
+    private static final String[] KEYWORDS = {"push", "pop", "add", "sub", "mult", "div", "sw", "lw",
+        "b", "beq", "bleq", "js", "lra", "sra", "ltm", "stm", "lfp", "sfp", "cfp", "lhp", "shp",
+        "print", "halt", "alloc", "gcmap", "fname", "slide", "jump", "lloc", "lup", "dup", "bhp", "dispatch",
+        "enter", "leave", "ldisp", "llev", "eq", "le", "lt", "not", "and", "or"};
+    private static final int[] KEYWORD_TYPES = {SVMParser.PUSH, SVMParser.POP, SVMParser.ADD, SVMParser.SUB,
+        SVMParser.MULT, SVMParser.DIV, SVMParser.STOREW, SVMParser.LOADW, SVMParser.BRANCH, SVMParser.BRANCHEQ,
+        SVMParser.BRANCHLESSEQ, SVMParser.JS, SVMParser.LOADRA, SVMParser.STORERA, SVMParser.LOADTM,
+        SVMParser.STORETM, SVMParser.LOADFP, SVMParser.STOREFP, SVMParser.COPYFP, SVMParser.LOADHP,
+        SVMParser.STOREHP, SVMParser.PRINT, SVMParser.HALT, SVMParser.ALLOC, SVMParser.GCMAP, SVMParser.FNAME,
+        SVMParser.SLIDE, SVMParser.JUMP, SVMParser.LOADLOCAL, SVMParser.LOADUP, SVMParser.DUPTOP,
+        SVMParser.BUMPHP, SVMParser.DISPATCH, SVMParser.ENTER, SVMParser.LEAVE, SVMParser.LOADDISPLAY,
+        SVMParser.LOADLEVEL, SVMParser.EQUAL, SVMParser.LESSEQ, SVMParser.LESS, SVMParser.NOT, SVMParser.AND,
+        SVMParser.OR};
+    private static final byte[][] KEYWORD_BYTES = new byte[KEYWORDS.length][];
+    static {
+        for (int k = 0; k < KEYWORDS.length; k++) KEYWORD_BYTES[k] = KEYWORDS[k].getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final int EOF = -1;
+
+    public int[] code = new int[ExecuteVM.CODESIZE];
+    // RIGA DEL SORGENTE ASSEMBLY (DA 0) DI OGNI CELLA DI code, COME SVMParser.sourceMap
+    public int[] sourceMap = new int[ExecuteVM.CODESIZE];
+    // DIRETTIVE gcmap E fname, COME IN SVMParser
+    public final Map<Integer,int[]> stackMaps = new HashMap<>();
+    public final Map<Integer,String> functionNames = new HashMap<>();
+    public int lexicalErrors = 0;
+    public int syntaxErrors = 0;
+
+    private final byte[] source;
+    private int i = 0;
+
+    // TOKEN CORRENTE
+    private int pos = 0, line = 1, lineStart = 0;
+    private int tokenType, tokenStart, tokenEnd, tokenLine, tokenColumn;
+
+    // LABEL: TABELLA HASH (NUMERO+1, 0 = VUOTO) E, PER NUMERO, POSIZIONE DEL NOME NEL SORGENTE E INDIRIZZO
+    private int[] labelTable = new int[1024];
+    private int labels = 0;
+    private int[] labelStart = new int[256], labelLength = new int[256], labelAddress = new int[256];
+    // RIFERIMENTI ALLE LABEL DA RISOLVERE: code[patchAddress[k]] = labelAddress[patchLabel[k]]
+    private int[] patchAddress = new int[256], patchLabel = new int[256];
+    private int patches = 0;
+    // OPERANDI DELLA DIRETTIVA gcmap IN CORSO
+    private int[] operands = new int[16];
+
+    private Assembler(byte[] source) {
+        this.source = source;
+    }
+
+    public static Assembler assemble(String asm) {
+        return assemble(asm.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Assembler assemble(Path file) throws IOException {
+        return assemble(Files.readAllBytes(file));
+    }
+
+    public static Assembler assemble(byte[] asm) {
+        Assembler assembler = new Assembler(asm);
+        assembler.assembly();
+        return assembler;
+    }
+
+    // NUMERO DI CELLE DI code OCCUPATE DAL PROGRAMMA
+    public int codeLength() {
+        return i;
+    }
+
+    public int getNumberOfSyntaxErrors() {
+        return syntaxErrors;
+    }
+
+    // NOME DI OGNI LABEL DEFINITA, PER INDIRIZZO (UNO SOLO SE CE NE SONO PIU' D'UNO)
+    public Map<Integer,String> labelNames() {
+        Map<Integer,String> names = new HashMap<>();
+        for (int l = 0; l < labels; l++)
+            if (labelAddress[l] >= 0) names.putIfAbsent(labelAddress[l], labelName(l));
+        return names;
+    }
+
+    /*------------------------------------------------------------------
+     * PARSER: UNA ISTRUZIONE ALLA VOLTA, COME LA REGOLA instruction DI SVM.g4
+     *------------------------------------------------------------------*/
+
+    private void assembly() {
+        next();
+        while (tokenType != EOF) instruction();
+        // SOSTITUISCE IL RIFERIMENTO AD OGNI LABEL CON L'INDIRIZZO IN CUI E' SALVATA QUELLA LABEL
+        for (int k = 0; k < patches; k++) {
+            int address = labelAddress[patchLabel[k]];
+            if (address < 0) {
+                System.err.println("undefined label " + labelName(patchLabel[k]));
+                syntaxErrors++;
+            }
+            code[patchAddress[k]] = address;
+        }
+        if (code.length > Math.max(i, ExecuteVM.CODESIZE)) {
+            code = Arrays.copyOf(code, Math.max(i, ExecuteVM.CODESIZE));
+            sourceMap = Arrays.copyOf(sourceMap, code.length);
+        }
+    }
+
+    private void instruction() {
+        int type = tokenType, start = tokenStart, end = tokenEnd, first = i, sourceLine = tokenLine - 1;
+        next();
+        switch (type) {
+            case SVMParser.LABEL: // DEFINIZIONE DI LABEL
+                if (tokenType != SVMParser.COL) {
+                    syntaxError("missing ':' after label");
+                    return;
+                }
+                next();
+                int label = label(start, end); // label() PUO' RIALLOCARE labelAddress
+                labelAddress[label] = i;
+                return;
+            case SVMParser.PUSH: // PUSH DI UN INTERO O DELL'INDIRIZZO PUNTATO DA UNA LABEL
+                if (tokenType == SVMParser.LABEL) {
+                    emit(SVMParser.PUSH);
+                    emitLabel(label(tokenStart, tokenEnd));
+                    next();
+                } else {
+                    emit(SVMParser.PUSH);
+                    emit(integer());
+                }
+                break;
+            case SVMParser.BRANCH:
+            case SVMParser.BRANCHEQ:
+            case SVMParser.BRANCHLESSEQ:
+                if (tokenType != SVMParser.LABEL) {
+                    syntaxError("missing label");
+                    return;
+                }
+                emit(type);
+                emitLabel(label(tokenStart, tokenEnd));
+                next();
+                break;
+            case SVMParser.ALLOC:
+            case SVMParser.LOADLOCAL:
+            case SVMParser.DISPATCH:
+            case SVMParser.ENTER:
+            case SVMParser.LEAVE:
+            case SVMParser.LOADDISPLAY:
+                emit(type);
+                emit(integer());
+                break;
+            case SVMParser.SLIDE:
+            case SVMParser.LOADUP:
+            case SVMParser.LOADLEVEL:
+                emit(type);
+                emit(integer());
+                emit(integer());
+                break;
+            case SVMParser.GCMAP: { // NON GENERA CODICE: MAPPA DEI RIFERIMENTI NELL'AR CORRENTE ALL'INDIRIZZO i
+                int n = 0;
+                operands[n++] = integer();
+                while (tokenType == SVMParser.INTEGER) {
+                    if (n == operands.length) operands = Arrays.copyOf(operands, 2 * n);
+                    operands[n++] = integer();
+                }
+                stackMaps.put(i, Arrays.copyOf(operands, n));
+                return;
+            }
+            case SVMParser.FNAME: // NON GENERA CODICE: NOME FOOL DELLA FUNZIONE CHE INIZIA ALL'INDIRIZZO i
+                if (tokenType != SVMParser.STRING) {
+                    syntaxError("missing function name");
+                    return;
+                }
+                functionNames.put(i, new String(source, tokenStart + 1, tokenEnd - tokenStart - 2, StandardCharsets.UTF_8));
+                next();
+                return;
+            case SVMParser.POP: case SVMParser.ADD: case SVMParser.SUB: case SVMParser.MULT: case SVMParser.DIV:
+            case SVMParser.STOREW: case SVMParser.LOADW: case SVMParser.JS: case SVMParser.LOADRA:
+            case SVMParser.STORERA: case SVMParser.LOADTM: case SVMParser.STORETM: case SVMParser.LOADFP:
+            case SVMParser.STOREFP: case SVMParser.COPYFP: case SVMParser.LOADHP: case SVMParser.STOREHP:
+            case SVMParser.PRINT: case SVMParser.HALT: case SVMParser.JUMP: case SVMParser.DUPTOP:
+            case SVMParser.BUMPHP: case SVMParser.EQUAL: case SVMParser.LESSEQ: case SVMParser.LESS:
+            case SVMParser.NOT: case SVMParser.AND: case SVMParser.OR:
+                emit(type);
+                break;
+            default: // TOKEN CHE NON PUO' INIZIARE UN'ISTRUZIONE: VIENE SCARTATO
+                System.err.println("line " + (sourceLine + 1) + ": extraneous input '"
+                    + new String(source, start, end - start, StandardCharsets.UTF_8) + "'");
+                syntaxErrors++;
+                return;
+        }
+        for (int k = first; k < i; k++) sourceMap[k] = sourceLine;
+    }
+
+    private int integer() {
+        if (tokenType != SVMParser.INTEGER) {
+            syntaxError("missing INTEGER");
+            return 0;
+        }
+        long value = 0;
+        boolean negative = source[tokenStart] == '-';
+        for (int k = negative ? tokenStart + 1 : tokenStart; k < tokenEnd; k++) {
+            value = 10 * value + (source[k] - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) break;
+        }
+        if (negative) value = -value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            syntaxError("integer out of range");
+            value = 0;
+        }
+        next();
+        return (int) value;
+    }
+
+    private void emit(int value) {
+        if (i == code.length) {
+            code = Arrays.copyOf(code, 2 * i);
+            sourceMap = Arrays.copyOf(sourceMap, 2 * i);
+        }
+        code[i++] = value;
+    }
+
+    private void emitLabel(int label) {
+        if (patches == patchAddress.length) {
+            patchAddress = Arrays.copyOf(patchAddress, 2 * patches);
+            patchLabel = Arrays.copyOf(patchLabel, 2 * patches);
+        }
+        patchAddress[patches] = i;
+        patchLabel[patches++] = label;
+        emit(0);
+    }
+
+    private void syntaxError(String message) {
+        System.err.println("line " + tokenLine + ":" + tokenColumn + " " + message + " at '"
+            + (tokenType == EOF ? "<EOF>" : new String(source, tokenStart, tokenEnd - tokenStart, StandardCharsets.UTF_8)) + "'");
+        syntaxErrors++;
+    }
+
+    /*------------------------------------------------------------------
+     * LABEL
+     *------------------------------------------------------------------*/
+
+    // NUMERO DELLA LABEL CON IL NOME source[start..end), AGGIUNTA SE NON ANCORA VISTA
+    private int label(int start, int end) {
+        int hash = 0;
+        for (int k = start; k < end; k++) hash = 31 * hash + source[k];
+        int mask = labelTable.length - 1;
+        for (int h = hash & mask; ; h = (h + 1) & mask) {
+            int entry = labelTable[h] - 1;
+            if (entry < 0) break;
+            if (Arrays.equals(source, labelStart[entry], labelStart[entry] + labelLength[entry], source, start, end))
+                return entry;
+        }
+        if (labels == labelStart.length) {
+            labelStart = Arrays.copyOf(labelStart, 2 * labels);
+            labelLength = Arrays.copyOf(labelLength, 2 * labels);
+            labelAddress = Arrays.copyOf(labelAddress, 2 * labels);
+        }
+        labelStart[labels] = start;
+        labelLength[labels] = end - start;
+        labelAddress[labels] = -1;
+        if (2 * (labels + 1) > labelTable.length) rehash();
+        insert(labels, hash);
+        return labels++;
+    }
+
+    private void insert(int label, int hash) {
+        int mask = labelTable.length - 1;
+        int h = hash & mask;
+        while (labelTable[h] != 0) h = (h + 1) & mask;
+        labelTable[h] = label + 1;
+    }
+
+    private void rehash() {
+        labelTable = new int[2 * labelTable.length];
+        for (int l = 0; l < labels; l++) {
+            int hash = 0;
+            for (int k = labelStart[l]; k < labelStart[l] + labelLength[l]; k++) hash = 31 * hash + source[k];
+            insert(l, hash);
+        }
+    }
+
+    private String labelName(int label) {
+        return new String(source, labelStart[label], labelLength[label], StandardCharsets.US_ASCII);
+    }
+
+    /*------------------------------------------------------------------
+     * LEXER: COME LE REGOLE LESSICALI DI SVM.g4 (COMMENTI E SPAZI IGNORATI,
+     * CARATTERI NON VALIDI SEGNALATI E SCARTATI)
+     *------------------------------------------------------------------*/
+
+    private void next() {
+        while (pos < source.length) {
+            byte c = source[pos];
+            if (c == '\n') {
+                pos++;
+                line++;
+                lineStart = pos;
+            } else if (c == ' ' || c == '\t' || c == '\r') {
+                pos++;
+            } else if (c == '/' && pos + 1 < source.length && source[pos + 1] == '*' && comment()) {
+                // commento saltato da comment()
+            } else {
+                tokenStart = pos;
+                tokenLine = line;
+                tokenColumn = pos - lineStart;
+                if (isLetter(c)) {
+                    do pos++; while (pos < source.length && (isLetter(source[pos]) || isDigit(source[pos])));
+                    tokenType = keyword(tokenStart, pos);
+                } else if (c == '0') {
+                    pos++;
+                    tokenType = SVMParser.INTEGER;
+                } else if ((c >= '1' && c <= '9') || (c == '-' && pos + 1 < source.length && source[pos + 1] >= '1' && source[pos + 1] <= '9')) {
+                    do pos++; while (pos < source.length && isDigit(source[pos]));
+                    tokenType = SVMParser.INTEGER;
+                } else if (c == ':') {
+                    pos++;
+                    tokenType = SVMParser.COL;
+                } else if (c == '"' && string()) {
+                    tokenType = SVMParser.STRING;
+                } else {
+                    System.out.println("Invalid char: " + (char) c + " at line " + line);
+                    lexicalErrors++;
+                    pos++;
+                    continue;
+                }
+                tokenEnd = pos;
+                return;
+            }
+        }
+        tokenType = EOF;
+        tokenStart = tokenEnd = pos;
+        tokenLine = line;
+        tokenColumn = pos - lineStart;
+    }
+
+    // SALTA IL COMMENTO CHE INIZIA A pos, SE E' CHIUSO (ALTRIMENTI '/' E' UN CARATTERE NON VALIDO)
+    private boolean comment() {
+        int newlines = 0, lastNewline = -1;
+        for (int k = pos + 2; k + 1 < source.length; k++) {
+            if (source[k] == '*' && source[k + 1] == '/') {
+                pos = k + 2;
+                line += newlines;
+                if (lastNewline >= 0) lineStart = lastNewline + 1;
+                return true;
+            }
+            if (source[k] == '\n') {
+                newlines++;
+                lastNewline = k;
+            }
+        }
+        return false;
+    }
+
+    // RICONOSCE LA STRINGA CHE INIZIA A pos, SE E' CHIUSA SULLA STESSA RIGA
+    private boolean string() {
+        for (int k = pos + 1; k < source.length && source[k] != '\n'; k++)
+            if (source[k] == '"') {
+                pos = k + 1;
+                return true;
+            }
+        return false;
+    }
+
+    // MNEMONICO DEL CODICE OPERATIVO opcode (USATO DAL DISASSEMBLATO DI Code)
+    static String mnemonic(int opcode) {
+        for (int k = 0; k < KEYWORD_TYPES.length; k++) if (KEYWORD_TYPES[k] == opcode) return KEYWORDS[k];
+        throw new IllegalArgumentException("Unknown opcode " + opcode);
+    }
+
+    // CODICE OPERATIVO DEL MNEMONICO (INVERSA DI mnemonic)
+    static int opcode(String mnemonic) {
+        for (int k = 0; k < KEYWORDS.length; k++) if (KEYWORDS[k].equals(mnemonic)) return KEYWORD_TYPES[k];
+        throw new IllegalArgumentException("Unknown instruction " + mnemonic);
+    }
+
+    private int keyword(int start, int end) {
+        int length = end - start;
+        for (int k = 0; k < KEYWORD_BYTES.length; k++)
+            if (KEYWORD_BYTES[k].length == length && Arrays.equals(KEYWORD_BYTES[k], 0, length, source, start, end))
+                return KEYWORD_TYPES[k];
+        return SVMParser.LABEL;
+    }
+
+    private static boolean isLetter(byte c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,275 @@
+package svm;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/*
+ * FRAMMENTO DI CODICE DELLA SVM GENERATO DIRETTAMENTE DAL COMPILATORE, SENZA PASSARE DAL
+ * TESTO ASSEMBLY: UNA SEQUENZA DI ISTRUZIONI CON LABEL SIMBOLICHE, COSTRUITA CON I METODI
+ * STATICI CHE HANNO IL NOME DEI MNEMONICI (push(5), lw(), beq("label3"), label("label3")...)
+ * E CONCATENATA CON join.
+ *
+ * UN FRAMMENTO E' UNA ROPE: UNA FOGLIA CON UN SEGMENTO DI ISTRUZIONI OPPURE UNA
+ * CONCATENAZIONE DI ALTRI FRAMMENTI, CHE NON VENGONO COPIATI. join COSTA QUINDI QUANTO IL
+ * NUMERO DEI SUOI ARGOMENTI, E LA GENERAZIONE DEL CODICE (DOVE I FRAMMENTI DEI SOTTOALBERI
+ * VENGONO CONCATENATI AD OGNI LIVELLO E QUELLI DELLE FUNZIONI ACCUMULATI CON putCode) E'
+ * LINEARE NELLA DIMENSIONE DEL PROGRAMMA. LE VISITE DELLA ROPE (forEach) USANO UNO STACK
+ * ESPLICITO, PERCHE' LE CONCATENAZIONI POSSONO ESSERE ANNIDATE QUANTO IL NUMERO DI FUNZIONI.
+ *
+ * assemble RISOLVE LE LABEL E PRODUCE IL PROGRAMMA ESEGUIBILE (LO STESSO code[] CHE SI
+ * OTTIENE ASSEMBLANDO IL TESTO CON Assembler O SVMParser); toString NE E' IL DISASSEMBLATO,
+ * NELLA SINTASSI DI SVM.g4, DA USARE PER DEBUG. write E read SALVANO E RICARICANO UN
+ * FRAMMENTO CON LE LABEL ANCORA SIMBOLICHE (USATI DALLA CACHE DI COMPILAZIONE).
+ */
+public final class Code {
+
+    /*
+     * ISTRUZIONE: CODICE OPERATIVO (IL TIPO DI TOKEN DI SVMParser), LABEL A CUI FA RIFERIMENTO
+     * (push E SALTI) E OPERANDI INTERI. LE DEFINIZIONI DI LABEL E LE DIRETTIVE, CHE NON
+     * GENERANO CODICE, USANO I TIPI DI TOKEN LABEL, GCMAP E FNAME (label E' IL NOME DELLA
+     * LABEL O DELLA FUNZIONE)
+     */
+    static final class Instruction {
+        final int opcode;
+        final String label;
+        final int[] operands;
+
+        Instruction(int opcode, String label, int... operands) {
+            this.opcode = opcode;
+            this.label = label;
+            this.operands = operands;
+        }
+
+        boolean is(int opcode) {
+            return this.opcode == opcode;
+        }
+
+        // NUMERO DI CELLE DI code OCCUPATE
+        int size() {
+            switch (opcode) {
+                case SVMParser.LABEL: case SVMParser.GCMAP: case SVMParser.FNAME: return 0;
+                default: return 1 + (label != null ? 1 : 0) + operands.length;
+            }
+        }
+
+        @Override
+        public String toString() {
+            switch (opcode) {
+                case SVMParser.LABEL: return label + ":";
+                case SVMParser.FNAME: return "fname \"" + label + "\"";
+                default:
+                    StringBuilder text = new StringBuilder(Assembler.mnemonic(opcode));
+                    if (label != null) text.append(' ').append(label);
+                    for (int operand : operands) text.append(' ').append(operand);
+                    return text.toString();
+            }
+        }
+    }
+
+    private final Instruction[] segment; // foglia (null nelle concatenazioni)
+    private final Code[] parts; // concatenazione (null nelle foglie)
+    private final int size; // numero di istruzioni
+
+    Code(List<Instruction> instructions) {
+        this.segment = instructions.toArray(new Instruction[0]);
+        this.parts = null;
+        this.size = segment.length;
+    }
+
+    private Code(Code[] parts, int size) {
+        this.segment = null;
+        this.parts = parts;
+        this.size = size;
+    }
+
+    private static Code of(int opcode, String label, int... operands) {
+        return new Code(List.of(new Instruction(opcode, label, operands)));
+    }
+
+    // CONCATENA I FRAMMENTI IGNORANDO GLI ARGOMENTI null (null SE SONO TUTTI null)
+    public static Code join(Code... parts) {
+        int count = 0, size = 0;
+        for (Code part : parts)
+            if (part != null) {
+                count++;
+                size += part.size;
+            }
+        if (count == 0) return null;
+        if (count == 1) for (Code part : parts) if (part != null) return part;
+        Code[] joined = new Code[count];
+        count = 0;
+        for (Code part : parts) if (part != null) joined[count++] = part;
+        return new Code(joined, size);
+    }
+
+    // NUMERO DI ISTRUZIONI (COMPRESE DEFINIZIONI DI LABEL E DIRETTIVE)
+    public int size() {
+        return size;
+    }
+
+    // VISITA LE ISTRUZIONI IN ORDINE
+    void forEach(Consumer<Instruction> action) {
+        Deque<Code> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            Code code = stack.pop();
+            if (code.segment != null) {
+                for (Instruction instruction : code.segment) action.accept(instruction);
+            } else {
+                for (int k = code.parts.length - 1; k >= 0; k--) stack.push(code.parts[k]);
+            }
+        }
+    }
+
+    // ISTRUZIONI IN UN'UNICA LISTA
+    List<Instruction> instructions() {
+        List<Instruction> instructions = new ArrayList<>(size);
+        forEach(instructions::add);
+        return instructions;
+    }
+
+    public static Code push(int n) { return of(SVMParser.PUSH, null, n); }
+    public static Code push(String label) { return of(SVMParser.PUSH, label); }
+    public static Code pop() { return of(SVMParser.POP, null); }
+    public static Code add() { return of(SVMParser.ADD, null); }
+    public static Code sub() { return of(SVMParser.SUB, null); }
+    public static Code mult() { return of(SVMParser.MULT, null); }
+    public static Code div() { return of(SVMParser.DIV, null); }
+    public static Code sw() { return of(SVMParser.STOREW, null); }
+    public static Code lw() { return of(SVMParser.LOADW, null); }
+    public static Code label(String label) { return of(SVMParser.LABEL, label); }
+    public static Code b(String label) { return of(SVMParser.BRANCH, label); }
+    public static Code beq(String label) { return of(SVMParser.BRANCHEQ, label); }
+    public static Code bleq(String label) { return of(SVMParser.BRANCHLESSEQ, label); }
+    public static Code eq() { return of(SVMParser.EQUAL, null); }
+    public static Code le() { return of(SVMParser.LESSEQ, null); }
+    public static Code lt() { return of(SVMParser.LESS, null); }
+    public static Code not() { return of(SVMParser.NOT, null); }
+    public static Code and() { return of(SVMParser.AND, null); }
+    public static Code or() { return of(SVMParser.OR, null); }
+    public static Code js() { return of(SVMParser.JS, null); }
+    public static Code lra() { return of(SVMParser.LOADRA, null); }
+    public static Code sra() { return of(SVMParser.STORERA, null); }
+    public static Code ltm() { return of(SVMParser.LOADTM, null); }
+    public static Code stm() { return of(SVMParser.STORETM, null); }
+    public static Code lfp() { return of(SVMParser.LOADFP, null); }
+    public static Code sfp() { return of(SVMParser.STOREFP, null); }
+    public static Code cfp() { return of(SVMParser.COPYFP, null); }
+    public static Code lhp() { return of(SVMParser.LOADHP, null); }
+    public static Code shp() { return of(SVMParser.STOREHP, null); }
+    public static Code print() { return of(SVMParser.PRINT, null); }
+    public static Code halt() { return of(SVMParser.HALT, null); }
+    public static Code alloc(int fields) { return of(SVMParser.ALLOC, null, fields); }
+    public static Code slide(int n, int d) { return of(SVMParser.SLIDE, null, n, d); }
+    public static Code jump() { return of(SVMParser.JUMP, null); }
+    public static Code dispatch(int offset) { return of(SVMParser.DISPATCH, null, offset); }
+    public static Code enter(int level) { return of(SVMParser.ENTER, null, level); }
+    public static Code leave(int level) { return of(SVMParser.LEAVE, null, level); }
+    public static Code ldisp(int level) { return of(SVMParser.LOADDISPLAY, null, level); }
+    // DIRETTIVE (VEDI SVM.g4)
+    public static Code fname(String name) { return of(SVMParser.FNAME, name); }
+    public static Code gcmap(int parameters, int... offsets) {
+        int[] map = new int[offsets.length + 1];
+        map[0] = parameters;
+        System.arraycopy(offsets, 0, map, 1, offsets.length);
+        return of(SVMParser.GCMAP, null, map);
+    }
+
+    /*
+     * RISOLVE LE LABEL (PRIMO PASSO: INDIRIZZO DI OGNI DEFINIZIONE) E GENERA IL CODICE CON LE
+     * TABELLE DELLE DIRETTIVE (SECONDO PASSO). LA SOURCE MAP SI RIFERISCE ALLE RIGHE DI toString
+     */
+    public ObjectFile assemble() {
+        List<Instruction> instructions = instructions();
+        Map<String,Integer> labelDef = new HashMap<>();
+        Map<Integer,String> labelNames = new HashMap<>();
+        int length = 0;
+        for (Instruction instruction : instructions) {
+            if (instruction.is(SVMParser.LABEL)) {
+                labelDef.put(instruction.label, length);
+                labelNames.putIfAbsent(length, instruction.label);
+            }
+            length += instruction.size();
+        }
+        int[] code = new int[Math.max(length, ExecuteVM.CODESIZE)];
+        int[] sourceMap = new int[code.length];
+        Map<Integer,int[]> stackMaps = new HashMap<>();
+        Map<Integer,String> functionNames = new HashMap<>();
+        int i = 0, line = 0;
+        for (Instruction instruction : instructions) {
+            switch (instruction.opcode) {
+                case SVMParser.LABEL: break;
+                case SVMParser.GCMAP: stackMaps.put(i, instruction.operands); break;
+                case SVMParser.FNAME: functionNames.put(i, instruction.label); break;
+                default:
+                    int first = i;
+                    code[i++] = instruction.opcode;
+                    if (instruction.label != null) {
+                        Integer address = labelDef.get(instruction.label);
+                        if (address == null) throw new IllegalStateException("Undefined label " + instruction.label);
+                        code[i++] = address;
+                    }
+                    for (int operand : instruction.operands) code[i++] = operand;
+                    Arrays.fill(sourceMap, first, i, line);
+            }
+            line++;
+        }
+        return new ObjectFile(code, length, labelNames, stackMaps, functionNames, sourceMap);
+    }
+
+    // SCRIVE IL DISASSEMBLATO SU out, UNA ISTRUZIONE PER RIGA, SENZA COSTRUIRLO IN MEMORIA
+    public void write(Writer out) throws IOException {
+        try {
+            forEach(instruction -> {
+                try {
+                    out.write(instruction.toString());
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // RILEGGE UN FRAMMENTO SCRITTO CON write
+    public static Code read(BufferedReader in) throws IOException {
+        List<Instruction> instructions = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            if (line.endsWith(":")) {
+                instructions.add(new Instruction(SVMParser.LABEL, line.substring(0, line.length() - 1)));
+            } else if (line.startsWith("fname \"") && line.endsWith("\"")) {
+                instructions.add(new Instruction(SVMParser.FNAME, line.substring(7, line.length() - 1)));
+            } else {
+                String[] words = line.split(" ");
+                try {
+                    int opcode = Assembler.opcode(words[0]);
+                    // L'EVENTUALE LABEL E' IL PRIMO OPERANDO, GLI ALTRI SONO INTERI
+                    int first = words.length > 1 && !words[1].matches("-?\\d+") ? 2 : 1;
+                    int[] operands = new int[words.length - first];
+                    for (int k = 0; k < operands.length; k++) operands[k] = Integer.parseInt(words[first + k]);
+                    instructions.add(new Instruction(opcode, first == 2 ? words[1] : null, operands));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Malformed instruction \"" + line + "\"", e);
+                }
+            }
+        }
+        return new Code(instructions);
+    }
+
+    // DISASSEMBLATO, UNA ISTRUZIONE PER RIGA
+    @Override
+    public String toString() {
+        StringWriter text = new StringWriter();
+        try {
+            write(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return text.toString();
+    }
+}
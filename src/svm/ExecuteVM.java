@@ -1,28 +1,93 @@
 package svm;
+
+import java.lang.invoke.*;
+import java.util.*;
+
 public class ExecuteVM {
     
     public static final int CODESIZE = 10000;
-    public static final int MEMSIZE = 10000;
+    // BASE DELLO STACK NELLO SPAZIO DEGLI INDIRIZZI DELLA SVM (VEDI Memory): IL FRAME GLOBALE
+    // E' SEMPRE ALL'INDIRIZZO STACKBASE, ANCHE QUANDO I SEGMENTI DI MEMORIA VENGONO ALLARGATI
+    public static final int STACKBASE = Memory.STACKBASE;
+    // LIMITI DI DEFAULT (IN CELLE) DI STACK E HEAP
+    public static final int DEFAULT_STACKSIZE = 1 << 24;
+    public static final int DEFAULT_HEAPSIZE = 1 << 28;
     
     private int[] code;
-    private int[] memory = new int[MEMSIZE];
+    private final Memory memory;
+    // GARBAGE COLLECTOR DEGLI OGGETTI ALLOCATI CON alloc (null SE DISATTIVATO)
+    private final GarbageCollector gc;
+    // GARBAGE COLLECTOR GENERAZIONALE PRECISO (null SE DISATTIVATO)
+    private final GenerationalCollector generational;
+    // INLINE CACHE DELLE ISTRUZIONI dispatch
+    private final InlineCache inlineCache;
 
     // PUNTA ALL'ISTRUZIONE DA ESEGUIRE (CODE)
     private int ip = 0;
     // STACK POINTER, PUNTA AL TOP DELLO STACK (MEMORY)
-    // LO STACK VIENE MEMORIZZATO A PARTIRE DALL'INDIRIZZO PIÙ ALTO DELLA MEMORIA
-    private int sp = MEMSIZE;
+    // LO STACK CRESCE VERSO IL BASSO A PARTIRE DA STACKBASE
+    private int sp = STACKBASE;
     // HEAP POINTER, PUNTA ALLA CIMA DELLO HEAP
     private int hp = 0;
     // FRAME POINTER, PUNTA AL RECORD DI ATTIVAZIONE DELLA FUNZIONE CORRENTE
-    private int fp = MEMSIZE;
+    private int fp = STACKBASE;
     // RETURN ADDRESS, UTILIZZATO PER IMPOSTARE L'ISTRUZIONE DA ESEGUIRE DOPO UNA CHIAMATA A FUNZIONE
     private int ra;
     // REGISTRO TEMPORANEO
     private int tm;
+    // DISPLAY: PER OGNI NESTING LEVEL d, L'INDIRIZZO DELL'AR DI LIVELLO d VISIBILE DALLA FUNZIONE
+    // CORRENTE (IL FRAME GLOBALE E' A LIVELLO 0). enter d SALVA display[d] IN saved E LO IMPOSTA
+    // A fp, leave d LO RIPRISTINA: ldisp E llev ACCEDONO COSI' AGLI AR NON LOCALI IN TEMPO
+    // COSTANTE, SENZA RISALIRE LA CATENA STATICA
+    private int[] display = new int[16];
+    private int[] saved = new int[256];
+    private int savedTop = 0;
+    {
+      display[0] = STACKBASE;
+    }
     
     public ExecuteVM(int[] code) {
+      this(code, DEFAULT_STACKSIZE, DEFAULT_HEAPSIZE);
+    }
+    
+    // stackSize E heapSize SONO IL NUMERO MASSIMO DI CELLE DELLE DUE REGIONI
+    public ExecuteVM(int[] code, int stackSize, int heapSize) {
+      this(code, stackSize, heapSize, false);
+    }
+    
+    // CON collectGarbage GLI OGGETTI NON PIU' RAGGIUNGIBILI VENGONO RACCOLTI (VEDI GarbageCollector)
+    public ExecuteVM(int[] code, int stackSize, int heapSize, boolean collectGarbage) {
       this.code = code;
+      this.memory = new Memory(stackSize, heapSize);
+      this.gc = collectGarbage ? new GarbageCollector(memory, heapSize) : null;
+      this.generational = null;
+      this.inlineCache = new InlineCache(memory, code.length);
+    }
+    
+    // CON LE MAPPE DELLO STACK EMESSE DAL COMPILATORE (ObjectFile.stackMaps) GLI OGGETTI
+    // VENGONO RACCOLTI DAL COLLECTOR GENERAZIONALE PRECISO (VEDI GenerationalCollector)
+    public ExecuteVM(int[] code, int stackSize, int heapSize, Map<Integer,int[]> stackMaps) {
+      this.code = code;
+      this.memory = new Memory(stackSize, heapSize);
+      this.gc = null;
+      this.generational = new GenerationalCollector(memory, heapSize, stackMaps);
+      this.inlineCache = new InlineCache(memory, code.length);
+    }
+    
+    // STATISTICHE DEL GARBAGE COLLECTOR, null SE DISATTIVATO
+    public GCStats getGCStats() {
+      if (generational != null) return generational.statistics();
+      return gc == null ? null : gc.statistics();
+    }
+    
+    // CELLE DI STACK ALLOCATE (LA REGIONE RADDOPPIA QUANDO SERVE: E' UNA MISURA DELLA PROFONDITA' MASSIMA RAGGIUNTA)
+    public int getStackCells() {
+      return memory.stackCapacity();
+    }
+    
+    // STATISTICHE DELLE INLINE CACHE DEI SITI DI CHIAMATA DEI METODI
+    public InlineCacheStats getInlineCacheStats() {
+      return inlineCache.statistics();
     }
     
     public void cpu() {
@@ -59,10 +124,10 @@ public class ExecuteVM {
             break;
           case SVMParser.STOREW : // METTE UN VALORE IN UN INDIRIZZO DI MEMORIA
             address = pop();
-            memory[address] = pop();    
+            memory.store(address, pop());    
             break;
           case SVMParser.LOADW : // POP DI UN INDIRIZZO E PUSH SULLO STACK DEL VALORE IN QUELL'INDIRIZZO
-            push(memory[pop()]);
+            push(memory.load(pop()));
             break;
           case SVMParser.BRANCH : 
             address = code[ip];
@@ -80,6 +145,34 @@ public class ExecuteVM {
             v2=pop();
             if (v2 <= v1) ip = address;
             break;
+          case SVMParser.EQUAL :
+            v1=pop();
+            v2=pop();
+            push(v2 == v1 ? 1 : 0);
+            break;
+          case SVMParser.LESSEQ :
+            v1=pop();
+            v2=pop();
+            push(v2 <= v1 ? 1 : 0);
+            break;
+          case SVMParser.LESS :
+            v1=pop();
+            v2=pop();
+            push(v2 < v1 ? 1 : 0);
+            break;
+          case SVMParser.NOT :
+            push(pop() == 0 ? 1 : 0);
+            break;
+          case SVMParser.AND :
+            v1=pop();
+            v2=pop();
+            push(v2 & v1);
+            break;
+          case SVMParser.OR :
+            v1=pop();
+            v2=pop();
+            push(v2 | v1);
+            break;
           case SVMParser.JS : // JUMP SUBROUTINE, ESEGUE UN SALTO SU UNA SUBROUTINE E SETTA RA AL PUNTO SUCCESSIVO ALLA CHIAMATA
             address = pop();
             ra = ip;
@@ -113,20 +206,797 @@ public class ExecuteVM {
             push(hp);
             break;
          case SVMParser.PRINT :
-            System.out.println((sp<MEMSIZE)?memory[sp]:"Empty stack!");
+            System.out.println((sp<STACKBASE)?memory.load(sp):"Empty stack!");
             break;
          case SVMParser.HALT :
             return;
+         case SVMParser.ALLOC :
+            alloc(code[ip], ip - 1);
+            ip++;
+            break;
+         case SVMParser.SLIDE : // SPOSTA LE v1 CELLE IN CIMA ALLO STACK AGLI OFFSET v2-v1+1..v2 DA fp
+            v1 = code[ip++];
+            v2 = code[ip++];
+            for (int j = 0; j < v1; j++) memory.store(fp + v2 - j, memory.load(sp + v1 - 1 - j)); // DALLA PIU' PROFONDA
+            sp = fp + v2 - v1 + 1;
+            break;
+         case SVMParser.JUMP : // COME js, MA SENZA SALVARE L'INDIRIZZO DI RITORNO IN ra
+            ip = pop();
+            break;
+         case SVMParser.ENTER :
+            enter(code[ip++], fp);
+            break;
+         case SVMParser.LEAVE :
+            leave(code[ip++]);
+            break;
+         case SVMParser.LOADDISPLAY :
+            push(display[code[ip++]]);
+            break;
+         // SUPERISTRUZIONI
+         case SVMParser.LOADLOCAL : // lfp; push k; add; lw
+            push(memory.load(fp + code[ip++]));
+            break;
+         case SVMParser.LOADUP : // lfp; lw (d volte); push k; add; lw
+            address = fp;
+            for (int d = code[ip++]; d > 0; d--) address = memory.load(address);
+            push(memory.load(address + code[ip++]));
+            break;
+         case SVMParser.DUPTOP : // stm; ltm; ltm
+            tm = memory.load(sp);
+            push(tm);
+            break;
+         case SVMParser.BUMPHP : // lhp; push 1; add; shp
+            hp++;
+            break;
+         case SVMParser.DISPATCH : // lw; push k; add; lw (CON INLINE CACHE)
+            push(dispatch(pop(), code[ip], ip - 1));
+            ip++;
+            break;
+         case SVMParser.LOADLEVEL : // ldisp d; push k; add; lw
+            address = display[code[ip++]];
+            push(memory.load(address + code[ip++]));
+            break;
         }
       }
     } 
-    
+
+    /*
+     * ESECUZIONE CON CODICE PRE-DECODIFICATO (VEDI decode): STESSA SEMANTICA DI cpu()
+     */
+    public void cpuDecoded() {
+      if (ops == null) decode();
+      execute(ops, null, 0);
+    }
+
+    /*
+     * ESECUZIONE CON PROFILING (VEDI Profiler): STESSO LOOP DI cpuDecoded(), SU UN FLUSSO IN CUI OGNI
+     * INDIRIZZO E' L'ISTRUZIONE OP_PROFILE. OP_PROFILE CONTA L'ISTRUZIONE NEL NODO CORRENTE DEL
+     * CALL GRAPH DEL PROFILER (COMUNICANDOGLI CHIAMATE, RITORNI E CHIAMATE IN CODA DI js E jump)
+     * E LA ESEGUE CON L'OPCODE DECODIFICATO. IL FLUSSO DI cpuDecoded() NON CONTIENE OP_PROFILE, QUINDI
+     * SENZA PROFILING NON C'E' NESSUN CONTROLLO IN PIU' PER ISTRUZIONE.
+     */
+    public void cpuProfiled(Profiler profiler) {
+      if (ops == null) decode();
+      int[] profiled = new int[ops.length];
+      Arrays.fill(profiled, OP_PROFILE);
+      execute(profiled, profiler, 0);
+    }
+
+    /*
+     * IL CODICE ASSEMBLATO VIENE DECODIFICATO UNA SOLA VOLTA: PER OGNI INDIRIZZO ops[] CONTIENE
+     * L'OPCODE RINUMERATO IN MODO DENSO (0..N) E args[]/args2[] GLI OPERANDI GIA' LETTI (VALORE
+     * DI PUSH, DESTINAZIONE DEI SALTI, ...). OGNI INDIRIZZO E' DECODIFICATO COME SE FOSSE L'INIZIO
+     * DI UN'ISTRUZIONE, COSI' GLI INDIRIZZI (LABEL SULLO STACK, $ra) RESTANO QUELLI DI code[]
+     * E IL COMPORTAMENTO E' IDENTICO A QUELLO DI cpu().
+     */
+    private static final int OP_NOP = 0;
+    private static final int OP_PUSH = 1;
+    private static final int OP_POP = 2;
+    private static final int OP_ADD = 3;
+    private static final int OP_SUB = 4;
+    private static final int OP_MULT = 5;
+    private static final int OP_DIV = 6;
+    private static final int OP_STOREW = 7;
+    private static final int OP_LOADW = 8;
+    private static final int OP_BRANCH = 9;
+    private static final int OP_BRANCHEQ = 10;
+    private static final int OP_BRANCHLESSEQ = 11;
+    private static final int OP_JS = 12;
+    private static final int OP_STORERA = 13;
+    private static final int OP_LOADRA = 14;
+    private static final int OP_STORETM = 15;
+    private static final int OP_LOADTM = 16;
+    private static final int OP_LOADFP = 17;
+    private static final int OP_STOREFP = 18;
+    private static final int OP_COPYFP = 19;
+    private static final int OP_STOREHP = 20;
+    private static final int OP_LOADHP = 21;
+    private static final int OP_PRINT = 22;
+    private static final int OP_HALT = 23;
+    private static final int OP_LOADLOCAL = 24;
+    private static final int OP_LOADUP = 25;
+    private static final int OP_DUPTOP = 26;
+    private static final int OP_BUMPHP = 27;
+    private static final int OP_ALLOC = 28;
+    private static final int OP_DISPATCH = 29;
+    private static final int OP_SLIDE = 30;
+    private static final int OP_JUMP = 31;
+    private static final int OP_ENTER = 32;
+    private static final int OP_LEAVE = 33;
+    private static final int OP_LOADDISPLAY = 34;
+    private static final int OP_LOADLEVEL = 35;
+    private static final int OP_EQUAL = 36;
+    private static final int OP_LESSEQ = 37;
+    private static final int OP_LESS = 38;
+    private static final int OP_NOT = 39;
+    private static final int OP_AND = 40;
+    private static final int OP_OR = 41;
+    private static final int OP_PROFILE = 42; // SOLO NEL FLUSSO DI cpuProfiled
+    private static final int OP_COUNT = 43; // SOLO NEL FLUSSO DI cpuJIT, AGLI INGRESSI DELLE FUNZIONI
+
+    private int[] ops;
+    private int[] args;
+    private int[] args2; // SECONDO OPERANDO (lup, llev, slide)
+
+    private static int denseOpcode(int bytecode) {
+      switch ( bytecode ) {
+        case SVMParser.PUSH: return OP_PUSH;
+        case SVMParser.POP: return OP_POP;
+        case SVMParser.ADD: return OP_ADD;
+        case SVMParser.SUB: return OP_SUB;
+        case SVMParser.MULT: return OP_MULT;
+        case SVMParser.DIV: return OP_DIV;
+        case SVMParser.STOREW: return OP_STOREW;
+        case SVMParser.LOADW: return OP_LOADW;
+        case SVMParser.BRANCH: return OP_BRANCH;
+        case SVMParser.BRANCHEQ: return OP_BRANCHEQ;
+        case SVMParser.BRANCHLESSEQ: return OP_BRANCHLESSEQ;
+        case SVMParser.JS: return OP_JS;
+        case SVMParser.STORERA: return OP_STORERA;
+        case SVMParser.LOADRA: return OP_LOADRA;
+        case SVMParser.STORETM: return OP_STORETM;
+        case SVMParser.LOADTM: return OP_LOADTM;
+        case SVMParser.LOADFP: return OP_LOADFP;
+        case SVMParser.STOREFP: return OP_STOREFP;
+        case SVMParser.COPYFP: return OP_COPYFP;
+        case SVMParser.STOREHP: return OP_STOREHP;
+        case SVMParser.LOADHP: return OP_LOADHP;
+        case SVMParser.PRINT: return OP_PRINT;
+        case SVMParser.HALT: return OP_HALT;
+        case SVMParser.ALLOC: return OP_ALLOC;
+        case SVMParser.LOADLOCAL: return OP_LOADLOCAL;
+        case SVMParser.LOADUP: return OP_LOADUP;
+        case SVMParser.DUPTOP: return OP_DUPTOP;
+        case SVMParser.BUMPHP: return OP_BUMPHP;
+        case SVMParser.DISPATCH: return OP_DISPATCH;
+        case SVMParser.SLIDE: return OP_SLIDE;
+        case SVMParser.JUMP: return OP_JUMP;
+        case SVMParser.ENTER: return OP_ENTER;
+        case SVMParser.LEAVE: return OP_LEAVE;
+        case SVMParser.LOADDISPLAY: return OP_LOADDISPLAY;
+        case SVMParser.LOADLEVEL: return OP_LOADLEVEL;
+        case SVMParser.EQUAL: return OP_EQUAL;
+        case SVMParser.LESSEQ: return OP_LESSEQ;
+        case SVMParser.LESS: return OP_LESS;
+        case SVMParser.NOT: return OP_NOT;
+        case SVMParser.AND: return OP_AND;
+        case SVMParser.OR: return OP_OR;
+        default: return OP_NOP; // COME NELLO switch DI cpu(), UN CODICE SCONOSCIUTO NON FA NULLA
+      }
+    }
+
+    private void decode() {
+      ops = new int[code.length];
+      args = new int[code.length];
+      args2 = new int[code.length];
+      // GLI ZERI FINALI DI code[] (CODESIZE) RESTANO OP_NOP CON OPERANDI 0 SENZA DECODIFICARLI
+      int end = code.length;
+      while (end > 0 && code[end - 1] == 0) end--;
+      for (int i = 0; i < end; i++) {
+        ops[i] = denseOpcode(code[i]);
+        if (i + 1 < code.length) args[i] = code[i + 1];
+        if (i + 2 < code.length) args2[i] = code[i + 2];
+      }
+    }
+
+    /*
+     * LOOP DI ESECUZIONE SUL FLUSSO DI OPCODE ops (this.ops, QUELLO DI cpuProfiled CON profiler
+     * O QUELLO DI cpuJIT). NEL FLUSSO DI cpuJIT L'ISTRUZIONE OP_COUNT CONTA GLI INGRESSI NELLE
+     * FUNZIONI: DOPO budget INGRESSI IL LOOP SI FERMA PRIMA DI ESEGUIRE LA FUNZIONE, CON I
+     * REGISTRI NEI CAMPI. RITORNA GLI INGRESSI ANCORA DISPONIBILI (0 SE NON E' ARRIVATO ALL'halt).
+     */
+    private int execute(final int[] ops, Profiler profiler, int budget) {
+      // I REGISTRI SONO COPIATI IN VARIABILI LOCALI E RISCRITTI NEI CAMPI ALL'HALT
+      final int[] decoded = this.ops;
+      final int[] args = this.args;
+      final int[] args2 = this.args2;
+      final Memory memory = this.memory;
+      int[] display = this.display; // RILETTO DOPO enter, CHE PUO' ALLARGARLO
+      int ip = this.ip, sp = this.sp, hp = this.hp, fp = this.fp, ra = this.ra, tm = this.tm;
+      int op = ops[ip];
+      while ( true ) {
+        int v1,v2;
+        switch ( op ) {
+          case OP_PROFILE :
+            profiler.count();
+            op = decoded[ip];
+            if (op == OP_JS) profiler.jumpSubroutine(memory.load(sp), ip + 1); // CHIAMATA O RITORNO
+            else if (op == OP_JUMP) profiler.tailCall(memory.load(sp)); // CHIAMATA IN CODA
+            continue; // ESEGUE op ALLO STESSO INDIRIZZO
+          case OP_COUNT :
+            if (--budget == 0) {
+              this.ip = ip; this.sp = sp; this.hp = hp; this.fp = fp; this.ra = ra; this.tm = tm;
+              return 0;
+            }
+            op = decoded[ip];
+            continue;
+          case OP_PUSH:
+            memory.store(--sp, args[ip]);
+            ip += 2;
+            break;
+          case OP_POP:
+            sp++;
+            ip++;
+            break;
+          case OP_ADD :
+            v1=memory.load(sp++);
+            v2=memory.load(sp);
+            memory.store(sp, v2 + v1);
+            ip++;
+            break;
+          case OP_MULT :
+            v1=memory.load(sp++);
+            v2=memory.load(sp);
+            memory.store(sp, v2 * v1);
+            ip++;
+            break;
+          case OP_DIV :
+            v1=memory.load(sp++);
+            v2=memory.load(sp);
+            memory.store(sp, v2 / v1);
+            ip++;
+            break;
+          case OP_SUB :
+            v1=memory.load(sp++);
+            v2=memory.load(sp);
+            memory.store(sp, v2 - v1);
+            ip++;
+            break;
+          case OP_STOREW :
+            v1 = memory.load(sp++);
+            memory.store(v1, memory.load(sp++));
+            ip++;
+            break;
+          case OP_LOADW :
+            memory.store(sp, memory.load(memory.load(sp)));
+            ip++;
+            break;
+          case OP_BRANCH :
+            ip = args[ip];
+            break;
+          case OP_BRANCHEQ :
+            v1=memory.load(sp++);
+            v2=memory.load(sp++);
+            ip = (v2 == v1) ? args[ip] : ip + 2;
+            break;
+          case OP_BRANCHLESSEQ :
+            v1=memory.load(sp++);
+            v2=memory.load(sp++);
+            ip = (v2 <= v1) ? args[ip] : ip + 2;
+            break;
+          case OP_EQUAL :
+            v1=memory.load(sp++);
+            v2=memory.load(sp);
+            memory.store(sp, v2 == v1 ? 1 : 0);
+            ip++;
+            break;
+          case OP_LESSEQ :
+            v1=memory.load(sp++);
+            v2=memory.load(sp);
+            memory.store(sp, v2 <= v1 ? 1 : 0);
+            ip++;
+            break;
+          case OP_LESS :
+            v1=memory.load(sp++);
+            v2=memory.load(sp);
+            memory.store(sp, v2 < v1 ? 1 : 0);
+            ip++;
+            break;
+          case OP_NOT :
+            memory.store(sp, memory.load(sp) == 0 ? 1 : 0);
+            ip++;
+            break;
+          case OP_AND :
+            v1=memory.load(sp++);
+            v2=memory.load(sp);
+            memory.store(sp, v2 & v1);
+            ip++;
+            break;
+          case OP_OR :
+            v1=memory.load(sp++);
+            v2=memory.load(sp);
+            memory.store(sp, v2 | v1);
+            ip++;
+            break;
+          case OP_JS : // JUMP SUBROUTINE: CHIAMATA O RITORNO, SETTA RA AL PUNTO SUCCESSIVO AL js
+            ra = ip + 1;
+            ip = memory.load(sp++);
+            break;
+          case OP_STORERA :
+            ra=memory.load(sp++);
+            ip++;
+            break;
+          case OP_LOADRA :
+            memory.store(--sp, ra);
+            ip++;
+            break;
+          case OP_STORETM :
+            tm=memory.load(sp++);
+            ip++;
+            break;
+          case OP_LOADTM :
+            memory.store(--sp, tm);
+            ip++;
+            break;
+          case OP_LOADFP :
+            memory.store(--sp, fp);
+            ip++;
+            break;
+          case OP_STOREFP :
+            fp=memory.load(sp++);
+            ip++;
+            break;
+          case OP_COPYFP :
+            fp=sp;
+            ip++;
+            break;
+          case OP_STOREHP :
+            hp=memory.load(sp++);
+            ip++;
+            break;
+          case OP_LOADHP :
+            memory.store(--sp, hp);
+            ip++;
+            break;
+          case OP_PRINT :
+            System.out.println((sp<STACKBASE)?memory.load(sp):"Empty stack!");
+            ip++;
+            break;
+          case OP_HALT :
+            this.ip = ip + 1;
+            this.sp = sp;
+            this.hp = hp;
+            this.fp = fp;
+            this.ra = ra;
+            this.tm = tm;
+            return budget;
+          case OP_ALLOC : // alloc USA I REGISTRI (RADICI DEL GARBAGE COLLECTOR) NEI CAMPI
+            this.sp = sp; this.hp = hp; this.fp = fp; this.ra = ra; this.tm = tm;
+            alloc(args[ip], ip);
+            sp = this.sp; hp = this.hp;
+            ip += 2;
+            break;
+          case OP_LOADLOCAL :
+            memory.store(--sp, memory.load(fp + args[ip]));
+            ip += 2;
+            break;
+          case OP_LOADUP :
+            v1 = fp;
+            for (int d = args[ip]; d > 0; d--) v1 = memory.load(v1);
+            memory.store(--sp, memory.load(v1 + args2[ip]));
+            ip += 3;
+            break;
+          case OP_DUPTOP :
+            tm = memory.load(sp);
+            memory.store(--sp, tm);
+            ip++;
+            break;
+          case OP_BUMPHP :
+            hp++;
+            ip++;
+            break;
+          case OP_DISPATCH :
+            memory.store(sp, dispatch(memory.load(sp), args[ip], ip));
+            ip += 2;
+            break;
+          case OP_SLIDE :
+            v1 = args[ip];
+            v2 = args2[ip];
+            for (int j = 0; j < v1; j++) memory.store(fp + v2 - j, memory.load(sp + v1 - 1 - j));
+            sp = fp + v2 - v1 + 1;
+            ip += 3;
+            break;
+          case OP_JUMP : // COME js, MA SENZA SALVARE L'INDIRIZZO DI RITORNO IN ra (CHIAMATA IN CODA)
+            ip = memory.load(sp++);
+            break;
+          case OP_ENTER :
+            enter(args[ip], fp);
+            display = this.display;
+            ip += 2;
+            break;
+          case OP_LEAVE :
+            leave(args[ip]);
+            ip += 2;
+            break;
+          case OP_LOADDISPLAY :
+            memory.store(--sp, display[args[ip]]);
+            ip += 2;
+            break;
+          case OP_LOADLEVEL :
+            memory.store(--sp, memory.load(display[args[ip]] + args2[ip]));
+            ip += 3;
+            break;
+          default :
+            ip++;
+            break;
+        }
+        op = ops[ip];
+      }
+    }
+
+    /*
+     * ESECUZIONE CON CACHING DELLA CIMA DELLO STACK (SUL CODICE PRE-DECODIFICATO)
+     * LA CIMA DELLO STACK (INDIRIZZO sp) E' TENUTA NELLA VARIABILE LOCALE tos E LA CELLA
+     * memory[sp] NON E' AGGIORNATA: UNA push SCRIVE IN MEMORIA SOLO LA VECCHIA CIMA, UNA
+     * OPERAZIONE BINARIA LEGGE DALLA MEMORIA SOLO IL SECONDO OPERANDO. LE LETTURE DI UN
+     * INDIRIZZO QUALSIASI (lw, lloc, lup, llev) CONTROLLANO SE L'INDIRIZZO E' sp.
+     * LE ISTRUZIONI CHE LAVORANO SULLO STACK REALE (cfp, lfp, sw, js) FANNO LO SPILL: SCRIVONO
+     * LA CIMA IN memory[sp], ESEGUONO L'ISTRUZIONE SULLA MEMORIA COME execute E RICARICANO
+     * LA CIMA. ANCHE alloc, slide E halt RISCRIVONO LA CIMA IN memory[sp].
+     */
+    public void cpuCached() {
+      if (ops == null) decode();
+      final int[] ops = this.ops;
+      final int[] args = this.args;
+      final int[] args2 = this.args2;
+      final Memory memory = this.memory;
+      int[] display = this.display; // RILETTO DOPO enter, CHE PUO' ALLARGARLO
+      int ip = this.ip, sp = this.sp, hp = this.hp, fp = this.fp, ra = this.ra, tm = this.tm;
+      int tos = sp < STACKBASE ? memory.load(sp) : 0;
+      while ( true ) {
+        int v1,v2;
+        switch ( ops[ip] ) {
+          case OP_PUSH:
+            if (sp < STACKBASE) memory.store(sp, tos);
+            tos = args[ip];
+            sp--;
+            ip += 2;
+            break;
+          case OP_POP:
+            if (++sp < STACKBASE) tos = memory.load(sp);
+            ip++;
+            break;
+          case OP_ADD :
+            v1 = tos;
+            tos = memory.load(++sp) + v1;
+            ip++;
+            break;
+          case OP_MULT :
+            v1 = tos;
+            tos = memory.load(++sp) * v1;
+            ip++;
+            break;
+          case OP_DIV :
+            v1 = tos;
+            tos = memory.load(++sp) / v1;
+            ip++;
+            break;
+          case OP_SUB :
+            v1 = tos;
+            tos = memory.load(++sp) - v1;
+            ip++;
+            break;
+          case OP_STOREW : // SPILL
+            if (sp < STACKBASE) memory.store(sp, tos);
+            v1 = memory.load(sp++);
+            memory.store(v1, memory.load(sp++));
+            if (sp < STACKBASE) tos = memory.load(sp);
+            ip++;
+            break;
+          case OP_LOADW :
+            tos = tos == sp ? tos : memory.load(tos);
+            ip++;
+            break;
+          case OP_BRANCH :
+            ip = args[ip];
+            break;
+          case OP_BRANCHEQ :
+            v1 = tos;
+            v2 = memory.load(sp + 1);
+            sp += 2;
+            if (sp < STACKBASE) tos = memory.load(sp);
+            ip = (v2 == v1) ? args[ip] : ip + 2;
+            break;
+          case OP_BRANCHLESSEQ :
+            v1 = tos;
+            v2 = memory.load(sp + 1);
+            sp += 2;
+            if (sp < STACKBASE) tos = memory.load(sp);
+            ip = (v2 <= v1) ? args[ip] : ip + 2;
+            break;
+          case OP_EQUAL :
+            v1 = tos;
+            tos = memory.load(++sp) == v1 ? 1 : 0;
+            ip++;
+            break;
+          case OP_LESSEQ :
+            v1 = tos;
+            tos = memory.load(++sp) <= v1 ? 1 : 0;
+            ip++;
+            break;
+          case OP_LESS :
+            v1 = tos;
+            tos = memory.load(++sp) < v1 ? 1 : 0;
+            ip++;
+            break;
+          case OP_NOT :
+            tos = tos == 0 ? 1 : 0;
+            ip++;
+            break;
+          case OP_AND :
+            v1 = tos;
+            tos = memory.load(++sp) & v1;
+            ip++;
+            break;
+          case OP_OR :
+            v1 = tos;
+            tos = memory.load(++sp) | v1;
+            ip++;
+            break;
+          case OP_JS : // SPILL
+            if (sp < STACKBASE) memory.store(sp, tos);
+            ra = ip + 1;
+            ip = memory.load(sp++);
+            if (sp < STACKBASE) tos = memory.load(sp);
+            break;
+          case OP_STORERA :
+            ra = tos;
+            if (++sp < STACKBASE) tos = memory.load(sp);
+            ip++;
+            break;
+          case OP_LOADRA :
+            if (sp < STACKBASE) memory.store(sp, tos);
+            tos = ra;
+            sp--;
+            ip++;
+            break;
+          case OP_STORETM :
+            tm = tos;
+            if (++sp < STACKBASE) tos = memory.load(sp);
+            ip++;
+            break;
+          case OP_LOADTM :
+            if (sp < STACKBASE) memory.store(sp, tos);
+            tos = tm;
+            sp--;
+            ip++;
+            break;
+          case OP_LOADFP : // SPILL
+            if (sp < STACKBASE) memory.store(sp, tos);
+            memory.store(--sp, fp);
+            tos = fp;
+            ip++;
+            break;
+          case OP_STOREFP :
+            fp = tos;
+            if (++sp < STACKBASE) tos = memory.load(sp);
+            ip++;
+            break;
+          case OP_COPYFP : // SPILL (sp NON CAMBIA, LA CIMA RESTA IN tos)
+            if (sp < STACKBASE) memory.store(sp, tos);
+            fp = sp;
+            ip++;
+            break;
+          case OP_STOREHP :
+            hp = tos;
+            if (++sp < STACKBASE) tos = memory.load(sp);
+            ip++;
+            break;
+          case OP_LOADHP :
+            if (sp < STACKBASE) memory.store(sp, tos);
+            tos = hp;
+            sp--;
+            ip++;
+            break;
+          case OP_PRINT :
+            if (sp < STACKBASE) System.out.println(tos);
+            else System.out.println("Empty stack!");
+            ip++;
+            break;
+          case OP_HALT :
+            if (sp < STACKBASE) memory.store(sp, tos);
+            this.ip = ip + 1;
+            this.sp = sp;
+            this.hp = hp;
+            this.fp = fp;
+            this.ra = ra;
+            this.tm = tm;
+            return;
+          case OP_ALLOC :
+            if (sp < STACKBASE) memory.store(sp, tos);
+            this.sp = sp; this.hp = hp; this.fp = fp; this.ra = ra; this.tm = tm;
+            alloc(args[ip], ip);
+            sp = this.sp; hp = this.hp;
+            tos = memory.load(sp);
+            ip += 2;
+            break;
+          case OP_LOADLOCAL :
+            v1 = fp + args[ip];
+            v1 = v1 == sp ? tos : memory.load(v1);
+            if (sp < STACKBASE) memory.store(sp, tos);
+            tos = v1;
+            sp--;
+            ip += 2;
+            break;
+          case OP_LOADUP :
+            v1 = fp;
+            for (int d = args[ip]; d > 0; d--) v1 = v1 == sp ? tos : memory.load(v1);
+            v1 += args2[ip];
+            v1 = v1 == sp ? tos : memory.load(v1);
+            if (sp < STACKBASE) memory.store(sp, tos);
+            tos = v1;
+            sp--;
+            ip += 3;
+            break;
+          case OP_DUPTOP :
+            tm = tos;
+            if (sp < STACKBASE) memory.store(sp, tos);
+            sp--;
+            ip++;
+            break;
+          case OP_BUMPHP :
+            hp++;
+            ip++;
+            break;
+          case OP_DISPATCH :
+            tos = dispatch(tos, args[ip], ip);
+            ip += 2;
+            break;
+          case OP_SLIDE : // LA CIMA DELLO STACK VIENE SCRITTA IN MEMORIA PRIMA DELLO SPOSTAMENTO
+            v1 = args[ip];
+            v2 = args2[ip];
+            if (sp < STACKBASE) memory.store(sp, tos);
+            for (int j = 0; j < v1; j++) memory.store(fp + v2 - j, memory.load(sp + v1 - 1 - j));
+            sp = fp + v2 - v1 + 1;
+            if (sp < STACKBASE) tos = memory.load(sp);
+            ip += 3;
+            break;
+          case OP_JUMP :
+            ip = tos;
+            if (++sp < STACKBASE) tos = memory.load(sp);
+            break;
+          case OP_ENTER :
+            enter(args[ip], fp);
+            display = this.display;
+            ip += 2;
+            break;
+          case OP_LEAVE :
+            leave(args[ip]);
+            ip += 2;
+            break;
+          case OP_LOADDISPLAY :
+            if (sp < STACKBASE) memory.store(sp, tos);
+            tos = display[args[ip]];
+            sp--;
+            ip += 2;
+            break;
+          case OP_LOADLEVEL :
+            v1 = display[args[ip]] + args2[ip];
+            v1 = v1 == sp ? tos : memory.load(v1);
+            if (sp < STACKBASE) memory.store(sp, tos);
+            tos = v1;
+            sp--;
+            ip += 3;
+            break;
+          default :
+            ip++;
+            break;
+        }
+      }
+    }
+
+    /*
+     * ESECUZIONE TRAMITE TRADUZIONE IN BYTECODE JVM (VEDI JITCompiler).
+     * IL CODICE VIENE TRADOTTO SOLO QUANDO E' CALDO: FINCHE' LE SUE ESECUZIONI NON HANNO FATTO
+     * JITCompiler.THRESHOLD INGRESSI NELLE FUNZIONI E' ESEGUITO DAL LOOP PRE-DECODIFICATO, CHE SI
+     * FERMA ALL'INGRESSO DI UNA FUNZIONE (INIZIO DI UNA REGIONE TRADOTTA) QUANDO LA SOGLIA E'
+     * RAGGIUNTA. SE IL CODICE NON PUO' ESSERE TRADOTTO, O SE SI SALTA AD UN INDIRIZZO CHE NON E'
+     * L'INIZIO DI UN BLOCCO TRADOTTO, L'ESECUZIONE PROSEGUE CON L'INTERPRETE.
+     */
+    public void cpuJIT() {
+      MethodHandle run = JITCompiler.compiled(code);
+      if (run == null) {
+        int budget = JITCompiler.budget(code);
+        if (budget > 0) { // CODICE ANCORA FREDDO: INTERPRETATO FINO ALLA SOGLIA (O ALL'halt)
+          int left = execute(countingOps(), null, budget);
+          JITCompiler.interpreted(code, budget - left);
+          if (left > 0) return;
+        }
+        run = JITCompiler.compile(code, MethodHandles.lookup());
+        if (run == null) {
+          cpu();
+          return;
+        }
+      }
+      int next;
+      try {
+        next = (int) run.invokeExact(this, ip);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new RuntimeException(t);
+      }
+      if (next != JITCompiler.HALTED) {
+        ip = next;
+        cpu();
+      }
+    }
+
+    // FLUSSO DI cpuJIT: QUELLO DECODIFICATO CON OP_COUNT AGLI INGRESSI DELLE FUNZIONI
+    private int[] countingOps() {
+      if (ops == null) decode();
+      int[] counting = ops.clone();
+      boolean[] entries = JITCompiler.functionEntries(code);
+      for (int i = 0; i < Math.min(entries.length, counting.length); i++)
+        if (entries[i]) counting[i] = OP_COUNT;
+      return counting;
+    }
+
+    /*
+     * ISTRUZIONE alloc n: SULLO STACK CI SONO I VALORI DEGLI n CAMPI (IL PRIMO CAMPO PIU' IN
+     * PROFONDITA') E SOPRA IL DISPATCH POINTER. ALLOCA UN BLOCCO DI n+1 CELLE CON IL LAYOUT
+     * DEGLI OGGETTI DI CodeGenerationASTVisitor (CAMPI A OFFSET -1..-n, DISPATCH POINTER A
+     * OFFSET 0) E LASCIA SULLO STACK L'OBJECT POINTER. SENZA GARBAGE COLLECTOR IL BLOCCO E'
+     * SEMPRE IN CIMA ALLO HEAP, COME CON IL VECCHIO CODICE lhp/sw/shp.
+     * IL BLOCCO VIENE SCELTO PRIMA DI TOGLIERE I VALORI DALLO STACK, COSI' UNA RACCOLTA
+     * VEDE ANCORA I CAMPI DEL NUOVO OGGETTO TRA LE RADICI. site E' L'INDIRIZZO DELL'ISTRUZIONE
+     * alloc, CHIAVE DELLA MAPPA DELLO STACK USATA DAL COLLECTOR GENERAZIONALE.
+     */
+    private void alloc(int fields, int site) {
+      int block;
+      if (generational != null) block = generational.allocate(fields + 1, hp, site, fp);
+      else {
+        block = gc == null ? hp : gc.allocate(fields + 1, hp, sp, tm, ra, fp);
+        if (block == hp) hp += fields + 1;
+      }
+      int dispatch = pop();
+      for (int i = 0; i < fields; i++) memory.store(block + i, pop());
+      memory.store(block + fields, dispatch);
+      push(block + fields);
+    }
+
+    /*
+     * ISTRUZIONE dispatch k: SOSTITUISCE L'OBJECT POINTER object CON L'INDIRIZZO DEL METODO
+     * ALL'OFFSET k DELLA SUA DISPATCH TABLE, USANDO L'INLINE CACHE DEL SITO site
+     */
+    private int dispatch(int object, int offset, int site) {
+      return inlineCache.lookup(site, memory.load(object), offset);
+    }
+
+    // ISTRUZIONE enter d: SALVA display[d] E LO IMPOSTA ALL'AR fp (ALLARGANDO display E saved SE SERVE)
+    private void enter(int level, int fp) {
+      if (level >= display.length) display = Arrays.copyOf(display, 2 * level);
+      if (savedTop == saved.length) saved = Arrays.copyOf(saved, 2 * savedTop);
+      saved[savedTop++] = display[level];
+      display[level] = fp;
+    }
+
+    // ISTRUZIONE leave d: RIPRISTINA IL display[d] SALVATO DALLA enter CORRISPONDENTE
+    private void leave(int level) {
+      display[level] = saved[--savedTop];
+    }
+
+    // USATA DAL CODICE TRADOTTO PER L'ISTRUZIONE print
+    static void print(Memory memory, int sp) {
+      System.out.println((sp<STACKBASE)?memory.load(sp):"Empty stack!");
+    }
+
     private int pop() {
-      return memory[sp++];
+      return memory.load(sp++);
     }
     
     private void push(int v) {
-      memory[--sp] = v;
+      memory.store(--sp, v);
     }
     
 }
\ No newline at end of file
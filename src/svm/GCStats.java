@@ -0,0 +1,46 @@
+package svm;
+
+/*
+ * STATISTICHE DEL GARBAGE COLLECTOR DI ExecuteVM (VEDI ExecuteVM.getGCStats)
+ */
+public class GCStats {
+
+	public final int collections; // raccolte eseguite
+	public final int majorCollections; // raccolte dello spazio vecchio (solo collector generazionale)
+	public final long allocatedObjects; // oggetti allocati con alloc
+	public final long copiedObjects; // oggetti copiati tra i semispazi giovani (solo collector generazionale)
+	public final long promotedObjects; // oggetti promossi nello spazio vecchio (solo collector generazionale)
+	public final long reusedBlocks; // allocazioni soddisfatte dalle free list
+	public final long freedObjects; // oggetti liberati
+	public final long freedCells; // celle di heap liberate
+	public final int liveObjects; // oggetti vivi dopo l'ultima raccolta
+	public final int liveCells; // celle occupate da oggetti vivi dopo l'ultima raccolta
+	public final long totalPauseNanos;
+	public final long maxPauseNanos;
+
+	GCStats(int collections, int majorCollections, long allocatedObjects, long copiedObjects, long promotedObjects,
+			long reusedBlocks, long freedObjects, long freedCells, int liveObjects, int liveCells,
+			long totalPauseNanos, long maxPauseNanos) {
+		this.collections = collections;
+		this.majorCollections = majorCollections;
+		this.allocatedObjects = allocatedObjects;
+		this.copiedObjects = copiedObjects;
+		this.promotedObjects = promotedObjects;
+		this.reusedBlocks = reusedBlocks;
+		this.freedObjects = freedObjects;
+		this.freedCells = freedCells;
+		this.liveObjects = liveObjects;
+		this.liveCells = liveCells;
+		this.totalPauseNanos = totalPauseNanos;
+		this.maxPauseNanos = maxPauseNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "GC: " + collections + " collections (" + majorCollections + " major), " + allocatedObjects + " objects allocated ("
+			+ copiedObjects + " copied, " + promotedObjects + " promoted, "
+			+ reusedBlocks + " in reused blocks), " + freedObjects + " objects / " + freedCells + " cells freed, "
+			+ liveObjects + " objects / " + liveCells + " cells live after last collection, pauses "
+			+ String.format("%.3f", totalPauseNanos / 1e6) + " ms total, " + String.format("%.3f", maxPauseNanos / 1e6) + " ms max";
+	}
+}
@@ -0,0 +1,141 @@
+package svm;
+
+import java.util.*;
+
+/*
+ * GARBAGE COLLECTOR MARK-SWEEP CONSERVATIVO PER GLI OGGETTI ALLOCATI CON L'ISTRUZIONE alloc.
+ *
+ * GLI OGGETTI HANNO LO STESSO LAYOUT DEL CODICE GENERATO DA CodeGenerationASTVisitor:
+ * UN OGGETTO CON n CAMPI E' UN BLOCCO DI n+1 CELLE, CON I CAMPI AGLI OFFSET -n..-1 E IL
+ * DISPATCH POINTER ALL'OFFSET 0 (OBJECT POINTER). IL COLLECTOR REGISTRA IN DUE BITSET
+ * L'INIZIO DI OGNI BLOCCO (blocks) E IL SUO OBJECT POINTER (objects): IL NUMERO DI CAMPI
+ * E' LA DISTANZA TRA L'OBJECT POINTER E L'INIZIO DEL SUO BLOCCO. LE DISPATCH TABLE (SCRITTE
+ * CON lhp/shp) NON SONO OGGETTI E NON VENGONO MAI LIBERATE.
+ *
+ * MARK: SONO RADICI TUTTE LE CELLE DELLO STACK E I REGISTRI $tm, $ra E $fp. UN VALORE E'
+ * CONSIDERATO UN RIFERIMENTO SE E' L'OBJECT POINTER DI UN OGGETTO ALLOCATO (UN INTERO CHE
+ * CI ASSOMIGLIA TIENE IN VITA L'OGGETTO, MA NON CAUSA ERRORI); DA OGNI OGGETTO MARCATO SI
+ * SEGUONO, CON LO STESSO CRITERIO, I SUOI CAMPI.
+ * SWEEP: I BLOCCHI DEGLI OGGETTI NON MARCATI FINISCONO NELLA FREE LIST DELLA LORO
+ * DIMENSIONE (IL LINK ALLA FREE LIST E' NELLA PRIMA CELLA DEL BLOCCO). LE FREE LIST SONO
+ * SEPARATE PER DIMENSIONE ESATTA: GLI OGGETTI DI UNA CLASSE HANNO SEMPRE LA STESSA DIMENSIONE.
+ */
+final class GarbageCollector {
+
+    // CELLE DI HEAP USABILI CON IL BUMP POINTER PRIMA DELLA PRIMA RACCOLTA
+    static final int INITIAL_THRESHOLD = 1 << 16;
+
+    private final Memory memory;
+    private final int maxHeap;
+    private final BitSet blocks = new BitSet();
+    private final BitSet objects = new BitSet();
+    private final BitSet marked = new BitSet();
+    private int[] freeLists = new int[0]; // testa della free list per dimensione del blocco, -1 se vuota
+    private int threshold;
+    private int[] markStack = new int[64];
+
+    // STATISTICHE
+    private int collections;
+    private long allocatedObjects;
+    private long reusedBlocks;
+    private long freedObjects;
+    private long freedCells;
+    private int liveObjects;
+    private int liveCells;
+    private long totalPauseNanos;
+    private long maxPauseNanos;
+
+    GarbageCollector(Memory memory, int maxHeap) {
+        this.memory = memory;
+        this.maxHeap = maxHeap;
+        this.threshold = Math.min(INITIAL_THRESHOLD, maxHeap);
+    }
+
+    /*
+     * RITORNA L'INIZIO DEL BLOCCO DI size CELLE PER UN NUOVO OGGETTO: UN BLOCCO DELLA FREE
+     * LIST OPPURE, SE NON CE NE SONO, hp (IL CHIAMANTE INCREMENTA $hp). SE IL BUMP POINTER
+     * DEVE SUPERARE LA SOGLIA SI FA PRIMA UNA RACCOLTA; SE NEANCHE DOPO LA RACCOLTA C'E' UN
+     * BLOCCO LIBERO, LA SOGLIA VIENE ALZATA (FINO A maxHeap) PER NON RACCOGLIERE A OGNI alloc.
+     */
+    int allocate(int size, int hp, int sp, int tm, int ra, int fp) {
+        int block = reuse(size);
+        if (block < 0 && hp + size > threshold) {
+            collect(sp, tm, ra, fp);
+            block = reuse(size);
+            while (block < 0 && hp + size > threshold && threshold < maxHeap) threshold = (int) Math.min(2L * threshold, maxHeap);
+        }
+        if (block < 0) block = hp;
+        blocks.set(block);
+        objects.set(block + size - 1);
+        allocatedObjects++;
+        return block;
+    }
+
+    private int reuse(int size) {
+        if (size >= freeLists.length) return -1;
+        int block = freeLists[size];
+        if (block >= 0) {
+            freeLists[size] = memory.load(block);
+            reusedBlocks++;
+        }
+        return block;
+    }
+
+    private void collect(int sp, int tm, int ra, int fp) {
+        long start = System.nanoTime();
+        // MARK DELLE RADICI
+        int top = 0;
+        for (int address = sp; address < Memory.STACKBASE; address++) top = mark(memory.load(address), top);
+        top = mark(tm, top);
+        top = mark(ra, top);
+        top = mark(fp, top);
+        // MARK DEGLI OGGETTI RAGGIUNGIBILI
+        while (top > 0) {
+            int object = markStack[--top];
+            for (int field = blocks.previousSetBit(object); field < object; field++) top = mark(memory.load(field), top);
+        }
+        // SWEEP
+        liveObjects = 0;
+        liveCells = 0;
+        for (int object = objects.nextSetBit(0); object >= 0; object = objects.nextSetBit(object + 1)) {
+            int block = blocks.previousSetBit(object);
+            int size = object - block + 1;
+            if (marked.get(object)) {
+                liveObjects++;
+                liveCells += size;
+                continue;
+            }
+            objects.clear(object);
+            blocks.clear(block);
+            if (size >= freeLists.length) {
+                int old = freeLists.length;
+                freeLists = Arrays.copyOf(freeLists, size + 1);
+                Arrays.fill(freeLists, old, freeLists.length, -1);
+            }
+            memory.store(block, freeLists[size]);
+            freeLists[size] = block;
+            freedObjects++;
+            freedCells += size;
+        }
+        marked.clear();
+        // SE GLI OGGETTI VIVI OCCUPANO PIU' DI META' DELLA SOGLIA, LA SOGLIA RADDOPPIA
+        while (liveCells > threshold / 2 && threshold < maxHeap) threshold = (int) Math.min(2L * threshold, maxHeap);
+        collections++;
+        long pause = System.nanoTime() - start;
+        totalPauseNanos += pause;
+        maxPauseNanos = Math.max(maxPauseNanos, pause);
+    }
+
+    GCStats statistics() {
+        return new GCStats(collections, 0, allocatedObjects, 0, 0, reusedBlocks, freedObjects, freedCells,
+            liveObjects, liveCells, totalPauseNanos, maxPauseNanos);
+    }
+
+    private int mark(int value, int top) {
+        if (value < 0 || !objects.get(value) || marked.get(value)) return top;
+        marked.set(value);
+        if (top == markStack.length) markStack = Arrays.copyOf(markStack, top * 2);
+        markStack[top++] = value;
+        return top;
+    }
+}
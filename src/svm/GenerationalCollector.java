@@ -0,0 +1,248 @@
+package svm;
+
+import java.util.*;
+
+/*
+ * GARBAGE COLLECTOR GENERAZIONALE PRECISO, GUIDATO DALLE MAPPE EMESSE DAL COMPILATORE:
+ * - MAPPE DELLO STACK (DIRETTIVE gcmap, VEDI CodeGenerationASTVisitor): PER OGNI INDIRIZZO
+ *   DI RITORNO E OGNI alloc, IL NUMERO DI PARAMETRI DELL'AR E GLI OFFSET DA $fp DELLE CELLE
+ *   CHE CONTENGONO RIFERIMENTI. PARTENDO DALL'alloc CORRENTE SI RISALE LA CATENA DEI
+ *   CONTROL LINK (OFFSET m+1) USANDO LA MAPPA DEL RETURN ADDRESS (OFFSET -1) DI OGNI AR,
+ *   FINO ALL'AR GLOBALE ($fp = STACKBASE);
+ * - MAPPE DEI CAMPI, SCRITTE DA OGNI CLASSE SOTTO LA SUA DISPATCH TABLE: IL NUMERO DI
+ *   CAMPI n A OFFSET -1 DAL DISPATCH POINTER E, A OFFSET -1-i, 1 SE IL CAMPO i E' UN RIFERIMENTO.
+ *
+ * LO HEAP E' DIVISO IN (INDIRIZZI CRESCENTI):
+ *   AREA STATICA (DISPATCH TABLE)  [0, staticEnd)    staticEnd = $hp+1 alla prima alloc
+ *   SEMISPAZIO GIOVANE A           [staticEnd, staticEnd+YOUNG_SIZE)
+ *   SEMISPAZIO GIOVANE B           [staticEnd+YOUNG_SIZE, staticEnd+2*YOUNG_SIZE)
+ *   SPAZIO VECCHIO                 [staticEnd+2*YOUNG_SIZE, ...)
+ *
+ * GLI OGGETTI NUOVI SONO ALLOCATI NEL SEMISPAZIO GIOVANE CORRENTE CON UN BUMP POINTER.
+ * QUANDO E' PIENO (RACCOLTA MINORE) GLI OGGETTI GIOVANI RAGGIUNGIBILI DALLE RADICI VENGONO
+ * COPIATI NELL'ALTRO SEMISPAZIO E I RIFERIMENTI RISCRITTI (NEL VECCHIO OGGETTO IL DISPATCH
+ * POINTER E' SOSTITUITO DALL'INDIRIZZO DELLA COPIA: I DISPATCH POINTER SONO SEMPRE MINORI
+ * DI staticEnd); GLI OGGETTI CHE SONO GIA' SOPRAVVISSUTI A UNA RACCOLTA (IN FONDO AL
+ * SEMISPAZIO, FINO A survivorEnd) VENGONO PROMOSSI NELLO SPAZIO VECCHIO.
+ * I CAMPI DEGLI OGGETTI FOOL SONO SCRITTI SOLO DA alloc, QUINDI UN OGGETTO PUO' RIFERIRE
+ * SOLO OGGETTI ALLOCATI PRIMA DI LUI, CHE SONO SOPRAVVISSUTI ALMENO ALLE STESSE RACCOLTE:
+ * QUANDO UN OGGETTO VIENE PROMOSSO LO SONO ANCHE GLI OGGETTI CHE RIFERISCE, E NESSUN
+ * OGGETTO VECCHIO RIFERISCE MAI UN OGGETTO GIOVANE. NON SERVONO QUINDI BARRIERE IN
+ * SCRITTURA NE' REMEMBERED SET, E UNA RACCOLTA MINORE VISITA SOLO STACK E OGGETTI GIOVANI.
+ *
+ * LO SPAZIO VECCHIO NON E' COPIATO: I BLOCCHI SONO ALLOCATI DA FREE LIST SEPARATE PER
+ * DIMENSIONE OPPURE IN CIMA ALLO SPAZIO. QUANDO LE CELLE PROMOSSE DALL'ULTIMA RACCOLTA
+ * MAGGIORE SUPERANO UNA SOGLIA, DOPO LA RACCOLTA MINORE SI FA UNA RACCOLTA MAGGIORE
+ * (MARK-SWEEP PRECISO DI TUTTI GLI OGGETTI RAGGIUNGIBILI, CON GLI OGGETTI VECCHI NON MARCATI
+ * CHE TORNANO NELLE FREE LIST); LA SOGLIA RADDOPPIA SE GLI OGGETTI VECCHI VIVI OCCUPANO
+ * PIU' DI META' DELLA SOGLIA.
+ */
+final class GenerationalCollector {
+
+    static final int YOUNG_SIZE = 1 << 16;
+    // CELLE PROMOSSE NELLO SPAZIO VECCHIO DOPO LE QUALI SI FA UNA RACCOLTA MAGGIORE
+    static final int INITIAL_MAJOR_THRESHOLD = 1 << 18;
+
+    private final Memory memory;
+    private final int maxHeap;
+    private final Map<Integer, int[]> stackMaps;
+
+    private boolean initialized;
+    private int staticEnd;
+    private int fromStart; // semispazio giovane corrente
+    private int toStart;
+    private int youngTop; // bump pointer
+    private int survivorEnd; // [fromStart, survivorEnd): oggetti sopravvissuti a una raccolta
+    private int oldTop;
+    private int majorThreshold;
+    private int promotedCells; // celle promosse dall'ultima raccolta maggiore
+    private int[] freeLists = new int[0]; // testa della free list per dimensione del blocco, -1 se vuota
+    private final BitSet oldObjects = new BitSet(); // object pointer degli oggetti vecchi
+    private final BitSet marked = new BitSet();
+    private int[] work = new int[64]; // oggetti copiati/marcati da visitare
+    private int workTop;
+    private int copyTop; // prima cella libera del semispazio di destinazione
+
+    // STATISTICHE
+    private int minorCollections;
+    private int majorCollections;
+    private long allocatedObjects;
+    private long copiedObjects;
+    private long promotedObjects;
+    private long reusedBlocks;
+    private long freedObjects;
+    private long freedCells;
+    private int liveObjects;
+    private int liveCells;
+    private long totalPauseNanos;
+    private long maxPauseNanos;
+
+    GenerationalCollector(Memory memory, int maxHeap, Map<Integer, int[]> stackMaps) {
+        this.memory = memory;
+        this.maxHeap = maxHeap;
+        this.stackMaps = stackMaps;
+    }
+
+    // RITORNA L'INIZIO DEL BLOCCO DI size CELLE PER UN NUOVO OGGETTO, ALLOCATO NELL'alloc
+    // ALL'INDIRIZZO site CON I REGISTRI $sp E $fp
+    int allocate(int size, int hp, int site, int fp) {
+        if (!initialized) initialize(hp);
+        if (size > YOUNG_SIZE) throw new IllegalStateException("Object of " + size + " cells larger than the young space");
+        if (youngTop + size > fromStart + YOUNG_SIZE) {
+            long start = System.nanoTime();
+            minor(site, fp);
+            // SE NON C'E' ANCORA SPAZIO, UNA SECONDA RACCOLTA PROMUOVE TUTTI I SOPRAVVISSUTI
+            if (youngTop + size > fromStart + YOUNG_SIZE) minor(site, fp);
+            if (promotedCells > majorThreshold) major(site, fp);
+            long pause = System.nanoTime() - start;
+            totalPauseNanos += pause;
+            maxPauseNanos = Math.max(maxPauseNanos, pause);
+        }
+        int block = youngTop;
+        youngTop += size;
+        allocatedObjects++;
+        return block;
+    }
+
+    GCStats statistics() {
+        return new GCStats(minorCollections + majorCollections, majorCollections, allocatedObjects, copiedObjects,
+            promotedObjects, reusedBlocks, freedObjects, freedCells, liveObjects, liveCells, totalPauseNanos, maxPauseNanos);
+    }
+
+    // LE DISPATCH TABLE SONO SCRITTE CON lhp/shp PRIMA DELLA PRIMA alloc. LA CELLA $hp RESTA
+    // NELL'AREA STATICA: E' IL DISPATCH POINTER DI UNA CLASSE SENZA METODI (DISPATCH TABLE VUOTA)
+    private void initialize(int hp) {
+        initialized = true;
+        staticEnd = hp + 1;
+        fromStart = staticEnd;
+        toStart = staticEnd + YOUNG_SIZE;
+        youngTop = survivorEnd = fromStart;
+        oldTop = staticEnd + 2 * YOUNG_SIZE;
+        majorThreshold = INITIAL_MAJOR_THRESHOLD;
+    }
+
+    // RACCOLTA MINORE: COPIA (O PROMUOVE) GLI OGGETTI GIOVANI RAGGIUNGIBILI
+    private void minor(int site, int fp) {
+        copyTop = toStart;
+        workTop = 0;
+        walkStack(site, fp, true);
+        while (workTop > 0) {
+            int object = work[--workTop];
+            int dispatch = memory.load(object);
+            int fields = memory.load(dispatch - 1);
+            for (int i = 1; i <= fields; i++)
+                if (memory.load(dispatch - 1 - i) != 0) memory.store(object - i, forward(memory.load(object - i)));
+        }
+        int swap = fromStart;
+        fromStart = toStart;
+        toStart = swap;
+        youngTop = survivorEnd = copyTop;
+        minorCollections++;
+    }
+
+    // NUOVO INDIRIZZO DEL RIFERIMENTO value (COPIANDO L'OGGETTO SE E' GIOVANE E NON ANCORA COPIATO)
+    private int forward(int value) {
+        if (value < fromStart || value >= fromStart + YOUNG_SIZE) return value; // null, oggetto vecchio
+        int dispatch = memory.load(value);
+        if (dispatch >= staticEnd) return dispatch; // gia' copiato: indirizzo della copia
+        int fields = memory.load(dispatch - 1);
+        int block = value - fields;
+        int copy;
+        // PROMOZIONE DEI SOPRAVVISSUTI E DEGLI OGGETTI CHE NON STANNO NEL SEMISPAZIO DI DESTINAZIONE
+        if (block < survivorEnd || copyTop + fields + 1 > toStart + YOUNG_SIZE) {
+            copy = allocateOld(fields + 1);
+            oldObjects.set(copy + fields);
+            promotedObjects++;
+            promotedCells += fields + 1;
+        } else {
+            copy = copyTop;
+            copyTop += fields + 1;
+            copiedObjects++;
+        }
+        for (int i = 0; i <= fields; i++) memory.store(copy + i, memory.load(block + i));
+        memory.store(value, copy + fields);
+        push(copy + fields);
+        return copy + fields;
+    }
+
+    private int allocateOld(int size) {
+        if (size < freeLists.length && freeLists[size] >= 0) {
+            int block = freeLists[size];
+            freeLists[size] = memory.load(block);
+            reusedBlocks++;
+            return block;
+        }
+        int block = oldTop;
+        oldTop += size;
+        return block;
+    }
+
+    // RACCOLTA MAGGIORE: MARCA TUTTI GLI OGGETTI RAGGIUNGIBILI E LIBERA GLI OGGETTI VECCHI NON MARCATI
+    private void major(int site, int fp) {
+        workTop = 0;
+        walkStack(site, fp, false);
+        while (workTop > 0) {
+            int object = work[--workTop];
+            int dispatch = memory.load(object);
+            int fields = memory.load(dispatch - 1);
+            for (int i = 1; i <= fields; i++)
+                if (memory.load(dispatch - 1 - i) != 0) mark(memory.load(object - i));
+        }
+        liveObjects = 0;
+        liveCells = 0;
+        for (int object = oldObjects.nextSetBit(0); object >= 0; object = oldObjects.nextSetBit(object + 1)) {
+            int size = memory.load(memory.load(object) - 1) + 1;
+            if (marked.get(object)) {
+                liveObjects++;
+                liveCells += size;
+                continue;
+            }
+            oldObjects.clear(object);
+            int block = object - size + 1;
+            if (size >= freeLists.length) {
+                int old = freeLists.length;
+                freeLists = Arrays.copyOf(freeLists, size + 1);
+                Arrays.fill(freeLists, old, freeLists.length, -1);
+            }
+            memory.store(block, freeLists[size]);
+            freeLists[size] = block;
+            freedObjects++;
+            freedCells += size;
+        }
+        marked.clear();
+        while (liveCells > majorThreshold / 2 && majorThreshold < maxHeap) majorThreshold *= 2;
+        promotedCells = 0;
+        majorCollections++;
+    }
+
+    private void mark(int value) {
+        if (value < staticEnd || marked.get(value)) return; // null
+        marked.set(value);
+        push(value);
+    }
+
+    /*
+     * VISITA LE CELLE DELLO STACK CHE CONTENGONO RIFERIMENTI: CON update LE RISCRIVE CON
+     * IL NUOVO INDIRIZZO (RACCOLTA MINORE), ALTRIMENTI MARCA GLI OGGETTI (RACCOLTA MAGGIORE)
+     */
+    private void walkStack(int site, int fp, boolean update) {
+        int address = site;
+        while (true) {
+            int[] map = stackMaps.get(address);
+            if (map == null) throw new IllegalStateException("Missing stack map for code address " + address);
+            for (int k = 1; k < map.length; k++) {
+                int slot = fp + map[k];
+                if (update) memory.store(slot, forward(memory.load(slot)));
+                else mark(memory.load(slot));
+            }
+            if (fp == Memory.STACKBASE) return; // AR globale
+            address = memory.load(fp - 1); // Return Address
+            fp = memory.load(fp + map[0] + 1); // Control Link
+        }
+    }
+
+    private void push(int object) {
+        if (workTop == work.length) work = Arrays.copyOf(work, workTop * 2);
+        work[workTop++] = object;
+    }
+}
@@ -0,0 +1,88 @@
+package svm;
+
+import java.util.*;
+
+/*
+ * INLINE CACHE DELL'ISTRUZIONE dispatch k, INDICIZZATA PER INDIRIZZO DEL SITO DI CHIAMATA.
+ *
+ * SENZA CACHE L'INDIRIZZO DEL METODO RICHIEDE DUE LOAD DIPENDENTI DOPO QUELLO DELL'OGGETTO:
+ * DISPATCH POINTER -> CELLA k DELLA DISPATCH TABLE. LE DISPATCH TABLE SONO SCRITTE UNA
+ * SOLA VOLTA ALL'INIZIO DEL PROGRAMMA (ClassNode) E NON CAMBIANO PIU', QUINDI LA COPPIA
+ * (DISPATCH POINTER, INDIRIZZO DEL METODO) VISTA IN UN SITO RESTA VALIDA PER SEMPRE.
+ * - CASO MONOMORFICO: OGNI SITO RICORDA L'ULTIMO DISPATCH POINTER E IL SUO METODO;
+ * - CASO POLIMORFICO: SE IL DISPATCH POINTER E' DIVERSO SI CERCA TRA ALTRE
+ *   POLYMORPHIC_ENTRIES COPPIE DEL SITO, SCAMBIANDO QUELLA TROVATA CON LA MONOMORFICA;
+ * - MISS: SI LEGGE LA DISPATCH TABLE E LA VECCHIA COPPIA MONOMORFICA PASSA NELLA PARTE
+ *   POLIMORFICA (AL POSTO DELLA PIU' VECCHIA SE E' PIENA).
+ */
+final class InlineCache {
+
+    static final int POLYMORPHIC_ENTRIES = 4;
+
+    private final Memory memory;
+    private final int[] dispatchPointers; // per sito, -1 se il sito non e' mai stato eseguito
+    private final int[] targets;
+    private final int[][] polymorphic; // per sito: {dispatch pointer, metodo}*, allocato al primo miss
+    private final int[] polymorphicSize;
+
+    // STATISTICHE
+    private long monomorphicHits;
+    private long polymorphicHits;
+    private long misses;
+
+    InlineCache(Memory memory, int codeSize) {
+        this.memory = memory;
+        this.dispatchPointers = new int[codeSize];
+        this.targets = new int[codeSize];
+        this.polymorphic = new int[codeSize][];
+        this.polymorphicSize = new int[codeSize];
+        Arrays.fill(dispatchPointers, -1);
+    }
+
+    // INDIRIZZO DEL METODO ALL'OFFSET offset DELLA DISPATCH TABLE dispatch, CHIAMATO DAL SITO site
+    int lookup(int site, int dispatch, int offset) {
+        if (dispatchPointers[site] == dispatch) {
+            monomorphicHits++;
+            return targets[site];
+        }
+        return lookupPolymorphic(site, dispatch, offset);
+    }
+
+    private int lookupPolymorphic(int site, int dispatch, int offset) {
+        int[] entries = polymorphic[site];
+        int size = polymorphicSize[site];
+        int target;
+        int k = 0;
+        while (k < size && entries[2 * k] != dispatch) k++;
+        if (k < size) {
+            polymorphicHits++;
+            target = entries[2 * k + 1];
+        } else {
+            misses++;
+            target = memory.load(dispatch + offset);
+            if (dispatchPointers[site] < 0) { // primo passaggio dal sito
+                dispatchPointers[site] = dispatch;
+                targets[site] = target;
+                return target;
+            }
+            if (entries == null) entries = polymorphic[site] = new int[2 * POLYMORPHIC_ENTRIES];
+            if (size < POLYMORPHIC_ENTRIES) polymorphicSize[site] = ++size;
+            else System.arraycopy(entries, 2, entries, 0, 2 * (POLYMORPHIC_ENTRIES - 1)); // scarta la piu' vecchia
+            k = size - 1;
+        }
+        entries[2 * k] = dispatchPointers[site];
+        entries[2 * k + 1] = targets[site];
+        dispatchPointers[site] = dispatch;
+        targets[site] = target;
+        return target;
+    }
+
+    InlineCacheStats statistics() {
+        int sites = 0, polymorphicSites = 0;
+        for (int site = 0; site < dispatchPointers.length; site++) {
+            if (dispatchPointers[site] >= 0) sites++;
+            if (polymorphicSize[site] > 0) polymorphicSites++;
+        }
+        return new InlineCacheStats(sites, polymorphicSites, monomorphicHits, polymorphicHits, misses);
+    }
+}
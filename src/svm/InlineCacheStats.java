@@ -0,0 +1,27 @@
+package svm;
+
+/*
+ * STATISTICHE DELLE INLINE CACHE DI ExecuteVM (VEDI ExecuteVM.getInlineCacheStats)
+ */
+public class InlineCacheStats {
+
+	public final int sites; // siti di chiamata eseguiti
+	public final int polymorphicSites; // siti che hanno visto piu' di un dispatch pointer
+	public final long monomorphicHits;
+	public final long polymorphicHits;
+	public final long misses; // ricerche nella dispatch table
+
+	InlineCacheStats(int sites, int polymorphicSites, long monomorphicHits, long polymorphicHits, long misses) {
+		this.sites = sites;
+		this.polymorphicSites = polymorphicSites;
+		this.monomorphicHits = monomorphicHits;
+		this.polymorphicHits = polymorphicHits;
+		this.misses = misses;
+	}
+
+	@Override
+	public String toString() {
+		return "Inline caches: " + sites + " call sites (" + polymorphicSites + " polymorphic), "
+			+ monomorphicHits + " monomorphic hits, " + polymorphicHits + " polymorphic hits, " + misses + " misses";
+	}
+}
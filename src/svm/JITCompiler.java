@@ -0,0 +1,730 @@
+package svm;
+
+import java.io.*;
+import java.lang.invoke.*;
+import java.util.*;
+
+/*
+ * TRADUCE IL CODICE ASSEMBLATO DELLA SVM IN BYTECODE JVM, CARICATO COME HIDDEN CLASS
+ * (MethodHandles.Lookup.defineHiddenClass) NESTMATE DI ExecuteVM, COSI' HOTSPOT PUO'
+ * COMPILARE IN CODICE NATIVO I PROGRAMMI FOOL.
+ *
+ * IL CODICE VIENE DIVISO IN REGIONI: UNA REGIONE INIZIA A OGNI INDIRIZZO CARICATO CON
+ * "push label" (INGRESSO DI FUNZIONI E METODI) E NON SUPERA MAX_REGION ISTRUZIONI.
+ * OGNI REGIONE DIVENTA UN METODO STATICO int rK(ExecuteVM vm, int ip) CHE:
+ * - COPIA I REGISTRI IN VARIABILI LOCALI;
+ * - SALTA (DISPATCH LOCALE) AL LEADER ip;
+ * - ESEGUE LE ISTRUZIONI TRADOTTE, CON I SALTI DIRETTI (b, beq, bleq) TRADOTTI IN goto;
+ * - SU js E jump (DESTINAZIONE INDIRETTA) RIPETE IL DISPATCH LOCALE E, SE LA DESTINAZIONE NON
+ *   E' NELLA REGIONE, RISCRIVE I REGISTRI IN vm E RITORNA L'INDIRIZZO DI DESTINAZIONE.
+ * IL METODO run(ExecuteVM vm, int ip) E' IL TRAMPOLINO CHE SCEGLIE LA REGIONE DEL
+ * LEADER ip. UN INDIRIZZO CHE NON E' UN LEADER (SALTO IN MEZZO AD UN'ISTRUZIONE) FA
+ * RITORNARE run A ExecuteVM, CHE PROSEGUE CON L'INTERPRETE: IL RISULTATO E' SEMPRE
+ * IDENTICO A QUELLO DI cpu().
+ * UN CODICE VIENE TRADOTTO SOLO DOPO THRESHOLD INGRESSI NELLE FUNZIONI INTERPRETATI
+ * (VEDI ExecuteVM.cpuJIT).
+ */
+final class JITCompiler {
+
+    // VALORE RITORNATO DA run QUANDO IL PROGRAMMA ESEGUE halt
+    static final int HALTED = Integer.MIN_VALUE;
+
+    private static final int MAX_REGION = 1000; // ISTRUZIONI SVM PER REGIONE (I goto JVM HANNO OFFSET A 16 BIT)
+
+    private static final String CLASS_NAME = "svm/JITCode";
+    private static final String VM_CLASS = "svm/ExecuteVM";
+    private static final String MEMORY_CLASS = "svm/Memory";
+    private static final String REGION_DESC = "(L" + VM_CLASS + ";I)I";
+
+    // I CODICI GIA' TRADOTTI SONO RIUSATI, COSI' IL CODICE NATIVO PRODOTTO DA HOTSPOT NON SI PERDE
+    private static final Map<int[], MethodHandle> cache = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // INGRESSI NELLE FUNZIONI (INIZI DI REGIONE) DA INTERPRETARE PRIMA DI TRADURRE UN CODICE:
+    // LA TRADUZIONE COSTA 20-30 ms, PIU' DELL'INTERA ESECUZIONE DI UN PROGRAMMA BREVE, CHE NON LA
+    // RIPAGA. LA SOGLIA E' BASSA PERCHE' A JVM FREDDA ANCHE L'INTERPRETE E' LENTO: OGNI CHIAMATA
+    // INTERPRETATA IN PIU' RITARDA I PROGRAMMI LUNGHI (MODIFICABILE CON -Dsvm.jitthreshold=n)
+    static final int THRESHOLD = Integer.getInteger("svm.jitthreshold", 10_000);
+    // INGRESSI GIA' INTERPRETATI PER OGNI CODICE NON ANCORA TRADOTTO (SOMMATI SU TUTTE LE ESECUZIONI)
+    private static final Map<int[], Integer> counts = Collections.synchronizedMap(new WeakHashMap<>());
+    // INDIRIZZI DI INGRESSO DELLE FUNZIONI DI OGNI CODICE NON ANCORA TRADOTTO
+    private static final Map<int[], boolean[]> entries = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private JITCompiler() {}
+
+    // RITORNA UN METHOD HANDLE (ExecuteVM,int)int OPPURE null SE IL CODICE NON PUO' ESSERE TRADOTTO
+    static MethodHandle compile(int[] code, MethodHandles.Lookup lookup) {
+        MethodHandle run = cache.get(code);
+        if (run != null) return run;
+        if (code.length == 0) return null;
+        try {
+            byte[] classFile = new JITCompiler.Translator(code).translate();
+            MethodHandles.Lookup hidden = lookup.defineHiddenClass(classFile, true, MethodHandles.Lookup.ClassOption.NESTMATE);
+            run = hidden.findStatic(hidden.lookupClass(), "run", MethodType.methodType(int.class, ExecuteVM.class, int.class));
+        } catch (IOException | ReflectiveOperationException | LinkageError | IllegalArgumentException e) {
+            return null;
+        }
+        cache.put(code, run);
+        counts.remove(code);
+        entries.remove(code);
+        return run;
+    }
+
+    // CODICE GIA' TRADOTTO, null SE code NON E' ANCORA STATO TRADOTTO
+    static MethodHandle compiled(int[] code) {
+        return cache.get(code);
+    }
+
+    // INGRESSI NELLE FUNZIONI CHE code PUO' ANCORA INTERPRETARE PRIMA DELLA TRADUZIONE
+    static int budget(int[] code) {
+        return Math.max(0, THRESHOLD - counts.getOrDefault(code, 0));
+    }
+
+    // REGISTRA entries INGRESSI NELLE FUNZIONI INTERPRETATI DA code
+    static void interpreted(int[] code, int entries) {
+        counts.merge(code, entries, Integer::sum);
+    }
+
+    // INDIRIZZI DI INGRESSO DI FUNZIONI E METODI (INIZI DI REGIONE CARICATI CON "push label")
+    static boolean[] functionEntries(int[] code) {
+        return entries.computeIfAbsent(code, c -> new Translator(c).pushed);
+    }
+
+    // NUMERO DI OPERANDI CHE SEGUONO IL BYTECODE IN code[]
+    private static int operands(int bytecode) {
+        switch (bytecode) {
+            case SVMParser.PUSH:
+            case SVMParser.BRANCH:
+            case SVMParser.BRANCHEQ:
+            case SVMParser.BRANCHLESSEQ:
+            case SVMParser.LOADLOCAL:
+            case SVMParser.ALLOC:
+            case SVMParser.DISPATCH:
+            case SVMParser.ENTER:
+            case SVMParser.LEAVE:
+            case SVMParser.LOADDISPLAY:
+                return 1;
+            case SVMParser.LOADUP:
+            case SVMParser.SLIDE:
+            case SVMParser.LOADLEVEL:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    // SOLO push E I SALTI HANNO COME OPERANDO UN INDIRIZZO DEL CODICE
+    private static boolean hasAddress(int bytecode) {
+        return bytecode == SVMParser.PUSH || bytecode == SVMParser.BRANCH
+            || bytecode == SVMParser.BRANCHEQ || bytecode == SVMParser.BRANCHLESSEQ;
+    }
+
+    private static final class Translator {
+
+        // VARIABILI LOCALI DEI METODI DELLE REGIONI
+        private static final int VM = 0, IP = 1, MEM = 2, SP = 3, FP = 4, HP = 5, RA = 6, TM = 7, V1 = 8, V2 = 9;
+
+        private final int[] code;
+        private final int length;
+        private final boolean[] isStart;
+        private final boolean[] isLeader;
+        private final int[] regionOf;
+        private final List<Integer> regionStarts = new ArrayList<>();
+        private boolean[] pushed; // INDIRIZZI CARICATI CON "push label"
+        private final ConstantPool cp = new ConstantPool();
+
+        Translator(int[] code) {
+            this.code = code;
+            // GLI ZERI FINALI DI code[] (CODESIZE) SONO ESEGUITI DALL'INTERPRETE DOPO L'USCITA DAL CODICE TRADOTTO
+            int last = code.length - 1;
+            while (last >= 0 && code[last] == 0) last--;
+            int n = 0;
+            while (n <= last) n += 1 + operands(code[n]);
+            this.length = Math.min(n, code.length);
+            this.isStart = new boolean[length + 1];
+            this.isLeader = new boolean[length + 1];
+            this.regionOf = new int[length + 1];
+            findLeaders();
+            findRegions();
+        }
+
+        private void findLeaders() {
+            for (int i = 0; i < length; ) {
+                isStart[i] = true;
+                i += 1 + operands(code[i]);
+            }
+            isLeader[0] = true;
+            for (int i = 0; i < length; i = next(i)) {
+                int bytecode = code[i];
+                if (hasAddress(bytecode) && i + 1 < length) markLeader(code[i + 1]);
+                if (bytecode == SVMParser.JS || bytecode == SVMParser.JUMP || bytecode == SVMParser.BRANCH || bytecode == SVMParser.HALT)
+                    markLeader(next(i));
+            }
+        }
+
+        private void markLeader(int address) {
+            if (address >= 0 && address < length && isStart[address]) isLeader[address] = true;
+        }
+
+        private int next(int i) {
+            return i + 1 + operands(code[i]);
+        }
+
+        private void findRegions() {
+            pushed = new boolean[length + 1];
+            for (int i = 0; i < length; i = next(i))
+                if (code[i] == SVMParser.PUSH && i + 1 < length) {
+                    int target = code[i + 1];
+                    if (target >= 0 && target < length && isStart[target]) pushed[target] = true;
+                }
+            int count = 0;
+            for (int i = 0; i < length; i = next(i)) {
+                if (i == 0 || pushed[i] || count == MAX_REGION) {
+                    regionStarts.add(i);
+                    isLeader[i] = true;
+                    count = 0;
+                }
+                regionOf[i] = regionStarts.size() - 1;
+                count++;
+            }
+            regionStarts.add(length);
+        }
+
+        byte[] translate() throws IOException {
+            List<MethodInfo> methods = new ArrayList<>();
+            methods.add(trampoline());
+            for (int r = 0; r < regionStarts.size() - 1; r++) methods.add(region(r));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            int thisClass = cp.classRef(CLASS_NAME);
+            int superClass = cp.classRef("java/lang/Object");
+            int codeAttr = cp.utf8("Code");
+            int stackMapAttr = cp.utf8("StackMapTable");
+            for (MethodInfo m : methods) { m.nameIndex = cp.utf8(m.name); m.descIndex = cp.utf8(m.desc); }
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(55); // JAVA 11: STACK MAP FRAMES OBBLIGATORI
+            cp.write(out);
+            out.writeShort(0x0030); // ACC_FINAL | ACC_SUPER
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfacce
+            out.writeShort(0); // campi
+            out.writeShort(methods.size());
+            for (MethodInfo m : methods) m.write(out, codeAttr, stackMapAttr);
+            out.writeShort(0); // attributi
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        /*
+         * int run(ExecuteVM vm, int ip):
+         * DISPATCH: switch (ip) { case leader della regione K: ip = rK(vm, ip); if (ip != HALTED) goto DISPATCH; return HALTED; }
+         * default: return ip (L'INTERPRETE PROSEGUE DA ip)
+         */
+        private MethodInfo trampoline() {
+            Bytecode b = new Bytecode(new int[] {cp.classRef(VM_CLASS), -1}, 2);
+            int dispatch = b.newLabel(), fallback = b.newLabel();
+            int[] regionLabels = new int[regionStarts.size() - 1];
+            for (int r = 0; r < regionLabels.length; r++) regionLabels[r] = b.newLabel();
+            List<Integer> keys = new ArrayList<>();
+            List<Integer> targets = new ArrayList<>();
+            for (int i = 0; i < length; i++)
+                if (isLeader[i]) { keys.add(i); targets.add(regionLabels[regionOf[i]]); }
+
+            b.place(dispatch);
+            b.iload(IP);
+            b.lookupswitch(keys, targets, fallback);
+            for (int r = 0; r < regionLabels.length; r++) {
+                b.place(regionLabels[r]);
+                b.aload(VM);
+                b.iload(IP);
+                b.op(0xb8); b.u2(cp.methodRef(CLASS_NAME, "r" + r, REGION_DESC)); // invokestatic
+                b.istore(IP);
+                b.iload(IP);
+                b.iconst(HALTED);
+                b.jump(0xa0, dispatch); // if_icmpne
+                b.iconst(HALTED);
+                b.op(0xac); // ireturn
+            }
+            b.place(fallback);
+            b.iload(IP);
+            b.op(0xac); // ireturn
+            return new MethodInfo("run", REGION_DESC, b);
+        }
+
+        private MethodInfo region(int r) {
+            int start = regionStarts.get(r), end = regionStarts.get(r + 1);
+            Bytecode b = new Bytecode(new int[] {cp.classRef(VM_CLASS), -1, cp.classRef(MEMORY_CLASS), -1, -1, -1, -1, -1}, 8);
+            int dispatch = b.newLabel(), exit = b.newLabel();
+            int[] labels = new int[end - start];
+            List<Integer> keys = new ArrayList<>();
+            List<Integer> targets = new ArrayList<>();
+            for (int i = start; i < end; i++)
+                if (isLeader[i]) {
+                    labels[i - start] = b.newLabel();
+                    keys.add(i);
+                    targets.add(labels[i - start]);
+                }
+
+            // CARICAMENTO DEI REGISTRI
+            b.aload(VM); b.getfield("memory", "L" + MEMORY_CLASS + ";"); b.astore(MEM);
+            b.aload(VM); b.getfield("sp", "I"); b.istore(SP);
+            b.aload(VM); b.getfield("fp", "I"); b.istore(FP);
+            b.aload(VM); b.getfield("hp", "I"); b.istore(HP);
+            b.aload(VM); b.getfield("ra", "I"); b.istore(RA);
+            b.aload(VM); b.getfield("tm", "I"); b.istore(TM);
+            b.place(dispatch);
+            b.iload(IP);
+            b.lookupswitch(keys, targets, exit);
+
+            for (int i = start; i < end; i = next(i)) {
+                if (isLeader[i]) b.place(labels[i - start]);
+                int operand = i + 1 < code.length ? code[i + 1] : 0;
+                int operand2 = i + 2 < code.length ? code[i + 2] : 0;
+                switch (code[i]) {
+                    case SVMParser.PUSH: // memory[--sp] = operand
+                        b.iinc(SP, -1); b.aload(MEM); b.iload(SP); b.iconst(operand); store(b);
+                        break;
+                    case SVMParser.POP:
+                        b.iinc(SP, 1);
+                        break;
+                    case SVMParser.ADD:
+                        binary(b, 0x60);
+                        break;
+                    case SVMParser.SUB:
+                        binary(b, 0x64);
+                        break;
+                    case SVMParser.MULT:
+                        binary(b, 0x68);
+                        break;
+                    case SVMParser.DIV:
+                        binary(b, 0x6c);
+                        break;
+                    case SVMParser.STOREW: // address = pop(); memory[address] = pop();
+                        pop(b, V1);
+                        b.aload(MEM); b.iload(V1); b.aload(MEM); b.iload(SP); load(b);
+                        b.iinc(SP, 1); store(b);
+                        break;
+                    case SVMParser.LOADW: // memory[sp] = memory[memory[sp]]
+                        b.aload(MEM); b.iload(SP); b.aload(MEM); b.aload(MEM); b.iload(SP); load(b); load(b); store(b);
+                        break;
+                    case SVMParser.BRANCH:
+                        jumpTo(b, 0xa7, operand, start, end, labels, exit);
+                        break;
+                    case SVMParser.BRANCHEQ:
+                        pop(b, V1); pop(b, V2);
+                        b.iload(V2); b.iload(V1);
+                        jumpTo(b, 0x9f, operand, start, end, labels, exit); // if_icmpeq
+                        break;
+                    case SVMParser.BRANCHLESSEQ:
+                        pop(b, V1); pop(b, V2);
+                        b.iload(V2); b.iload(V1);
+                        jumpTo(b, 0xa4, operand, start, end, labels, exit); // if_icmple
+                        break;
+                    case SVMParser.EQUAL: // v1 = pop(); v2 = pop(); push(v2 == v1 ? 1 : 0)
+                        pop(b, V1); pop(b, V2); b.iload(V2); b.iload(V1);
+                        condition(b, 0x9f); // if_icmpeq
+                        break;
+                    case SVMParser.LESSEQ:
+                        pop(b, V1); pop(b, V2); b.iload(V2); b.iload(V1);
+                        condition(b, 0xa4); // if_icmple
+                        break;
+                    case SVMParser.LESS:
+                        pop(b, V1); pop(b, V2); b.iload(V2); b.iload(V1);
+                        condition(b, 0xa1); // if_icmplt
+                        break;
+                    case SVMParser.NOT: // v1 = pop(); push(v1 == 0 ? 1 : 0)
+                        pop(b, V1); b.iload(V1);
+                        condition(b, 0x99); // ifeq
+                        break;
+                    case SVMParser.AND:
+                        binary(b, 0x7e); // iand
+                        break;
+                    case SVMParser.OR:
+                        binary(b, 0x80); // ior
+                        break;
+                    case SVMParser.JS: // ra = ip; ip = pop(); DISPATCH
+                        b.iconst(i + 1); b.istore(RA);
+                        pop(b, IP);
+                        b.jump(0xa7, dispatch);
+                        break;
+                    case SVMParser.JUMP: // ip = pop(); DISPATCH (ra NON CAMBIA)
+                        pop(b, IP);
+                        b.jump(0xa7, dispatch);
+                        break;
+                    case SVMParser.STORERA:
+                        pop(b, RA);
+                        break;
+                    case SVMParser.LOADRA:
+                        push(b, RA);
+                        break;
+                    case SVMParser.STORETM:
+                        pop(b, TM);
+                        break;
+                    case SVMParser.LOADTM:
+                        push(b, TM);
+                        break;
+                    case SVMParser.LOADFP:
+                        push(b, FP);
+                        break;
+                    case SVMParser.STOREFP:
+                        pop(b, FP);
+                        break;
+                    case SVMParser.COPYFP:
+                        b.iload(SP); b.istore(FP);
+                        break;
+                    case SVMParser.STOREHP:
+                        pop(b, HP);
+                        break;
+                    case SVMParser.LOADHP:
+                        push(b, HP);
+                        break;
+                    case SVMParser.PRINT:
+                        b.aload(MEM); b.iload(SP);
+                        b.op(0xb8); b.u2(cp.methodRef(VM_CLASS, "print", "(L" + MEMORY_CLASS + ";I)V")); // invokestatic
+                        break;
+                    case SVMParser.HALT:
+                        b.aload(VM); b.iconst(i + 1); b.putfield("ip", "I");
+                        b.iconst(HALTED); b.istore(IP);
+                        b.jump(0xa7, exit);
+                        break;
+                    case SVMParser.ALLOC: // vm.alloc(n, i), CON I REGISTRI RISCRITTI IN vm (RADICI DEL GARBAGE COLLECTOR)
+                        storeRegisters(b);
+                        b.aload(VM); b.iconst(operand); b.iconst(i);
+                        b.op(0xb6); b.u2(cp.methodRef(VM_CLASS, "alloc", "(II)V")); // invokevirtual (metodo privato di un nestmate)
+                        b.aload(VM); b.getfield("sp", "I"); b.istore(SP);
+                        b.aload(VM); b.getfield("hp", "I"); b.istore(HP);
+                        break;
+                    case SVMParser.LOADLOCAL: // memory[--sp] = memory[fp + k]
+                        b.iinc(SP, -1); b.aload(MEM); b.iload(SP); b.aload(MEM); b.iload(FP); b.iconst(operand); b.op(0x60); load(b); store(b);
+                        break;
+                    case SVMParser.LOADUP: // a = fp; a = memory[a] (d volte); memory[--sp] = memory[a + k]
+                        if (operand < 0 || operand > 64) throw new IllegalArgumentException("Static chain too deep");
+                        b.iload(FP); b.istore(V1);
+                        for (int d = 0; d < operand; d++) { b.aload(MEM); b.iload(V1); load(b); b.istore(V1); }
+                        b.iinc(SP, -1); b.aload(MEM); b.iload(SP); b.aload(MEM); b.iload(V1); b.iconst(operand2); b.op(0x60); load(b); store(b);
+                        break;
+                    case SVMParser.SLIDE: // memory[fp + o - j] = memory[sp + n - 1 - j] (j = 0..n-1); sp = fp + o - n + 1
+                        if (operand < 0 || operand > 256) throw new IllegalArgumentException("Too many cells to slide");
+                        for (int j = 0; j < operand; j++) {
+                            b.aload(MEM); b.iload(FP); b.iconst(operand2 - j); b.op(0x60);
+                            b.aload(MEM); b.iload(SP); b.iconst(operand - 1 - j); b.op(0x60); load(b); store(b);
+                        }
+                        b.iload(FP); b.iconst(operand2 - operand + 1); b.op(0x60); b.istore(SP);
+                        break;
+                    case SVMParser.DUPTOP: // tm = memory[sp]; memory[--sp] = tm
+                        b.aload(MEM); b.iload(SP); load(b); b.istore(TM);
+                        push(b, TM);
+                        break;
+                    case SVMParser.BUMPHP:
+                        b.iinc(HP, 1);
+                        break;
+                    case SVMParser.DISPATCH: // memory[sp] = vm.dispatch(memory[sp], k, i)
+                        b.aload(MEM); b.iload(SP); b.aload(VM); b.aload(MEM); b.iload(SP); load(b); b.iconst(operand); b.iconst(i);
+                        b.op(0xb6); b.u2(cp.methodRef(VM_CLASS, "dispatch", "(III)I")); // invokevirtual (metodo privato di un nestmate)
+                        store(b);
+                        break;
+                    case SVMParser.ENTER: // vm.enter(d, fp)
+                        b.aload(VM); b.iconst(operand); b.iload(FP);
+                        b.op(0xb6); b.u2(cp.methodRef(VM_CLASS, "enter", "(II)V")); // invokevirtual (metodo privato di un nestmate)
+                        break;
+                    case SVMParser.LEAVE: // vm.leave(d)
+                        b.aload(VM); b.iconst(operand);
+                        b.op(0xb6); b.u2(cp.methodRef(VM_CLASS, "leave", "(I)V")); // invokevirtual (metodo privato di un nestmate)
+                        break;
+                    case SVMParser.LOADDISPLAY: // memory[--sp] = vm.display[d]
+                        b.iinc(SP, -1); b.aload(MEM); b.iload(SP); display(b, operand); store(b);
+                        break;
+                    case SVMParser.LOADLEVEL: // memory[--sp] = memory[vm.display[d] + k]
+                        b.iinc(SP, -1); b.aload(MEM); b.iload(SP); b.aload(MEM); display(b, operand); b.iconst(operand2); b.op(0x60); load(b); store(b);
+                        break;
+                    default: // COME NELL'INTERPRETE, UN CODICE SCONOSCIUTO NON FA NULLA
+                }
+            }
+            // FINE DELLA REGIONE: SI PROSEGUE DALLA REGIONE SUCCESSIVA
+            // (LA LABEL DA' UN FRAME AL CODICE CHE SEGUE UN SALTO INCONDIZIONATO)
+            b.place(b.newLabel());
+            b.iconst(end); b.istore(IP);
+
+            // USCITA: I REGISTRI VENGONO RISCRITTI IN vm E SI RITORNA LA DESTINAZIONE
+            b.place(exit);
+            storeRegisters(b);
+            b.iload(IP);
+            b.op(0xac); // ireturn
+            return new MethodInfo("r" + r, REGION_DESC, b);
+        }
+
+        private void storeRegisters(Bytecode b) {
+            b.aload(VM); b.iload(SP); b.putfield("sp", "I");
+            b.aload(VM); b.iload(FP); b.putfield("fp", "I");
+            b.aload(VM); b.iload(HP); b.putfield("hp", "I");
+            b.aload(VM); b.iload(RA); b.putfield("ra", "I");
+            b.aload(VM); b.iload(TM); b.putfield("tm", "I");
+        }
+
+        // v = vm.display[level] (L'ARRAY E' RILETTO OGNI VOLTA: enter PUO' ALLARGARLO)
+        private void display(Bytecode b, int level) {
+            b.aload(VM); b.getfield("display", "[I"); b.iconst(level); b.op(0x2e); // iaload
+        }
+
+        // v = memory.load(address)
+        private void load(Bytecode b) {
+            b.op(0xb6); b.u2(cp.methodRef(MEMORY_CLASS, "load", "(I)I")); // invokevirtual
+        }
+
+        // memory.store(address, v)
+        private void store(Bytecode b) {
+            b.op(0xb6); b.u2(cp.methodRef(MEMORY_CLASS, "store", "(II)V")); // invokevirtual
+        }
+
+        // v = memory[sp++]
+        private void pop(Bytecode b, int local) {
+            b.aload(MEM); b.iload(SP); load(b); b.istore(local);
+            b.iinc(SP, 1);
+        }
+
+        // memory[--sp] = v
+        private void push(Bytecode b, int local) {
+            b.iinc(SP, -1); b.aload(MEM); b.iload(SP); b.iload(local); store(b);
+        }
+
+        // v1 = memory[sp++]; memory[sp] = memory[sp] <op> v1
+        private void binary(Bytecode b, int opcode) {
+            pop(b, V1);
+            b.aload(MEM); b.iload(SP); b.aload(MEM); b.iload(SP); load(b); b.iload(V1); b.op(opcode); store(b);
+        }
+
+        // memory[--sp] = 1 SE IL SALTO CONDIZIONATO opcode SUI VALORI SULLO STACK JVM E' PRESO, 0 ALTRIMENTI
+        // (OGNI RAMO SCRIVE IN MEMORIA: NELLE LABEL LO STACK JVM E' VUOTO E V1, V2 NON SONO NEL FRAME)
+        private void condition(Bytecode b, int opcode) {
+            int taken = b.newLabel(), done = b.newLabel();
+            b.iinc(SP, -1);
+            b.jump(opcode, taken);
+            b.aload(MEM); b.iload(SP); b.iconst(0); store(b);
+            b.jump(0xa7, done);
+            b.place(taken);
+            b.aload(MEM); b.iload(SP); b.iconst(1); store(b);
+            b.place(done);
+        }
+
+        // SALTO (CONDIZIONATO O NO) A UN INDIRIZZO: goto SE E' UN LEADER DELLA REGIONE, ALTRIMENTI USCITA
+        private void jumpTo(Bytecode b, int opcode, int target, int start, int end, int[] labels, int exit) {
+            if (target >= start && target < end && isLeader[target]) {
+                b.jump(opcode, labels[target - start]);
+                return;
+            }
+            if (opcode == 0xa7) {
+                b.iconst(target); b.istore(IP); b.jump(0xa7, exit);
+            } else {
+                int skip = b.newLabel();
+                b.jump(opcode == 0x9f ? 0xa0 : 0xa3, skip); // CONDIZIONE NEGATA: if_icmpne, if_icmpgt
+                b.iconst(target); b.istore(IP); b.jump(0xa7, exit);
+                b.place(skip);
+            }
+        }
+
+        private final class MethodInfo {
+            final String name, desc;
+            final Bytecode body;
+            int nameIndex, descIndex;
+
+            MethodInfo(String name, String desc, Bytecode body) {
+                this.name = name;
+                this.desc = desc;
+                this.body = body;
+            }
+
+            void write(DataOutputStream out, int codeAttr, int stackMapAttr) throws IOException {
+                byte[] bytecode = body.resolve();
+                byte[] frames = body.stackMapTable();
+                out.writeShort(0x0008); // ACC_STATIC
+                out.writeShort(nameIndex);
+                out.writeShort(descIndex);
+                out.writeShort(1);
+                out.writeShort(codeAttr);
+                out.writeInt(12 + bytecode.length + 6 + frames.length);
+                out.writeShort(8); // max_stack
+                out.writeShort(10); // max_locals
+                out.writeInt(bytecode.length);
+                out.write(bytecode);
+                out.writeShort(0); // exception table
+                out.writeShort(1);
+                out.writeShort(stackMapAttr);
+                out.writeInt(frames.length);
+                out.write(frames);
+            }
+        }
+
+        /*
+         * CORPO DI UN METODO: ISTRUZIONI JVM CON LABEL SIMBOLICHE RISOLTE IN resolve().
+         * IN OGNI LABEL LO STACK DEGLI OPERANDI E' VUOTO E LE VARIABILI LOCALI SONO QUELLE
+         * DI frameLocals (INDICI DI CLASSE NEL CONSTANT POOL, -1 PER int), QUINDI LA
+         * StackMapTable HA UN full_frame SEGUITO DA same_frame.
+         */
+        private final class Bytecode {
+            private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            private final int[] frameLocals;
+            private final List<Integer> labelPos = new ArrayList<>();
+            private final List<int[]> fixups = new ArrayList<>(); // {posizione offset, inizio istruzione, label, larghezza}
+
+            Bytecode(int[] frameLocals, int count) {
+                this.frameLocals = Arrays.copyOf(frameLocals, count);
+            }
+
+            int newLabel() {
+                labelPos.add(-1);
+                return labelPos.size() - 1;
+            }
+
+            void place(int label) {
+                labelPos.set(label, bytes.size());
+            }
+
+            void op(int opcode) { bytes.write(opcode); }
+
+            void u2(int v) { bytes.write(v >> 8); bytes.write(v); }
+
+            void u4(int v) { u2(v >>> 16); u2(v & 0xffff); }
+
+            void iload(int local) { op(0x15); op(local); }
+
+            void istore(int local) { op(0x36); op(local); }
+
+            void aload(int local) { op(0x19); op(local); }
+
+            void astore(int local) { op(0x3a); op(local); }
+
+            void iinc(int local, int delta) { op(0x84); op(local); op(delta & 0xff); }
+
+            void iconst(int v) {
+                if (v >= -1 && v <= 5) op(0x03 + v);
+                else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) { op(0x10); op(v & 0xff); }
+                else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) { op(0x11); u2(v & 0xffff); }
+                else { op(0x13); u2(cp.integer(v)); } // ldc_w
+            }
+
+            void getfield(String name, String desc) { op(0xb4); u2(cp.fieldRef(VM_CLASS, name, desc)); }
+
+            void putfield(String name, String desc) { op(0xb5); u2(cp.fieldRef(VM_CLASS, name, desc)); }
+
+            void jump(int opcode, int label) {
+                int at = bytes.size();
+                op(opcode);
+                fixups.add(new int[] {bytes.size(), at, label, 2});
+                u2(0);
+            }
+
+            void lookupswitch(List<Integer> keys, List<Integer> targets, int defaultLabel) {
+                int at = bytes.size();
+                op(0xab);
+                while (bytes.size() % 4 != 0) op(0);
+                fixups.add(new int[] {bytes.size(), at, defaultLabel, 4});
+                u4(0);
+                u4(keys.size());
+                for (int k = 0; k < keys.size(); k++) { // CHIAVI GIA' ORDINATE
+                    u4(keys.get(k));
+                    fixups.add(new int[] {bytes.size(), at, targets.get(k), 4});
+                    u4(0);
+                }
+            }
+
+            byte[] resolve() {
+                byte[] result = bytes.toByteArray();
+                for (int[] f : fixups) {
+                    int offset = labelPos.get(f[2]) - f[1];
+                    if (f[3] == 2) {
+                        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                            throw new IllegalArgumentException("Branch offset out of range");
+                        result[f[0]] = (byte) (offset >> 8);
+                        result[f[0] + 1] = (byte) offset;
+                    } else {
+                        for (int k = 0; k < 4; k++) result[f[0] + k] = (byte) (offset >> (24 - 8 * k));
+                    }
+                }
+                if (result.length >= 65536) throw new IllegalArgumentException("Method too large");
+                return result;
+            }
+
+            byte[] stackMapTable() {
+                SortedSet<Integer> positions = new TreeSet<>(labelPos);
+                positions.remove(-1);
+                ByteArrayOutputStream frames = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(frames);
+                try {
+                    out.writeShort(positions.size());
+                    int previous = -1;
+                    for (int pos : positions) {
+                        int delta = previous < 0 ? pos : pos - previous - 1;
+                        if (previous < 0) {
+                            out.writeByte(255); // full_frame
+                            out.writeShort(delta);
+                            out.writeShort(frameLocals.length);
+                            for (int type : frameLocals) {
+                                if (type < 0) out.writeByte(1); // int
+                                else { out.writeByte(7); out.writeShort(type); } // Object
+                            }
+                            out.writeShort(0); // stack vuoto
+                        } else if (delta < 64) {
+                            out.writeByte(delta); // same_frame
+                        } else {
+                            out.writeByte(251); // same_frame_extended
+                            out.writeShort(delta);
+                        }
+                        previous = pos;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return frames.toByteArray();
+            }
+        }
+    }
+
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        private int entry(String key, int tag, int a, int b, String utf8) {
+            Integer index = entries.get(key);
+            if (index != null) return index;
+            try {
+                out.writeByte(tag);
+                if (utf8 != null) out.writeUTF(utf8);
+                else if (tag == 3) out.writeInt(a);
+                else if (tag == 7 || tag == 8) out.writeShort(a);
+                else { out.writeShort(a); out.writeShort(b); }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            entries.put(key, count);
+            return count++;
+        }
+
+        int utf8(String s) { return entry("U" + s, 1, 0, 0, s); }
+
+        int integer(int v) { return entry("I" + v, 3, v, 0, null); }
+
+        int classRef(String name) { return entry("C" + name, 7, utf8(name), 0, null); }
+
+        int nameAndType(String name, String desc) {
+            return entry("N" + name + ":" + desc, 12, utf8(name), utf8(desc), null);
+        }
+
+        int fieldRef(String owner, String name, String desc) {
+            return entry("F" + owner + "." + name + ":" + desc, 9, classRef(owner), nameAndType(name, desc), null);
+        }
+
+        int methodRef(String owner, String name, String desc) {
+            return entry("M" + owner + "." + name + ":" + desc, 10, classRef(owner), nameAndType(name, desc), null);
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            out.flush();
+            target.writeShort(count);
+            target.write(bytes.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package svm;
+
+import java.nio.*;
+import java.util.*;
+
+/*
+ * MEMORIA DELLA SVM: STACK E HEAP SONO DUE REGIONI SEPARATE CHE CRESCONO (RADDOPPIANDO)
+ * IN MODO INDIPENDENTE FINO AI LIMITI CONFIGURATI.
+ * - LO STACK E' UN int[]: E' LA REGIONE PIU' ACCEDUTA (OGNI push/pop) E COME ARRAY JAVA
+ *   IL SUO ACCESSO SI RIDUCE A UN CONFRONTO E UNA LOAD NEI LOOP DI ESECUZIONE E NEL
+ *   CODICE JIT.
+ * - LO HEAP E' ANCH'ESSO UN int[]; CON -Dsvm.offheap=true E' INVECE UN IntBuffer DIRETTO,
+ *   FUORI DALLO HEAP DELLA JVM: PUO' ARRIVARE A CENTINAIA DI MB SENZA PESARE SUL SUO GARBAGE
+ *   COLLECTOR (MA CON LIMITE DI 2 GB, CIOE' OFF_HEAP_LIMIT CELLE), AL COSTO DI ACCESSI UN
+ *   PO' PIU' LENTI. IL BUFFER SOSTITUITO DA UNO PIU' GRANDE VIENE LIBERATO QUANDO NON E'
+ *   PIU' RAGGIUNGIBILE.
+ *
+ * LO SPAZIO DEGLI INDIRIZZI VISTO DAI PROGRAMMI E' QUELLO DI SEMPRE:
+ * - HEAP: INDIRIZZI [0, maxHeap), CRESCE VERSO L'ALTO A PARTIRE DA $hp = 0
+ * - STACK: INDIRIZZI [STACKBASE - maxStack, STACKBASE), CRESCE VERSO IL BASSO A PARTIRE
+ *   DA $sp = STACKBASE; L'INDIRIZZO a CORRISPONDE ALLA CELLA STACKBASE-1-a DELL'ARRAY,
+ *   QUINDI ALLARGANDO L'ARRAY GLI INDIRIZZI GIA' USATI NON CAMBIANO.
+ * IL FRAME GLOBALE E' SEMPRE ALLA BASE DELLO STACK (INDIRIZZO STACKBASE), QUALUNQUE SIA
+ * LA POSIZIONE FISICA DELLA REGIONE. LE CELLE MAI SCRITTE VALGONO 0; UN ACCESSO FUORI DAI
+ * LIMITI LANCIA SegmentationFaultException INVECE DI CORROMPERE L'ALTRA REGIONE.
+ */
+final class Memory {
+
+    static final int STACKBASE = 1 << 30;
+
+    // HEAP FUORI DALLO HEAP DELLA JVM (OPZIONE -Dsvm.offheap=true)
+    static final boolean OFF_HEAP = Boolean.getBoolean("svm.offheap");
+    static final int OFF_HEAP_LIMIT = Integer.MAX_VALUE / Integer.BYTES;
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private final int maxStack;
+    private final int maxHeap;
+
+    private int[] stack;
+    private int[] heap; // null CON OFF_HEAP
+    private IntBuffer offHeap; // null SENZA OFF_HEAP
+    private int heapCapacity; // celle allocate
+
+    Memory(int maxStack, int maxHeap) {
+        if (maxStack <= 0 || maxHeap < 0 || maxStack > STACKBASE - maxHeap)
+            throw new IllegalArgumentException("Invalid memory limits: stack " + maxStack + ", heap " + maxHeap);
+        if (OFF_HEAP && maxHeap > OFF_HEAP_LIMIT)
+            throw new IllegalArgumentException("Off-heap memory is limited to " + OFF_HEAP_LIMIT + " heap cells");
+        this.maxStack = maxStack;
+        this.maxHeap = maxHeap;
+        this.stack = new int[Math.min(INITIAL_CAPACITY, maxStack)];
+        this.heapCapacity = Math.min(INITIAL_CAPACITY, maxHeap);
+        if (OFF_HEAP) this.offHeap = allocate(heapCapacity);
+        else this.heap = new int[heapCapacity];
+    }
+
+    // load E store CONTENGONO SOLO IL CASO PIU' FREQUENTE (CELLA DI STACK GIA' ALLOCATA),
+    // COSI' RESTANO ABBASTANZA PICCOLI DA ESSERE MESSI INLINE DA HOTSPOT
+    int load(int address) {
+        int s = STACKBASE - 1 - address;
+        int[] stack = this.stack;
+        if (s >= 0 && s < stack.length) return stack[s];
+        return loadHeap(address);
+    }
+
+    void store(int address, int value) {
+        int s = STACKBASE - 1 - address;
+        int[] stack = this.stack;
+        if (s >= 0 && s < stack.length) stack[s] = value;
+        else storeOther(address, value);
+    }
+
+    // celle di stack attualmente allocate
+    int stackCapacity() {
+        return stack.length;
+    }
+
+    // celle di heap attualmente allocate
+    int heapCapacity() {
+        return heapCapacity;
+    }
+
+    private int loadHeap(int address) {
+        if (address >= 0 && address < heapCapacity) return offHeap == null ? heap[address] : offHeap.get(address);
+        check(address);
+        return 0; // cella mai scritta
+    }
+
+    // SCRITTURA NELLO HEAP O IN UNA CELLA DI STACK NON ANCORA ALLOCATA
+    private void storeOther(int address, int value) {
+        if (address >= 0 && address < heapCapacity) {
+            if (offHeap == null) heap[address] = value;
+            else offHeap.put(address, value);
+            return;
+        }
+        check(address);
+        int s = STACKBASE - 1 - address;
+        if (s >= 0 && s < maxStack) {
+            stack = Arrays.copyOf(stack, grownCapacity(stack.length, s, maxStack));
+            stack[s] = value;
+        } else {
+            heapCapacity = grownCapacity(heapCapacity, address, maxHeap);
+            if (offHeap == null) {
+                heap = Arrays.copyOf(heap, heapCapacity);
+                heap[address] = value;
+            } else {
+                IntBuffer grown = allocate(heapCapacity);
+                grown.put(offHeap.rewind());
+                offHeap = grown;
+                offHeap.put(address, value);
+            }
+        }
+    }
+
+    private void check(int address) {
+        int s = STACKBASE - 1 - address;
+        if (!(s >= 0 && s < maxStack) && !(address >= 0 && address < maxHeap))
+            throw new SegmentationFaultException(address);
+    }
+
+    // RADDOPPIA LA CAPACITA' FINCHE' NON CONTIENE LA CELLA index, SENZA SUPERARE IL LIMITE
+    private static int grownCapacity(int capacity, int index, int limit) {
+        long grown = Math.max(capacity, 1);
+        while (grown <= index) grown *= 2;
+        return (int) Math.min(grown, limit);
+    }
+
+    // BUFFER DIRETTO (GIA' AZZERATO) DI cells CELLE
+    private static IntBuffer allocate(int cells) {
+        return ByteBuffer.allocateDirect(cells * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+}
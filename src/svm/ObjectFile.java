@@ -0,0 +1,130 @@
+package svm;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * FILE OGGETTO BINARIO DELLA SVM: IL CODICE GIA' ASSEMBLATO CON LE TABELLE PRODOTTE DA
+ * Code.assemble (O DA Assembler), COSI' UN PROGRAMMA GIA' COMPILATO PUO' ESSERE ESEGUITO
+ * SENZA RIPASSARE DAL COMPILATORE. TUTTI I VALORI SONO INTERI A 32 BIT BIG-ENDIAN, LE STRINGHE SONO UNA
+ * LUNGHEZZA SEGUITA DAI BYTE UTF-8:
+ *
+ *   HEADER         MAGIC ("SVMO"), VERSION, FLAGS (BIT 0: C'E' LA SOURCE MAP),
+ *                  CELLE DI CODICE n, NUMERO DI LABEL, DI MAPPE DELLO STACK, DI NOMI DI FUNZIONE
+ *   CODICE         n CELLE
+ *   LABEL          (INDIRIZZO, NOME)*
+ *   MAPPE STACK    (INDIRIZZO, LUNGHEZZA, VALORI)*   (DIRETTIVE gcmap)
+ *   NOMI FUNZIONI  (INDIRIZZO, NOME)*                (DIRETTIVE fname)
+ *   SOURCE MAP     n RIGHE DEL SORGENTE ASSEMBLY     (SE FLAGS HA IL BIT 0)
+ *
+ * load MAPPA IL FILE IN MEMORIA CON FileChannel.map E COPIA LA SEZIONE DEL CODICE CON UNA
+ * SOLA LETTURA IN BLOCCO NELL'ARRAY USATO DA ExecuteVM.
+ */
+public final class ObjectFile {
+
+    public static final int MAGIC = 0x53564D4F; // "SVMO"
+    public static final int VERSION = 1;
+    private static final int HAS_SOURCE_MAP = 1;
+
+    public final int[] code; // almeno ExecuteVM.CODESIZE celle, come Assembler.code
+    public final int codeLength;
+    public final Map<Integer,String> labels;
+    public final Map<Integer,int[]> stackMaps;
+    public final Map<Integer,String> functionNames;
+    public final int[] sourceMap; // null se assente
+
+    public ObjectFile(int[] code, int codeLength, Map<Integer,String> labels, Map<Integer,int[]> stackMaps,
+            Map<Integer,String> functionNames, int[] sourceMap) {
+        this.code = code;
+        this.codeLength = codeLength;
+        this.labels = labels;
+        this.stackMaps = stackMaps;
+        this.functionNames = functionNames;
+        this.sourceMap = sourceMap;
+    }
+
+    // FILE OGGETTO DEL PROGRAMMA APPENA ASSEMBLATO DA assembler
+    public static ObjectFile of(Assembler assembler) {
+        return new ObjectFile(assembler.code, assembler.codeLength(), assembler.labelNames(), assembler.stackMaps,
+            assembler.functionNames, assembler.sourceMap);
+    }
+
+    public void write(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sourceMap != null ? HAS_SOURCE_MAP : 0);
+            out.writeInt(codeLength);
+            out.writeInt(labels.size());
+            out.writeInt(stackMaps.size());
+            out.writeInt(functionNames.size());
+            for (int i = 0; i < codeLength; i++) out.writeInt(code[i]);
+            for (Map.Entry<Integer,String> label : labels.entrySet()) {
+                out.writeInt(label.getKey());
+                writeString(out, label.getValue());
+            }
+            for (Map.Entry<Integer,int[]> map : stackMaps.entrySet()) {
+                out.writeInt(map.getKey());
+                out.writeInt(map.getValue().length);
+                for (int value : map.getValue()) out.writeInt(value);
+            }
+            for (Map.Entry<Integer,String> name : functionNames.entrySet()) {
+                out.writeInt(name.getKey());
+                writeString(out, name.getValue());
+            }
+            if (sourceMap != null) for (int i = 0; i < codeLength; i++) out.writeInt(sourceMap[i]);
+        }
+    }
+
+    public static ObjectFile load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (buffer.getInt() != MAGIC) throw new IOException(file + " is not an SVM object file");
+                int version = buffer.getInt();
+                if (version != VERSION) throw new IOException("Unsupported SVM object file version " + version);
+                int flags = buffer.getInt();
+                int codeLength = buffer.getInt();
+                int labelCount = buffer.getInt(), stackMapCount = buffer.getInt(), nameCount = buffer.getInt();
+                int[] code = new int[Math.max(codeLength, ExecuteVM.CODESIZE)];
+                buffer.asIntBuffer().get(code, 0, codeLength);
+                buffer.position(buffer.position() + codeLength * Integer.BYTES);
+                Map<Integer,String> labels = new HashMap<>();
+                for (int k = 0; k < labelCount; k++) labels.put(buffer.getInt(), readString(buffer));
+                Map<Integer,int[]> stackMaps = new HashMap<>();
+                for (int k = 0; k < stackMapCount; k++) {
+                    int address = buffer.getInt();
+                    int[] map = new int[buffer.getInt()];
+                    for (int j = 0; j < map.length; j++) map[j] = buffer.getInt();
+                    stackMaps.put(address, map);
+                }
+                Map<Integer,String> functionNames = new HashMap<>();
+                for (int k = 0; k < nameCount; k++) functionNames.put(buffer.getInt(), readString(buffer));
+                int[] sourceMap = null;
+                if ((flags & HAS_SOURCE_MAP) != 0) {
+                    sourceMap = new int[code.length];
+                    buffer.asIntBuffer().get(sourceMap, 0, codeLength);
+                }
+                return new ObjectFile(code, codeLength, labels, stackMaps, functionNames, sourceMap);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+                throw new IOException(file + " is truncated or corrupted", e);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,174 @@
+package svm;
+
+import java.io.*;
+import java.util.*;
+
+/*
+ * PROFILER DEL CALL GRAPH PER ExecuteVM.cpuProfiled.
+ *
+ * IL PROFILER MANTIENE UNO STACK OMBRA DELLE CHIAMATE E UN ALBERO DEI CONTESTI DI
+ * CHIAMATA (UN NODO PER OGNI SEQUENZA DI FUNZIONI APERTE, RADICE = CODICE GLOBALE):
+ * - js VERSO L'INDIRIZZO DI RITORNO DELLA CHIAMATA IN CIMA ALLO STACK OMBRA E' UN
+ *   RITORNO, OGNI ALTRO js E' UNA CHIAMATA (L'INDIRIZZO DI RITORNO E' QUELLO DOPO IL js);
+ * - jump (CHIAMATA IN CODA) SOSTITUISCE LA FUNZIONE IN CIMA, CHE RITORNERA' ALLO STESSO
+ *   INDIRIZZO, COME FA L'AR NELLA SVM;
+ * - OGNI ISTRUZIONE ESEGUITA E' CONTATA NEL NODO CORRENTE.
+ * LE FUNZIONI SONO IDENTIFICATE DAL LORO INDIRIZZO DI INGRESSO, TRADOTTO NEL NOME FOOL
+ * (DIRETTIVE fname DEL COMPILATORE) E NELLA LABEL DELL'ASSEMBLY (functionN, labelN).
+ */
+public class Profiler {
+
+    private static final int MAIN = -1; // funzione fittizia del codice globale
+
+    private static final class Node {
+        final int function;
+        final Node parent;
+        final Map<Integer, Node> children = new HashMap<>();
+        long calls;
+        long instructions; // istruzioni eseguite in questo contesto (esclusive)
+
+        Node(int function, Node parent) {
+            this.function = function;
+            this.parent = parent;
+        }
+
+        Node child(int function) {
+            Node child = children.get(function);
+            if (child == null) children.put(function, child = new Node(function, this));
+            return child;
+        }
+    }
+
+    private final Map<Integer, String> labels;
+    private final Map<Integer, String> functionNames;
+    private final Node root = new Node(MAIN, null);
+    private Node current = root;
+    private int[] returns = new int[64]; // indirizzi di ritorno dello stack ombra
+    private int depth;
+
+    // labels E functionNames SONO ObjectFile.labels E ObjectFile.functionNames
+    public Profiler(Map<Integer, String> labels, Map<Integer, String> functionNames) {
+        this.labels = labels;
+        this.functionNames = functionNames;
+        root.calls = 1;
+    }
+
+    void count() {
+        current.instructions++;
+    }
+
+    void jumpSubroutine(int target, int returnAddress) {
+        if (depth > 0 && target == returns[depth - 1]) {
+            depth--;
+            current = current.parent;
+            return;
+        }
+        if (depth == returns.length) returns = Arrays.copyOf(returns, 2 * depth);
+        returns[depth++] = returnAddress;
+        current = current.child(target);
+        current.calls++;
+    }
+
+    void tailCall(int target) {
+        if (current == root) return; // salto nel codice globale, non e' una chiamata
+        current = current.parent.child(target);
+        current.calls++;
+    }
+
+    // NOME FOOL DELLA FUNZIONE (O METODO) CON INGRESSO A function, ALTRIMENTI LA SUA LABEL
+    public String name(int function) {
+        if (function == MAIN) return "main";
+        String name = functionNames.get(function);
+        if (name == null) name = labels.get(function);
+        return name != null ? name : "@" + function;
+    }
+
+    private String qualifiedName(int function) {
+        String label = function == MAIN ? null : labels.get(function);
+        return label == null || label.equals(name(function)) ? name(function) : name(function) + " [" + label + "]";
+    }
+
+    /*
+     * FORMATO "COLLAPSED STACKS" (flamegraph.pl, speedscope...): UNA RIGA PER OGNI CONTESTO
+     * CON ISTRUZIONI ESCLUSIVE, CON LE FUNZIONI DALLA RADICE SEPARATE DA ';' E IL CONTEGGIO
+     */
+    public void writeCollapsedStacks(PrintStream out) {
+        Deque<Node> stack = new ArrayDeque<>();
+        Deque<String> paths = new ArrayDeque<>();
+        stack.push(root);
+        paths.push(name(MAIN));
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            String path = paths.pop();
+            if (node.instructions > 0) out.println(path + " " + node.instructions);
+            for (Node child : node.children.values()) {
+                stack.push(child);
+                paths.push(path + ";" + name(child.function));
+            }
+        }
+    }
+
+    /*
+     * TABELLA DELLE n FUNZIONI CON PIU' ISTRUZIONI INCLUSIVE: CHIAMATE, ISTRUZIONI ESCLUSIVE
+     * (ESEGUITE NEL CORPO DELLA FUNZIONE) E INCLUSIVE (ESEGUITE MENTRE LA FUNZIONE E' SULLO
+     * STACK, CONTANDO UNA VOLTA SOLA LE CHIAMATE RICORSIVE)
+     */
+    public void printTop(PrintStream out, int n) {
+        Map<Integer, long[]> totals = totals(); // funzione -> {chiamate, esclusive, inclusive}
+        long all = totals.get(MAIN)[2];
+        List<Map.Entry<Integer, long[]>> rows = new ArrayList<>(totals.entrySet());
+        rows.sort((a, b) -> Long.compare(b.getValue()[2], a.getValue()[2]));
+        out.printf("%-32s %12s %14s %7s %14s %7s%n", "function", "calls", "exclusive", "%", "inclusive", "%");
+        for (Map.Entry<Integer, long[]> row : rows.subList(0, Math.min(n, rows.size()))) {
+            long[] t = row.getValue();
+            out.printf("%-32s %12d %14d %6.2f%% %14d %6.2f%%%n", qualifiedName(row.getKey()), t[0],
+                t[1], 100.0 * t[1] / Math.max(all, 1), t[2], 100.0 * t[2] / Math.max(all, 1));
+        }
+    }
+
+    private Map<Integer, long[]> totals() {
+        // ISTRUZIONI DI OGNI SOTTOALBERO (VISITA IN POST-ORDINE SENZA RICORSIONE: LA RICORSIONE
+        // FOOL PUO' PRODURRE ALBERI PROFONDI QUANTO LO STACK DELLA SVM)
+        Map<Node, Long> subtree = new HashMap<>();
+        List<Node> order = new ArrayList<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            order.add(node);
+            for (Node child : node.children.values()) stack.push(child);
+        }
+        for (int i = order.size() - 1; i >= 0; i--) {
+            Node node = order.get(i);
+            long total = node.instructions;
+            for (Node child : node.children.values()) total += subtree.get(child);
+            subtree.put(node, total);
+        }
+        // UN NODO CONTA NELLE INCLUSIVE DELLA SUA FUNZIONE SOLO SE NESSUN ANTENATO E' LA STESSA FUNZIONE
+        Map<Integer, long[]> totals = new HashMap<>();
+        Map<Integer, Integer> onPath = new HashMap<>();
+        Deque<Node> visit = new ArrayDeque<>();
+        Deque<Boolean> leaving = new ArrayDeque<>();
+        visit.push(root);
+        leaving.push(false);
+        while (!visit.isEmpty()) {
+            Node node = visit.pop();
+            if (leaving.pop()) {
+                onPath.merge(node.function, -1, Integer::sum);
+                continue;
+            }
+            long[] t = totals.computeIfAbsent(node.function, f -> new long[3]);
+            t[0] += node.calls;
+            t[1] += node.instructions;
+            if (onPath.getOrDefault(node.function, 0) == 0) t[2] += subtree.get(node);
+            onPath.merge(node.function, 1, Integer::sum);
+            visit.push(node);
+            leaving.push(true);
+            for (Node child : node.children.values()) {
+                visit.push(child);
+                leaving.push(false);
+            }
+        }
+        return totals;
+    }
+}
@@ -10,11 +10,34 @@ public int lexicalErrors=0;
    
 @parser::members { 
 public int[] code = new int[ExecuteVM.CODESIZE];    
+// RIGA DEL SORGENTE ASSEMBLY (DA 0) DI OGNI CELLA DI code, COME IN visualsvm
+public int[] sourceMap = new int[ExecuteVM.CODESIZE];
 private int i = 0;
 // ASSOCIA AD UNA LABEL IL SUO INDIRIZZO (DEFINIZIONE).
 private Map<String,Integer> labelDef = new HashMap<>();
 // ASSOCIA AD UN INDIRIZZO LA LABEL A CUI FA RIFERIMENTO (RIFERIMENTO).
 private Map<Integer,String> labelRef = new HashMap<>();
+// MAPPE DEI RIFERIMENTI SULLO STACK (DIRETTIVE gcmap), PER INDIRIZZO DEL CODICE:
+// {NUMERO DI PARAMETRI, OFFSET RISPETTO AL FRAME POINTER DELLE CELLE CHE CONTENGONO RIFERIMENTI...}
+public Map<Integer,int[]> stackMaps = new HashMap<>();
+// NOMI FOOL DELLE FUNZIONI E DEI METODI (DIRETTIVE fname), PER INDIRIZZO DI INGRESSO
+public Map<Integer,String> functionNames = new HashMap<>();
+// NUMERO DI CELLE DI code OCCUPATE DAL PROGRAMMA
+public int codeLength() {
+  return i;
+}
+// ASSEMBLA chars CON IL PARSING IN DUE PASSI (SLL, E LL SOLO SE SERVE: VEDI TwoStageParser)
+public static SVMParser assemble(CharStream chars) {
+  SVMParser parser = new SVMParser(new CommonTokenStream(new SVMLexer(chars)));
+  TwoStageParser.parse(parser, SVMParser::assembly);
+  return parser;
+}
+// NOME DI OGNI LABEL DEFINITA, PER INDIRIZZO (USATO DAL PROFILER)
+public Map<Integer,String> labelNames() {
+  Map<Integer,String> names = new HashMap<>();
+  for (Map.Entry<String,Integer> label : labelDef.entrySet()) names.putIfAbsent(label.getValue(), label.getKey());
+  return names;
+}
 }
 
 /*------------------------------------------------------------------
@@ -22,12 +45,18 @@ private Map<Integer,String> labelRef = new HashMap<>();
  * TRADUCE L'ASSEMBLY IN NUMERI, NON STIAMO ANCORA ESEGUENDO.
  *------------------------------------------------------------------*/
    
-assembly: instruction* EOF 	{ for (Integer j: labelRef.keySet())
+assembly
+@init { // LA REGOLA PUO' ESSERE RIPARSATA (VEDI TwoStageParser): SI RIPARTE DA CODICE E TABELLE VUOTI
+  Arrays.fill(code, 0, i, 0); i = 0;
+  labelDef.clear(); labelRef.clear(); stackMaps.clear(); functionNames.clear();
+} : instruction* EOF 	{ for (Integer j: labelRef.keySet())
                                 // SOSTITUISCE IL RIFERIMENTO AD OGNI LABEL CON L'INDIRIZZO IN CUI È SALVATA QUELLA LABEL
 								code[j]=labelDef.get(labelRef.get(j));
 							} ;
 
-instruction : 
+instruction
+@init { int first = i; }
+@after { for (int k = first; k < i; k++) sourceMap[k] = $start.getLine()-1; } :
         PUSH n=INTEGER   {code[i++] = PUSH; // PUSH DI INTEGER NELLO STACK E POST INCREMENTO DI i.
 			              code[i++] = Integer.parseInt($n.text);}
 	  | PUSH l=LABEL    {code[i++] = PUSH; 
@@ -46,6 +75,13 @@ instruction :
                         labelRef.put(i++,$l.text);}
 	  | BRANCHLESSEQ l=LABEL {code[i++] = BRANCHLESSEQ;
                           labelRef.put(i++,$l.text);}
+	  // CONFRONTI E OPERATORI BOOLEANI (I BOOLEANI SONO 0 E 1)
+	  | EQUAL           {code[i++] = EQUAL;}    // POP DEI DUE VALORI v1 E v2 E PUSH DI 1 SE v2==v1, 0 ALTRIMENTI
+	  | LESSEQ          {code[i++] = LESSEQ;}   // POP DEI DUE VALORI v1 E v2 E PUSH DI 1 SE v2<=v1, 0 ALTRIMENTI
+	  | LESS            {code[i++] = LESS;}     // POP DEI DUE VALORI v1 E v2 E PUSH DI 1 SE v2<v1, 0 ALTRIMENTI
+	  | NOT             {code[i++] = NOT;}      // POP DI v1 E PUSH DI 1 SE v1==0, 0 ALTRIMENTI
+	  | AND             {code[i++] = AND;}      // POP DEI DUE BOOLEANI v1 E v2 E PUSH DI v2&v1 (SENZA CORTOCIRCUITO)
+	  | OR              {code[i++] = OR;}       // POP DEI DUE BOOLEANI v1 E v2 E PUSH DI v2|v1 (SENZA CORTOCIRCUITO)
 	  | JS              {code[i++] = JS;}		     //
 	  | LOADRA          {code[i++] = LOADRA;}    //
 	  | STORERA         {code[i++] = STORERA;}   //
@@ -58,6 +94,40 @@ instruction :
 	  | STOREHP         {code[i++] = STOREHP;}   //
 	  | PRINT           {code[i++] = PRINT;}
 	  | HALT            {code[i++] = HALT;}
+	  | ALLOC n=INTEGER {code[i++] = ALLOC; // ALLOCA UN OGGETTO CON n CAMPI (VEDI ExecuteVM.alloc)
+			              code[i++] = Integer.parseInt($n.text);}
+	  | GCMAP m=INTEGER (o+=INTEGER)* {int[] map = new int[$o.size()+1]; // NON GENERA CODICE: MAPPA DEI
+			              map[0] = Integer.parseInt($m.text);                // RIFERIMENTI NELL'AR CORRENTE
+			              for (int k = 0; k < $o.size(); k++)                // ALL'INDIRIZZO i
+			                map[k+1] = Integer.parseInt($o.get(k).getText());
+			              stackMaps.put(i, map);}
+	  | FNAME s=STRING  {functionNames.put(i, $s.text.substring(1, $s.text.length()-1));} // NON GENERA CODICE: NOME FOOL
+	                                                                                // DELLA FUNZIONE CHE INIZIA ALL'INDIRIZZO i
+	  // CHIAMATE IN CODA (VEDI CodeGenerationASTVisitor.tailCall)
+	  | SLIDE n=INTEGER d=INTEGER {code[i++] = SLIDE; // SPOSTA LE n CELLE IN CIMA ALLO STACK AGLI OFFSET d-n+1..d DA fp
+			              code[i++] = Integer.parseInt($n.text);
+			              code[i++] = Integer.parseInt($d.text);}
+	  | JUMP            {code[i++] = JUMP;}   // SALTA ALL'INDIRIZZO SULLA CIMA DELLO STACK SENZA MODIFICARE ra
+	  // DISPLAY (VEDI CodeGenerationASTVisitor.frameAt)
+	  | ENTER d=INTEGER {code[i++] = ENTER; // SALVA display[d] E LO IMPOSTA A fp (INGRESSO IN UN AR DI NESTING LEVEL d)
+			              code[i++] = Integer.parseInt($d.text);}
+	  | LEAVE d=INTEGER {code[i++] = LEAVE; // RIPRISTINA IL VALORE DI display[d] SALVATO DALL'ULTIMA enter
+			              code[i++] = Integer.parseInt($d.text);}
+	  | LOADDISPLAY d=INTEGER {code[i++] = LOADDISPLAY; // PUSH DI display[d] (INDIRIZZO DELL'AR DI NESTING LEVEL d)
+			              code[i++] = Integer.parseInt($d.text);}
+	  // SUPERISTRUZIONI (GENERATE DA SuperInstructions.fuse)
+	  | LOADLOCAL n=INTEGER {code[i++] = LOADLOCAL; // lfp; push n; add; lw
+			              code[i++] = Integer.parseInt($n.text);}
+	  | LOADUP d=INTEGER n=INTEGER {code[i++] = LOADUP; // lfp; lw (d volte); push n; add; lw
+			              code[i++] = Integer.parseInt($d.text);
+			              code[i++] = Integer.parseInt($n.text);}
+	  | DUPTOP          {code[i++] = DUPTOP;}   // stm; ltm; ltm
+	  | BUMPHP          {code[i++] = BUMPHP;}   // lhp; push 1; add; shp
+	  | DISPATCH n=INTEGER {code[i++] = DISPATCH; // lw; push n; add; lw CON INLINE CACHE (GENERATA PER LE CHIAMATE DI METODI)
+			              code[i++] = Integer.parseInt($n.text);}
+	  | LOADLEVEL d=INTEGER n=INTEGER {code[i++] = LOADLEVEL; // ldisp d; push n; add; lw
+			              code[i++] = Integer.parseInt($d.text);
+			              code[i++] = Integer.parseInt($n.text);}
 	  ;
 	  
 /*------------------------------------------------------------------
@@ -75,6 +145,12 @@ LOADW	 : 'lw' ;
 BRANCH	 : 'b' ;	
 BRANCHEQ : 'beq' ;	
 BRANCHLESSEQ:'bleq' ;	
+EQUAL	 : 'eq' ;
+LESSEQ	 : 'le' ;
+LESS	 : 'lt' ;
+NOT	 : 'not' ;
+AND	 : 'and' ;
+OR	 : 'or' ;
 JS	 : 'js' ;	
 LOADRA	 : 'lra' ;	
 STORERA  : 'sra' ;	 
@@ -87,10 +163,25 @@ LOADHP	 : 'lhp' ;
 STOREHP	 : 'shp' ;	
 PRINT	 : 'print' ;	
 HALT	 : 'halt' ;	
+ALLOC	 : 'alloc' ;
+GCMAP	 : 'gcmap' ;
+FNAME	 : 'fname' ;
+SLIDE	 : 'slide' ;
+JUMP	 : 'jump' ;
+LOADLOCAL: 'lloc' ;
+LOADUP	 : 'lup' ;
+DUPTOP	 : 'dup' ;
+BUMPHP	 : 'bhp' ;
+DISPATCH : 'dispatch' ;
+ENTER	 : 'enter' ;
+LEAVE	 : 'leave' ;
+LOADDISPLAY: 'ldisp' ;
+LOADLEVEL: 'llev' ;
  
 COL	 : ':' ;
 LABEL	 : ('a'..'z'|'A'..'Z')('a'..'z' | 'A'..'Z' | '0'..'9')* ;
 INTEGER	 : '0' | ('-')?(('1'..'9')('0'..'9')*) ;
+STRING	 : '"' ~('"'|'\n')* '"' ;
 
 COMMENT : '/*' .*? '*/' -> channel(HIDDEN) ;
 
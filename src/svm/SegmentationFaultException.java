@@ -0,0 +1,14 @@
+package svm;
+
+public class SegmentationFaultException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public final int address;
+
+	public SegmentationFaultException(int address) {
+		super("Segmentation fault at address " + address);
+		this.address = address;
+	}
+
+}
@@ -0,0 +1,74 @@
+package svm;
+
+import java.util.*;
+
+/*
+ * PASSO SUL CODICE (VEDI Code) CHE SOSTITUISCE LE SEQUENZE FISSE GENERATE DA
+ * CodeGenerationASTVisitor CON LE SUPERISTRUZIONI DELLA SVM:
+ *
+ *   lfp; push k; add; lw             ->  lloc k      (IdNode locale)
+ *   lfp; lw (d volte); push k; add; lw  ->  lup d k  (campo dell'oggetto nei metodi)
+ *   ldisp d; push k; add; lw         ->  llev d k    (IdNode/ClassCallNode non locale)
+ *   stm; ltm; ltm                    ->  dup         (duplicazione dell'Access Link)
+ *   lhp; push 1; add; shp            ->  bhp         (incremento di $hp)
+ *
+ * LE SEQUENZE NON ATTRAVERSANO LE DEFINIZIONI DI LABEL, QUINDI NESSUN SALTO PUO'
+ * ARRIVARE IN MEZZO AD UNA SEQUENZA SOSTITUITA. OGNI SUPERISTRUZIONE HA LO STESSO
+ * EFFETTO SUI REGISTRI E SULLO STACK DELLA SEQUENZA CHE SOSTITUISCE.
+ */
+public class SuperInstructions {
+
+	private SuperInstructions() {}
+
+	public static Code fuse(Code code) {
+		if (code == null) return null;
+		return new Code(fuse(code.instructions()));
+	}
+
+	static List<Code.Instruction> fuse(List<Code.Instruction> in) {
+		List<Code.Instruction> out = new ArrayList<>(in.size());
+		int i = 0;
+		while (i < in.size()) {
+			int d = 0;
+			// lfp; lw*; push k; add; lw
+			if (is(in, i, SVMParser.LOADFP)) {
+				while (is(in, i + 1 + d, SVMParser.LOADW)) d++;
+				if (isPushInt(in, i + 1 + d) && is(in, i + 2 + d, SVMParser.ADD) && is(in, i + 3 + d, SVMParser.LOADW)) {
+					int k = in.get(i + 1 + d).operands[0];
+					out.add(d == 0 ? new Code.Instruction(SVMParser.LOADLOCAL, null, k) : new Code.Instruction(SVMParser.LOADUP, null, d, k));
+					i += 4 + d;
+					continue;
+				}
+			}
+			// ldisp d; push k; add; lw
+			if (is(in, i, SVMParser.LOADDISPLAY) && isPushInt(in, i + 1) && is(in, i + 2, SVMParser.ADD) && is(in, i + 3, SVMParser.LOADW)) {
+				out.add(new Code.Instruction(SVMParser.LOADLEVEL, null, in.get(i).operands[0], in.get(i + 1).operands[0]));
+				i += 4;
+				continue;
+			}
+			// stm; ltm; ltm
+			if (is(in, i, SVMParser.STORETM) && is(in, i + 1, SVMParser.LOADTM) && is(in, i + 2, SVMParser.LOADTM)) {
+				out.add(new Code.Instruction(SVMParser.DUPTOP, null));
+				i += 3;
+				continue;
+			}
+			// lhp; push 1; add; shp
+			if (is(in, i, SVMParser.LOADHP) && isPushInt(in, i + 1) && in.get(i + 1).operands[0] == 1
+					&& is(in, i + 2, SVMParser.ADD) && is(in, i + 3, SVMParser.STOREHP)) {
+				out.add(new Code.Instruction(SVMParser.BUMPHP, null));
+				i += 4;
+				continue;
+			}
+			out.add(in.get(i++));
+		}
+		return out;
+	}
+
+	private static boolean is(List<Code.Instruction> code, int i, int opcode) {
+		return i < code.size() && code.get(i).is(opcode);
+	}
+
+	private static boolean isPushInt(List<Code.Instruction> code, int i) {
+		return is(code, i, SVMParser.PUSH) && code.get(i).label == null;
+	}
+}
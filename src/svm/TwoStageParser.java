@@ -0,0 +1,55 @@
+package svm;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+/*
+ * PARSING IN DUE PASSI, USATO PER FOOLParser.prog E SVMParser.assembly:
+ * - PRIMO PASSO CON PredictionMode.SLL E BailErrorStrategy, SENZA LISTENER DEGLI ERRORI: LA
+ *   PREDIZIONE SLL NON CALCOLA IL CONTESTO COMPLETO DELLE DECISIONI E RIEMPIE LA CACHE DFA
+ *   CONDIVISA PIU' IN FRETTA, MA PUO' FALLIRE ANCHE SU UN INPUT CORRETTO;
+ * - SOLO SE IL PRIMO PASSO FALLISCE (ERRORE DI SINTASSI, VERO O DOVUTO A SLL) IL PARSER
+ *   RIPARTE DALL'INIZIO DEI TOKEN GIA' LETTI CON PredictionMode.LL, LA STRATEGIA DI ERRORE
+ *   E I LISTENER ORIGINALI, COSI' I MESSAGGI DI ERRORE SONO QUELLI DEL PARSING NORMALE.
+ * SE IL PRIMO PASSO RIESCE L'ALBERO E' LO STESSO DEL PARSING LL (LE GRAMMATICHE NON HANNO
+ * PREDICATI SEMANTICI). I TOKEN NON VENGONO RILETTI DAL LEXER (CommonTokenStream LI TIENE IN
+ * MEMORIA), QUINDI GLI ERRORI LESSICALI SONO CONTATI UNA VOLTA SOLA. LE AZIONI DELLA REGOLA
+ * RIPARSATA DEVONO ESSERE RIESEGUIBILI (VEDI L'@init DI assembly IN SVM.g4).
+ */
+public final class TwoStageParser {
+
+    private TwoStageParser() {}
+
+    // NUMERO DI PARSING CHE HANNO DOVUTO USARE IL SECONDO PASSO (PER I BENCHMARK)
+    public static final AtomicInteger fallbacks = new AtomicInteger();
+
+    // ESEGUE rule (ES. FOOLParser::prog) SU parser, PRIMA IN SLL E SE NECESSARIO IN LL
+    public static <P extends Parser, T extends ParserRuleContext> T parse(P parser, Function<P,T> rule) {
+        List<ANTLRErrorListener> listeners = new ArrayList<>(parser.getErrorListeners());
+        ANTLRErrorStrategy errorHandler = parser.getErrorHandler();
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        try {
+            return rule.apply(parser);
+        } catch (ParseCancellationException e) {
+            fallbacks.incrementAndGet();
+            restore(parser, errorHandler, listeners);
+            parser.reset(); // TORNA AL PRIMO TOKEN E AZZERA GLI ERRORI DI SINTASSI
+            return rule.apply(parser);
+        } finally {
+            restore(parser, errorHandler, listeners);
+        }
+    }
+
+    private static void restore(Parser parser, ANTLRErrorStrategy errorHandler, List<ANTLRErrorListener> listeners) {
+        parser.setErrorHandler(errorHandler);
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        parser.removeErrorListeners();
+        for (ANTLRErrorListener listener : listeners) parser.addErrorListener(listener);
+    }
+}
@@ -289,6 +289,34 @@ public class ExecuteVM {
                 v2 = pop();
                 ip = v2 <= v1 ? address : ip;
                 break;
+            case SVMParser.EQUAL:
+                v1 = pop();
+                v2 = pop();
+                push(v2 == v1 ? 1 : 0);
+                break;
+            case SVMParser.LESSEQ:
+                v1 = pop();
+                v2 = pop();
+                push(v2 <= v1 ? 1 : 0);
+                break;
+            case SVMParser.LESS:
+                v1 = pop();
+                v2 = pop();
+                push(v2 < v1 ? 1 : 0);
+                break;
+            case SVMParser.NOT:
+                push(pop() == 0 ? 1 : 0);
+                break;
+            case SVMParser.AND:
+                v1 = pop();
+                v2 = pop();
+                push(v2 & v1);
+                break;
+            case SVMParser.OR:
+                v1 = pop();
+                v2 = pop();
+                push(v2 | v1);
+                break;
             case SVMParser.JS:
                 address = pop();
                 ra = ip;
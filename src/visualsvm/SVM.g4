@@ -44,6 +44,12 @@ instruction:
 	  | t=BRANCH l=LABEL       { codem($t.line, BRANCH); labelRef.put(i++,$l.text); } //jump at the instruction pointed by LABEL
 	  | t=BRANCHEQ l=LABEL     { codem($t.line, BRANCHEQ); labelRef.put(i++,$l.text); } //pop two values and jump if they are equal
 	  | t=BRANCHLESSEQ l=LABEL { codem($t.line, BRANCHLESSEQ); labelRef.put(i++,$l.text); } //pop two values and jump if the second one is less or equal to the first one
+	  | t=EQUAL                { codem($t.line, EQUAL); } //pop two values and push 1 if they are equal, 0 otherwise
+	  | t=LESSEQ               { codem($t.line, LESSEQ); } //pop two values and push 1 if the second one is less or equal to the first one, 0 otherwise
+	  | t=LESS                 { codem($t.line, LESS); } //pop two values and push 1 if the second one is less than the first one, 0 otherwise
+	  | t=NOT                  { codem($t.line, NOT); } //replace the top of the stack with 1 if it is 0, with 0 otherwise
+	  | t=AND                  { codem($t.line, AND); } //replace the two booleans on top of the stack with their conjunction
+	  | t=OR                   { codem($t.line, OR); } //replace the two booleans on top of the stack with their disjunction
 	  | t=JS                   { codem($t.line, JS); } //pop one value from the stack: copy the instruction pointer in the RA register and jump to the popped value
 	  | t=LOADRA               { codem($t.line, LOADRA); } //push in the stack the content of the RA register
 	  | t=STORERA              { codem($t.line, STORERA); } //pop the top of the stack and copy it in the RA register
@@ -73,6 +79,12 @@ LOADW	 	: 'lw' ;
 BRANCH	 	: 'b' ;
 BRANCHEQ 	: 'beq' ;
 BRANCHLESSEQ: 'bleq' ;
+EQUAL		: 'eq' ;
+LESSEQ		: 'le' ;
+LESS		: 'lt' ;
+NOT			: 'not' ;
+AND			: 'and' ;
+OR			: 'or' ;
 JS	 		: 'js' ;
 LOADRA	 	: 'lra' ;
 STORERA  	: 'sra' ;